@@ -0,0 +1,220 @@
+package se.martinuhlen.fishbase.dao;
+
+import static java.util.Objects.requireNonNull;
+import static se.martinuhlen.fishbase.utils.Concurrency.newSingleThreadExecutor;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import se.martinuhlen.fishbase.domain.AutoCompleteField;
+import se.martinuhlen.fishbase.domain.Photo;
+import se.martinuhlen.fishbase.domain.Specie;
+import se.martinuhlen.fishbase.domain.Specimen;
+import se.martinuhlen.fishbase.domain.Statistics;
+import se.martinuhlen.fishbase.domain.StatisticsField;
+import se.martinuhlen.fishbase.domain.Trip;
+
+/**
+ * Asynchronous variants of the methods of a {@link FishBaseDao}, so that a UI thread never waits on persistence or on a query.
+ * <p>
+ * All operations are executed one at a time on a dedicated DAO thread, in the order they were submitted.
+ * Each operation therefore sees the result of all operations submitted before it, and the returned futures complete in that order.
+ * Dependent actions that must run on a specific thread, such as the JavaFX thread, should be attached with an executor.
+ *
+ * @author Martin
+ */
+public class AsyncFishBaseDao
+{
+	private final FishBaseDao dao;
+	private final ExecutorService executor;
+	private final AtomicInteger pendingOperations;
+
+	public AsyncFishBaseDao(FishBaseDao dao)
+	{
+		this.dao = requireNonNull(dao);
+		this.executor = newSingleThreadExecutor(true, "FishBaseDao-async");
+		this.pendingOperations = new AtomicInteger();
+	}
+
+	public CompletableFuture<Photo> getPhoto(String id)
+	{
+		return submit(() -> dao.getPhoto(id));
+	}
+
+	public CompletableFuture<List<Photo>> getPhotos()
+	{
+		return submit(dao::getPhotos);
+	}
+
+	public CompletableFuture<List<Photo>> getPhotosOfSpecimen(String specimenId)
+	{
+		return submit(() -> dao.getPhotosOfSpecimen(specimenId));
+	}
+
+	public CompletableFuture<Specie> getSpecie(String id)
+	{
+		return submit(() -> dao.getSpecie(id));
+	}
+
+	public CompletableFuture<List<Specie>> getSpecies()
+	{
+		return submit(dao::getSpecies);
+	}
+
+	public CompletableFuture<Boolean> isSpecieDeletable(Specie specie)
+	{
+		return submit(() -> dao.isSpecieDeletable(specie));
+	}
+
+	public CompletableFuture<Void> saveSpecies(Collection<Specie> species)
+	{
+		return execute(() -> dao.saveSpecies(species));
+	}
+
+	public CompletableFuture<Void> deleteSpecies(Collection<Specie> species)
+	{
+		return execute(() -> dao.deleteSpecies(species));
+	}
+
+	public CompletableFuture<Specimen> getSpecimen(String id)
+	{
+		return submit(() -> dao.getSpecimen(id));
+	}
+
+	public CompletableFuture<List<Specimen>> getSpecimens()
+	{
+		return submit(dao::getSpecimens);
+	}
+
+	public CompletableFuture<List<Specimen>> getSpecimensOfSpecie(String specieId)
+	{
+		return submit(() -> dao.getSpecimensOfSpecie(specieId));
+	}
+
+	public CompletableFuture<List<Specimen>> getHeaviestSpecimens(int limit)
+	{
+		return submit(() -> dao.getHeaviestSpecimens(limit));
+	}
+
+	public CompletableFuture<List<Specimen>> getSpecimensOfTrip(String tripId)
+	{
+		return submit(() -> dao.getSpecimensOfTrip(tripId));
+	}
+
+	public CompletableFuture<Void> saveSpecimens(Collection<Specimen> specimens)
+	{
+		return execute(() -> dao.saveSpecimens(specimens));
+	}
+
+	public CompletableFuture<Void> deleteSpecimens(Collection<Specimen> specimens)
+	{
+		return execute(() -> dao.deleteSpecimens(specimens));
+	}
+
+	public CompletableFuture<List<Trip>> getTrips()
+	{
+		return submit(dao::getTrips);
+	}
+
+	public CompletableFuture<List<Trip>> getTrips(LocalDate from, LocalDate to)
+	{
+		return submit(() -> dao.getTrips(from, to));
+	}
+
+	public CompletableFuture<Trip> getTrip(String id)
+	{
+		return submit(() -> dao.getTrip(id));
+	}
+
+	public CompletableFuture<Void> saveTrip(Trip trip)
+	{
+		return execute(() -> dao.saveTrip(trip));
+	}
+
+	public CompletableFuture<Void> deleteTrip(Trip trip)
+	{
+		return execute(() -> dao.deleteTrip(trip));
+	}
+
+	/**
+	 * Saves several changes together.
+	 *
+	 * @see FishBaseDao#batch(Consumer)
+	 */
+	public CompletableFuture<Void> batch(Consumer<Batch> changes)
+	{
+		return execute(() -> dao.batch(changes));
+	}
+
+	public CompletableFuture<List<String>> getAutoCompletions(AutoCompleteField field, String text)
+	{
+		return submit(() -> dao.getAutoCompletions(field, text));
+	}
+
+	public CompletableFuture<List<Statistics>> getStatistics(StatisticsField field, String specieId)
+	{
+		return submit(() -> dao.getStatistics(field, specieId));
+	}
+
+	public CompletableFuture<Set<String>> searchSpecimens(String text)
+	{
+		return submit(() -> dao.searchSpecimens(text));
+	}
+
+	public CompletableFuture<Set<String>> searchTrips(String text)
+	{
+		return submit(() -> dao.searchTrips(text));
+	}
+
+	/**
+	 * Writes all pending changes to persistence, after all previously submitted operations.
+	 *
+	 * @see FishBaseDao#flush()
+	 */
+	public CompletableFuture<Void> flush()
+	{
+		return execute(dao::flush);
+	}
+
+	/**
+	 * Gets the number of submitted operations that are not yet completed.
+	 *
+	 * @return number of pending operations
+	 */
+	public int getPendingOperations()
+	{
+		return pendingOperations.get();
+	}
+
+	private CompletableFuture<Void> execute(Runnable operation)
+	{
+		return submit(() ->
+		{
+			operation.run();
+			return null;
+		});
+	}
+
+	private <T> CompletableFuture<T> submit(Supplier<T> operation)
+	{
+		pendingOperations.incrementAndGet();
+		return CompletableFuture.supplyAsync(() ->
+		{
+			try
+			{
+				return operation.get();
+			}
+			finally
+			{
+				pendingOperations.decrementAndGet();
+			}
+		}, executor);
+	}
+}
@@ -0,0 +1,110 @@
+package se.martinuhlen.fishbase.dao;
+
+import static java.lang.String.CASE_INSENSITIVE_ORDER;
+import static java.util.Comparator.naturalOrder;
+import static java.util.stream.Collectors.toList;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.Strings;
+
+import se.martinuhlen.fishbase.domain.AutoCompleteField;
+import se.martinuhlen.fishbase.domain.Specimen;
+
+/**
+ * Index of the values used for each {@link AutoCompleteField}, maintained as specimens are added and removed.
+ * <p>
+ * Each value is reference counted, a value is dropped when the last specimen that used it is removed.
+ * Values are grouped by their case insensitive form, kept in case insensitive order so that a prefix maps to a sub range of the index.
+ * Values that contain the text elsewhere are found by scanning the rest of the index.
+ *
+ * @author Martin
+ */
+class AutoCompletions
+{
+	private static final Comparator<String> VALUE_ORDER = CASE_INSENSITIVE_ORDER.thenComparing(naturalOrder());
+	private static final Comparator<Entry<String, Integer>> RANK = Entry.<String, Integer>comparingByValue().reversed()
+			.thenComparing(Entry.comparingByKey(VALUE_ORDER));
+
+	private final Map<AutoCompleteField, NavigableMap<String, Map<String, Integer>>> counts;
+
+	AutoCompletions()
+	{
+		counts = new EnumMap<>(AutoCompleteField.class);
+		for (AutoCompleteField field : AutoCompleteField.values())
+		{
+			counts.put(field, new TreeMap<>(CASE_INSENSITIVE_ORDER));
+		}
+	}
+
+	synchronized void add(Specimen specimen)
+	{
+		counts.forEach((field, values) ->
+		{
+			String value = specimen.getAutoCompletion(field);
+			if (!isBlank(value))
+			{
+				values.computeIfAbsent(value, v -> new HashMap<>()).merge(value, 1, Integer::sum);
+			}
+		});
+	}
+
+	synchronized void remove(Specimen specimen)
+	{
+		counts.forEach((field, values) ->
+		{
+			String value = specimen.getAutoCompletion(field);
+			if (!isBlank(value))
+			{
+				values.computeIfPresent(value, (v, variants) ->
+				{
+					variants.computeIfPresent(value, (variant, count) -> count == 1 ? null : count - 1);
+					return variants.isEmpty() ? null : variants;
+				});
+			}
+		});
+	}
+
+	/**
+	 * Gets the values of given field that contain given text, ignoring case.
+	 *
+	 * @param field to get values of
+	 * @param text contained in the values, blank for all values
+	 * @return matching values, the ones that start with the text first, and most frequently used first within those and the rest
+	 */
+	synchronized List<String> get(AutoCompleteField field, String text)
+	{
+		NavigableMap<String, Map<String, Integer>> values = counts.get(field);
+		String start = text.trim();
+		if (start.isEmpty())
+		{
+			return ranked(values.values().stream());
+		}
+
+		String end = start + Character.MAX_VALUE;
+		List<String> matches = new ArrayList<>(ranked(values.subMap(start, true, end, false).values().stream()));
+		matches.addAll(ranked(Stream.concat(values.headMap(start, false).entrySet().stream(), values.tailMap(end, true).entrySet().stream())
+				.filter(e -> Strings.CI.contains(e.getKey(), start))
+				.map(Entry::getValue)));
+		return matches;
+	}
+
+	private static List<String> ranked(Stream<Map<String, Integer>> variants)
+	{
+		return variants
+				.flatMap(v -> v.entrySet().stream())
+				.sorted(RANK)
+				.map(Entry::getKey)
+				.collect(toList());
+	}
+}
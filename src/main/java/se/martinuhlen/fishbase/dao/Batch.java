@@ -0,0 +1,33 @@
+package se.martinuhlen.fishbase.dao;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+import se.martinuhlen.fishbase.domain.Specie;
+import se.martinuhlen.fishbase.domain.Specimen;
+import se.martinuhlen.fishbase.domain.Trip;
+
+/**
+ * Changes that are saved together by {@link FishBaseDao#batch(Consumer)}.
+ * <p>
+ * Each change sees the result of the changes made before it in the same batch and is checked when it's made,
+ * but nothing is saved until all changes of the batch have been made.
+ * Then they're all applied at once, so readers see either none or all of them, and each changed file is written once.
+ * If any change fails, none of them are saved.
+ *
+ * @author Martin
+ */
+public interface Batch
+{
+	Batch saveSpecies(Collection<Specie> species);
+
+	Batch deleteSpecies(Collection<Specie> species);
+
+	Batch saveSpecimens(Collection<Specimen> specimens);
+
+	Batch deleteSpecimens(Collection<Specimen> specimens);
+
+	Batch saveTrip(Trip trip);
+
+	Batch deleteTrip(Trip trip);
+}
@@ -0,0 +1,365 @@
+package se.martinuhlen.fishbase.dao;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import se.martinuhlen.fishbase.domain.Domain;
+
+/**
+ * Reads and writes domain objects as a compact, versioned binary snapshot.
+ * <p>
+ * The binary snapshot is written next to the JSON snapshot of a {@link JsonHandler}, which remains the interchange format.
+ * It's much faster to read since all strings are stored once in a dictionary and referred to by index,
+ * UUIDs are stored as two longs and dates as epoch numbers.
+ * <p>
+ * Layout: magic, version, string dictionary and then each object as a length prefixed record,
+ * so that objects superseded by the journal can be skipped without being decoded.
+ *
+ * @author Martin
+ */
+abstract class BinaryHandler<D extends Domain<D>>
+{
+	private static final int MAGIC = 0x46424253; // "FBBS"
+	static final int VERSION = 1;
+
+	/**
+	 * Thrown if a binary snapshot can't be read, i.e. it's written in another version of the format.
+	 */
+	static class UnsupportedFormatException extends IOException
+	{
+		private static final long serialVersionUID = 1L;
+
+		UnsupportedFormatException(String message)
+		{
+			super(message);
+		}
+	}
+
+	/**
+	 * Writes given objects to given stream.
+	 *
+	 * @param output to write to, closed when done
+	 * @param objects to write
+	 */
+	void write(OutputStream output, Collection<D> objects) throws IOException
+	{
+		Output records = new Output();
+		for (D object : objects)
+		{
+			records.startRecord();
+			serialize(records, object);
+			records.endRecord();
+		}
+
+		try (DataOutputStream out = new DataOutputStream(output))
+		{
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			writeVarInt(out, records.strings.size());
+			for (String string : records.strings)
+			{
+				byte[] bytes = string.getBytes(UTF_8);
+				writeVarInt(out, bytes.length);
+				out.write(bytes);
+			}
+			writeVarInt(out, objects.size());
+			records.body.writeTo(out);
+		}
+	}
+
+	/**
+	 * Reads objects from given stream.
+	 *
+	 * @param input to read from, closed when done
+	 * @param superseded tests if the object with a given ID is superseded and should be skipped
+	 * @param consumer of each object that's not superseded
+	 * @throws UnsupportedFormatException if the data isn't a binary snapshot of a supported version
+	 */
+	void read(InputStream input, Predicate<String> superseded, Consumer<? super D> consumer) throws IOException
+	{
+		ByteBuffer buffer;
+		try (input)
+		{
+			buffer = ByteBuffer.wrap(input.readAllBytes());
+		}
+		try
+		{
+			if (buffer.getInt() != MAGIC)
+			{
+				throw new UnsupportedFormatException("Not a binary snapshot");
+			}
+			int version = buffer.get();
+			if (version != VERSION)
+			{
+				throw new UnsupportedFormatException("Unsupported version of binary snapshot: " + version);
+			}
+			String[] strings = new String[readCount(buffer)];
+			for (int i = 0; i < strings.length; i++)
+			{
+				int length = readCount(buffer);
+				strings[i] = new String(buffer.array(), buffer.position(), length, UTF_8);
+				buffer.position(buffer.position() + length);
+			}
+			Input in = new Input(buffer, strings);
+			int count = readCount(buffer);
+			for (int i = 0; i < count; i++)
+			{
+				int length = readCount(buffer);
+				int end = buffer.position() + length;
+				D object = deserialize(in, superseded);
+				if (object != null)
+				{
+					consumer.accept(object);
+				}
+				buffer.position(end);
+			}
+		}
+		catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | DateTimeException e)
+		{
+			throw new IOException("Corrupt binary snapshot", e);
+		}
+	}
+
+	/**
+	 * Writes a single object as a record.
+	 */
+	abstract void serialize(Output out, D object) throws IOException;
+
+	/**
+	 * Reads a single record, the ID must be read first.
+	 *
+	 * @return the read object, or {@code null} if it's superseded
+	 * @see JsonHandler#deserialize(com.google.gson.stream.JsonReader, Predicate)
+	 */
+	abstract D deserialize(Input in, Predicate<String> superseded) throws IOException;
+
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(ByteBuffer buffer)
+	{
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7)
+		{
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0)
+			{
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed varint");
+	}
+
+	/**
+	 * Reads a count of elements, or a length in bytes, that's checked against the remaining bytes,
+	 * so that a corrupt count fails before anything is allocated for it. Each element takes at least one byte.
+	 */
+	private static int readCount(ByteBuffer buffer)
+	{
+		int count = readVarInt(buffer);
+		if (count < 0 || count > buffer.remaining())
+		{
+			throw new IllegalArgumentException("Count " + count + " exceeds the " + buffer.remaining() + " remaining bytes");
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the fields of records.
+	 */
+	static class Output
+	{
+		private static final byte STRING_ID = 0;
+		private static final byte UUID_ID = 1;
+
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream(1 << 16);
+		private final DataOutputStream bodyOut = new DataOutputStream(body);
+		private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+		private final DataOutputStream out = new DataOutputStream(record);
+		private final Map<String, Integer> stringIndex = new HashMap<>();
+		private final List<String> strings = new ArrayList<>();
+
+		private void startRecord()
+		{
+			record.reset();
+		}
+
+		private void endRecord() throws IOException
+		{
+			writeVarInt(bodyOut, record.size());
+			record.writeTo(body);
+		}
+
+		void writeString(String value) throws IOException
+		{
+			writeVarInt(out, value == null ? 0 : stringIndex.computeIfAbsent(value, v ->
+			{
+				strings.add(v);
+				return strings.size();
+			}));
+		}
+
+		void writeId(String id) throws IOException
+		{
+			UUID uuid = toUuid(id);
+			if (uuid == null)
+			{
+				out.writeByte(STRING_ID);
+				writeString(id);
+			}
+			else
+			{
+				out.writeByte(UUID_ID);
+				out.writeLong(uuid.getMostSignificantBits());
+				out.writeLong(uuid.getLeastSignificantBits());
+			}
+		}
+
+		<E> void writeIds(Collection<E> elements, Function<? super E, String> id) throws IOException
+		{
+			writeVarInt(out, elements.size());
+			for (E element : elements)
+			{
+				writeId(id.apply(element));
+			}
+		}
+
+		void writeInt(int value) throws IOException
+		{
+			out.writeInt(value);
+		}
+
+		void writeFloat(float value) throws IOException
+		{
+			out.writeFloat(value);
+		}
+
+		void writeBoolean(boolean value) throws IOException
+		{
+			out.writeBoolean(value);
+		}
+
+		void writeDate(LocalDate date) throws IOException
+		{
+			out.writeLong(date.toEpochDay());
+		}
+
+		void writeDateTime(LocalDateTime dateTime) throws IOException
+		{
+			out.writeLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+			out.writeInt(dateTime.getNano());
+		}
+
+		private static UUID toUuid(String id)
+		{
+			if (id.length() != 36)
+			{
+				return null;
+			}
+			try
+			{
+				UUID uuid = UUID.fromString(id);
+				return uuid.toString().equals(id) ? uuid : null;
+			}
+			catch (IllegalArgumentException e)
+			{
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Reads the fields of records.
+	 */
+	static class Input
+	{
+		private final ByteBuffer buffer;
+		private final String[] strings;
+
+		private Input(ByteBuffer buffer, String[] strings)
+		{
+			this.buffer = buffer;
+			this.strings = strings;
+		}
+
+		String readString()
+		{
+			int index = readVarInt(buffer);
+			return index == 0 ? null : strings[index - 1];
+		}
+
+		String readId()
+		{
+			return switch (buffer.get())
+			{
+				case Output.STRING_ID -> readString();
+				case Output.UUID_ID -> new UUID(buffer.getLong(), buffer.getLong()).toString();
+				default -> throw new IllegalArgumentException("Unknown ID type");
+			};
+		}
+
+		List<String> readIds()
+		{
+			int size = readCount(buffer);
+			List<String> ids = new ArrayList<>(size);
+			for (int i = 0; i < size; i++)
+			{
+				ids.add(readId());
+			}
+			return ids;
+		}
+
+		int readInt()
+		{
+			return buffer.getInt();
+		}
+
+		float readFloat()
+		{
+			return buffer.getFloat();
+		}
+
+		boolean readBoolean()
+		{
+			return buffer.get() != 0;
+		}
+
+		LocalDate readDate()
+		{
+			return LocalDate.ofEpochDay(buffer.getLong());
+		}
+
+		LocalDateTime readDateTime()
+		{
+			return LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+		}
+	}
+}
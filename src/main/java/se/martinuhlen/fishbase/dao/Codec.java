@@ -0,0 +1,115 @@
+package se.martinuhlen.fishbase.dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression of the data stored by a {@link CompressingPersistence}.
+ * <p>
+ * Each codec is identified by the suffix of the names it's stored with, so that data written with any codec can be read.
+ *
+ * @author Martin
+ */
+public enum Codec
+{
+    /**
+     * No compression, data is stored as is.
+     */
+    NONE("")
+    {
+        @Override
+        OutputStream compress(OutputStream output, int level)
+        {
+            return output;
+        }
+
+        @Override
+        InputStream decompress(InputStream input)
+        {
+            return input;
+        }
+    },
+
+    /**
+     * zlib (Deflate) compression.
+     */
+    DEFLATE(".deflate")
+    {
+        @Override
+        OutputStream compress(OutputStream output, int level)
+        {
+            Deflater deflater = new Deflater(level);
+            return new DeflaterOutputStream(output, deflater, BUFFER_SIZE)
+            {
+                @Override
+                public void close() throws IOException
+                {
+                    try
+                    {
+                        super.close();
+                    }
+                    finally
+                    {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        InputStream decompress(InputStream input)
+        {
+            return new InflaterInputStream(input);
+        }
+    },
+
+    /**
+     * GZIP compression, can be read by any gzip tool.
+     */
+    GZIP(".gz")
+    {
+        @Override
+        OutputStream compress(OutputStream output, int level) throws IOException
+        {
+            return new GZIPOutputStream(output, BUFFER_SIZE)
+            {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+
+        @Override
+        InputStream decompress(InputStream input) throws IOException
+        {
+            return new GZIPInputStream(input, BUFFER_SIZE);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String suffix;
+
+    private Codec(String suffix)
+    {
+        this.suffix = suffix;
+    }
+
+    /**
+     * Gets the name that data with given name is stored with when compressed by this codec.
+     */
+    String storedName(String name)
+    {
+        return name + suffix;
+    }
+
+    abstract OutputStream compress(OutputStream output, int level) throws IOException;
+
+    abstract InputStream decompress(InputStream input) throws IOException;
+}
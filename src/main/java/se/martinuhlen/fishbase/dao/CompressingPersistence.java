@@ -0,0 +1,139 @@
+package se.martinuhlen.fishbase.dao;
+
+import static java.util.Objects.requireNonNull;
+import static org.apache.commons.lang3.ArrayUtils.EMPTY_BYTE_ARRAY;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.Deflater;
+
+/**
+ * A {@link Persistence} that compresses data written to, and decompresses data read from, another persistence.
+ * <p>
+ * Data is written with the configured {@link Codec}, under a name that carries the suffix of the codec.
+ * Data is read from the most recently written of the names of all codecs, so data written uncompressed,
+ * or with another codec, is still read transparently. If the other persistence can't tell when data was written,
+ * the first name that's not empty is read, trying the configured codec first.
+ *
+ * @author Martin
+ */
+public class CompressingPersistence implements Persistence
+{
+	private final Persistence delegate;
+	private final Codec codec;
+	private final int level;
+	private final List<Codec> readOrder;
+
+	/**
+	 * Creates a new instance that compresses with the default level of the codec.
+	 *
+	 * @param delegate persistence to store compressed data in
+	 * @param codec to write with
+	 */
+	public CompressingPersistence(Persistence delegate, Codec codec)
+	{
+		this(delegate, codec, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param delegate persistence to store compressed data in
+	 * @param codec to write with
+	 * @param level of compression, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+	 */
+	public CompressingPersistence(Persistence delegate, Codec codec, int level)
+	{
+		if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION)
+		{
+			throw new IllegalArgumentException("Invalid compression level: " + level);
+		}
+		this.delegate = requireNonNull(delegate);
+		this.codec = requireNonNull(codec);
+		this.level = level;
+		this.readOrder = new ArrayList<>(List.of(Codec.values()));
+		this.readOrder.remove(codec);
+		this.readOrder.add(0, codec);
+	}
+
+	@Override
+	public InputStream input(String name) throws IOException
+	{
+		Optional<Codec> newest = newest(name);
+		if (newest.isPresent())
+		{
+			return newest.get().decompress(delegate.input(newest.get().storedName(name)));
+		}
+		for (Codec candidate : readOrder)
+		{
+			PushbackInputStream input = new PushbackInputStream(delegate.input(candidate.storedName(name)));
+			int first = input.read();
+			if (first >= 0)
+			{
+				input.unread(first);
+				return candidate.decompress(input);
+			}
+			input.close();
+		}
+		return new ByteArrayInputStream(EMPTY_BYTE_ARRAY);
+	}
+
+	@Override
+	public OutputStream output(String name) throws IOException
+	{
+		return codec.compress(delegate.output(codec.storedName(name)), level);
+	}
+
+	@Override
+	public void write(String name, OutputWriter writer) throws IOException
+	{
+		delegate.write(codec.storedName(name), output ->
+		{
+			try (OutputStream compressed = codec.compress(output, level))
+			{
+				writer.write(compressed);
+			}
+		});
+	}
+
+	@Override
+	public Optional<Instant> lastModified(String name) throws IOException
+	{
+		Optional<Codec> newest = newest(name);
+		return newest.isPresent()
+				? delegate.lastModified(newest.get().storedName(name))
+				: Optional.empty();
+	}
+
+	@Override
+	public void commit() throws IOException
+	{
+		delegate.commit();
+	}
+
+	/**
+	 * Gets the codec of the most recently written data with given name, the configured codec wins a tie.
+	 */
+	private Optional<Codec> newest(String name) throws IOException
+	{
+		Optional<Codec> newest = Optional.empty();
+		Instant newestTime = null;
+		for (Codec candidate : readOrder)
+		{
+			Optional<Instant> time = delegate.lastModified(candidate.storedName(name));
+			if (time.isPresent() && (newestTime == null || time.get().isAfter(newestTime)))
+			{
+				newest = Optional.of(candidate);
+				newestTime = time.get();
+			}
+		}
+		return newest;
+	}
+}
@@ -1,44 +1,110 @@
 package se.martinuhlen.fishbase.dao;
 
-import static java.lang.Thread.currentThread;
-import static java.lang.reflect.Proxy.newProxyInstance;
-import static java.util.concurrent.CompletableFuture.supplyAsync;
-
-import java.lang.reflect.InvocationTargetException;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.Collection;
 import java.util.List;
-import java.util.SortedSet;
-import java.util.concurrent.CompletableFuture;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import se.martinuhlen.fishbase.domain.AutoCompleteField;
+import se.martinuhlen.fishbase.domain.Domain;
 import se.martinuhlen.fishbase.domain.Photo;
 import se.martinuhlen.fishbase.domain.Specie;
 import se.martinuhlen.fishbase.domain.Specimen;
+import se.martinuhlen.fishbase.domain.Statistics;
+import se.martinuhlen.fishbase.domain.StatisticsField;
 import se.martinuhlen.fishbase.domain.Trip;
+import se.martinuhlen.fishbase.filter.SpecimenTextPredicate;
+import se.martinuhlen.fishbase.filter.TripTextPredicate;
 
 public interface FishBaseDao
 {
 	public static FishBaseDao create(Persistence persistence)
 	{
-	    CompletableFuture<JsonDao> futureDao = supplyAsync(() -> new JsonDao(persistence));
-	    return (FishBaseDao) newProxyInstance(currentThread().getContextClassLoader(), new Class<?>[] {FishBaseDao.class}, (proxy, method, args) ->
-	    {
-	        JsonDao dao = futureDao.get();
-	        try
-	        {
-	        	return method.invoke(dao, args);
-	        }
-	        catch (InvocationTargetException e)
-	        {
-	        	throw e.getCause();
-	        }
-	    });
+	    return create(persistence, JsonFormat.PRETTY);
+	}
+
+	public static FishBaseDao create(Persistence persistence, JsonFormat format)
+	{
+	    return create(persistence, format, Sharding.NONE);
+	}
+
+	/**
+	 * Creates a DAO that loads its data in the background, it's returned right away.
+	 * <p>
+	 * Calls made before the data is loaded wait for it, use {@link #onReady(Runnable)} or {@link #isReady()} to not block.
+	 * Species and trips are loaded first, specimens and photos in the background,
+	 * so that each kind of data can be used as soon as it's loaded, see {@link #onReady(Class, Runnable)}.
+	 */
+	public static FishBaseDao create(Persistence persistence, JsonFormat format, Sharding sharding)
+	{
+	    return new LazyFishBaseDao(() -> new JsonDao(persistence, format, sharding));
+	}
+
+	/**
+	 * Gets whether the data of this DAO is loaded, so that calls don't wait for it.
+	 *
+	 * @return {@code true} if ready
+	 */
+	default boolean isReady()
+	{
+	    return true;
+	}
+
+	/**
+	 * Runs an action once the data of this DAO is loaded, right away if it already is.
+	 *
+	 * @param action to run, by the loading thread or by the caller if already loaded, not at all if loading fails
+	 */
+	default void onReady(Runnable action)
+	{
+	    action.run();
+	}
+
+	/**
+	 * Waits for the data of this DAO to be loaded.
+	 *
+	 * @param timeout max time to wait
+	 * @return {@code true} if ready, {@code false} if timed out or interrupted
+	 * @throws RuntimeException the failure, if loading failed
+	 */
+	default boolean awaitReady(Duration timeout)
+	{
+	    return true;
+	}
+
+	/**
+	 * Gets whether the data of given type is loaded, so that calls that only get that type of data don't wait for it.
+	 *
+	 * @param type of data, such as {@code Trip.class}
+	 * @return {@code true} if ready
+	 */
+	default boolean isReady(Class<? extends Domain<?>> type)
+	{
+	    return true;
+	}
+
+	/**
+	 * Runs an action once the data of given type is loaded, right away if it already is.
+	 *
+	 * @param type of data, such as {@code Trip.class}
+	 * @param action to run, by the loading thread or by the caller if already loaded, not at all if loading fails
+	 */
+	default void onReady(Class<? extends Domain<?>> type, Runnable action)
+	{
+	    action.run();
 	}
 
 	Photo getPhoto(String id);
 
 	List<Photo> getPhotos(); // FIXME In which order?
 
+	/**
+	 * Gets the photos of a specimen, ordered by time.
+	 */
+	List<Photo> getPhotosOfSpecimen(String specimenId);
+
 	Specie getSpecie(String id);
 
 	List<Specie> getSpecies();
@@ -53,17 +119,98 @@ public interface FishBaseDao
 	
 	List<Specimen> getSpecimens();
 
+	/**
+	 * Gets the specimens of a specie, heaviest first.
+	 */
+	List<Specimen> getSpecimensOfSpecie(String specieId);
+
+	/**
+	 * Gets the heaviest specimens of each specie, in the order of the species and heaviest first.
+	 *
+	 * @param limit max number of specimens of each specie, 1 for the personal bests
+	 * @return heaviest specimens of each specie
+	 */
+	List<Specimen> getHeaviestSpecimens(int limit);
+
+	/**
+	 * Gets the specimens of a trip, ordered by instant.
+	 */
+	List<Specimen> getSpecimensOfTrip(String tripId);
+
 	void saveSpecimens(Collection<Specimen> specimens);
 
 	void deleteSpecimens(Collection<Specimen> specimens);
 
 	List<Trip> getTrips();
 
+	/**
+	 * Gets the trips that started within given dates (inclusive), latest first.
+	 */
+	List<Trip> getTrips(LocalDate from, LocalDate to);
+
 	Trip getTrip(String id);
 
 	void saveTrip(Trip trip);
 
 	void deleteTrip(Trip trip);
 
-	SortedSet<String> getAutoCompletions(AutoCompleteField field);
+	/**
+	 * Saves several changes together, each changed file is written once no matter how many objects of it are changed.
+	 * <p>
+	 * The changes are made to a {@link Batch} by given consumer and saved after it returns,
+	 * if it or any of its changes fail nothing is saved.
+	 *
+	 * @param changes makes the changes to the batch
+	 */
+	void batch(Consumer<Batch> changes);
+
+	/**
+	 * Gets values previously used for a field that contain given text, ignoring case.
+	 *
+	 * @param field to get values of
+	 * @param text contained in the values, blank for all values
+	 * @return matching values, the ones that start with the text first, and most frequently used first within those and the rest
+	 */
+	List<String> getAutoCompletions(AutoCompleteField field, String text);
+
+	/**
+	 * Gets statistics of the specimens, grouped by a field.
+	 * <p>
+	 * Statistics are maintained as specimens are saved and deleted, no specimens are aggregated by this call.
+	 *
+	 * @param field to group by
+	 * @param specieId of the specimens, {@code null} for all species
+	 * @return statistics of each value of the field, most specimens first
+	 */
+	List<Statistics> getStatistics(StatisticsField field, String specieId);
+
+	/**
+	 * Gets the IDs of the specimens that match given filter text, the same specimens as a {@link SpecimenTextPredicate} accepts.
+	 *
+	 * @param text to filter by, blank for all specimens
+	 * @return IDs of the matching specimens
+	 */
+	Set<String> searchSpecimens(String text);
+
+	/**
+	 * Gets the IDs of the trips that match given filter text, the same trips as a {@link TripTextPredicate} accepts.
+	 *
+	 * @param text to filter by, blank for all trips
+	 * @return IDs of the matching trips
+	 */
+	Set<String> searchTrips(String text);
+
+	/**
+	 * Writes all pending changes to persistence, blocks until they've been written.
+	 * <p>
+	 * Saved changes are written behind the back of the caller, this must be called before shutdown for them to be durable.
+	 */
+	void flush();
+
+	/**
+	 * Gets the number of files with saved changes that are not yet written to persistence.
+	 *
+	 * @return number of pending writes
+	 */
+	int getPendingWrites();
 }
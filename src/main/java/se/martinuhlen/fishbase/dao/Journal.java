@@ -0,0 +1,141 @@
+package se.martinuhlen.fishbase.dao;
+
+import static java.lang.System.nanoTime;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import se.martinuhlen.fishbase.domain.Domain;
+import se.martinuhlen.fishbase.utils.Logger;
+
+/**
+ * Journal of changes made to one type of domain objects since its snapshot was last written.
+ * <p>
+ * Saving an object records only the change of that object instead of rewriting the whole snapshot.
+ * The journal holds the latest change of each object, deletes are recorded as tombstones.
+ * When the journal grows beyond its threshold it's compacted, a new snapshot is written and the journal is emptied.
+ * Both the journal and the snapshot are written by a {@link WriteBehind}, so several changes in a row are written at once.
+ * <p>
+ * Readers replay the journal over the snapshot, see {@link JsonHandler.Reader}.
+ *
+ * @author Martin
+ */
+class Journal<D extends Domain<D>>
+{
+	static final int DEFAULT_COMPACTION_THRESHOLD = 500;
+
+	private static final Logger LOGGER = Logger.getLogger(Journal.class);
+
+	private final JsonHandler<D> handler;
+	private final Supplier<? extends Collection<D>> snapshot;
+	private final int compactionThreshold;
+	private final WriteBehind writer;
+	private final Map<String, D> changes;
+	private boolean compacting;
+
+	/**
+	 * Creates a new journal.
+	 *
+	 * @param handler that reads and writes the snapshot and journal
+	 * @param snapshot supplies the current state of all objects, ordered as they should be written
+	 * @param compactionThreshold number of journaled objects that triggers a compaction
+	 * @param writer that writes the journal and snapshot
+	 */
+	Journal(JsonHandler<D> handler, Supplier<? extends Collection<D>> snapshot, int compactionThreshold, WriteBehind writer)
+	{
+		if (compactionThreshold < 1)
+		{
+			throw new IllegalArgumentException("compactionThreshold must be positive: " + compactionThreshold);
+		}
+		this.handler = requireNonNull(handler);
+		this.snapshot = requireNonNull(snapshot);
+		this.compactionThreshold = compactionThreshold;
+		this.writer = requireNonNull(writer);
+		this.changes = new LinkedHashMap<>();
+	}
+
+	/**
+	 * Restores changes that were replayed when reading.
+	 *
+	 * @param replayed changes returned by {@link JsonHandler.Reader#read}
+	 */
+	synchronized void restore(Map<String, D> replayed)
+	{
+		changes.putAll(replayed);
+	}
+
+	/**
+	 * Records changes of objects.
+	 *
+	 * @param upserts objects that have been added or updated
+	 * @param deletes IDs of objects that have been deleted
+	 * @param replaced previous versions of the added, updated and deleted objects, that existed before
+	 */
+	synchronized void record(Collection<D> upserts, Collection<String> deletes, Collection<D> replaced)
+	{
+		if (upserts.isEmpty() && deletes.isEmpty())
+		{
+			return;
+		}
+		upserts.forEach(object -> changes.put(object.getId(), object));
+		deletes.forEach(id -> changes.put(id, null));
+		handler.changed(upserts);
+		handler.changed(replaced);
+		writer.schedule(handler.getJournalName(), this::writeJournal);
+
+		if (changes.size() >= compactionThreshold && !compacting)
+		{
+			compacting = true;
+			long changeCount = handler.getChangeCount();
+			Collection<D> objects = new ArrayList<>(snapshot.get());
+			Map<String, D> compacted = new LinkedHashMap<>(changes);
+			writer.schedule(handler.getFileName(), () -> compact(objects, changeCount, compacted));
+		}
+	}
+
+	private synchronized void writeJournal()
+	{
+		handler.writeJournal(changes);
+	}
+
+	private void compact(Collection<D> objects, long changeCount, Map<String, D> compacted)
+	{
+		long start = nanoTime();
+		try
+		{
+			handler.write(objects, changeCount);
+			synchronized (this)
+			{
+				// Changes recorded while the snapshot was written stay in the journal
+				compacted.forEach(changes::remove);
+				handler.writeJournal(changes);
+			}
+			LOGGER.log("Compacted " + compacted.size() + " changes into " + objects.size() + " objects in " + NANOSECONDS.toMillis(nanoTime() - start) + " ms");
+		}
+		finally
+		{
+			synchronized (this)
+			{
+				compacting = false;
+			}
+		}
+	}
+
+	/**
+	 * Writes a new snapshot of all objects and empties the journal.
+	 */
+	synchronized void compact()
+	{
+		// Objects may have been put without being recorded, so every snapshot is written
+		Collection<D> objects = snapshot.get();
+		handler.changed(objects);
+		handler.write(objects, handler.getChangeCount());
+		changes.clear();
+		handler.writeJournal(changes);
+	}
+}
@@ -1,149 +1,425 @@
 package se.martinuhlen.fishbase.dao;
 
-import static java.lang.String.CASE_INSENSITIVE_ORDER;
+import static java.lang.System.nanoTime;
 import static java.util.Collections.emptyList;
-import static java.util.Collections.emptySortedSet;
 import static java.util.Comparator.comparing;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
-import static java.util.function.Function.identity;
-import static java.util.stream.Collectors.collectingAndThen;
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.stream.Collectors.groupingBy;
-import static java.util.stream.Collectors.mapping;
-import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toMap;
 import static java.util.stream.Collectors.toSet;
 import static se.martinuhlen.fishbase.domain.Trip.EMPTY_TRIP;
+import static se.martinuhlen.fishbase.utils.Concurrency.await;
+import static se.martinuhlen.fishbase.utils.Concurrency.join;
+import static se.martinuhlen.fishbase.utils.Concurrency.newFixedThreadPool;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
-import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.UnaryOperator;
 
 import com.google.common.annotations.VisibleForTesting;
 
 import se.martinuhlen.fishbase.domain.AutoCompleteField;
+import se.martinuhlen.fishbase.domain.Domain;
 import se.martinuhlen.fishbase.domain.Photo;
 import se.martinuhlen.fishbase.domain.Specie;
 import se.martinuhlen.fishbase.domain.Specimen;
+import se.martinuhlen.fishbase.domain.Statistics;
+import se.martinuhlen.fishbase.domain.StatisticsField;
 import se.martinuhlen.fishbase.domain.Trip;
+import se.martinuhlen.fishbase.filter.SpecieTextPredicate;
+import se.martinuhlen.fishbase.filter.SpecimenTextPredicate;
+import se.martinuhlen.fishbase.filter.TextIndex;
+import se.martinuhlen.fishbase.filter.TripTextPredicate;
+import se.martinuhlen.fishbase.utils.Logger;
 
 class JsonDao implements FishBaseDao
 {
+	private static final Logger LOGGER = Logger.getLogger(JsonDao.class);
+
 	private final JsonHandler<Photo> photoHandler;
 	private final JsonHandler<Specie> specieHandler;
 	private final JsonHandler<Specimen> specimenHandler;
 	private final JsonHandler<Trip> tripHandler;
 
-	private final Map<String, Photo> photos;
-	private final Map<String, Specie> species;
-	private final Map<String, Specimen> specimens;
-	private final Map<String, Trip> trips;
-    private Map<AutoCompleteField, SortedSet<String>> autoCompleteMap;
+	private final Journal<Photo> photoJournal;
+	private final Journal<Specie> specieJournal;
+	private final Journal<Specimen> specimenJournal;
+	private final Journal<Trip> tripJournal;
+	private final Persistence persistence;
+	private final WriteBehind writer;
+
+	// The current version of all data, readers use it without locking and writers publish the next one with compare-and-set
+	private final AtomicReference<Version> version;
+
+	// Writers are serialized so that the journals record changes in the order they're published, readers never take this lock
+	private final Object writeLock = new Object();
+
+	// Indexes of the current version that aren't part of it, updated by each writer right after it published a version
+	private final TextIndex specieText;
+	private final TextIndex specimenText;
+	private final TextIndex tripText;
+	private final AutoCompletions autoCompletions;
+	private final SpecimenStatistics statistics;
+
+	// Completed when each type of data is loaded, readers of a type wait for its own stage while writers wait for all of them
+	private final CompletableFuture<Void> photosLoaded;
+	private final CompletableFuture<Void> speciesLoaded;
+	private final CompletableFuture<Void> specimensLoaded;
+	private final CompletableFuture<Void> tripsLoaded;
+	private final CompletableFuture<Void> allLoaded;
+	private final Map<Class<?>, CompletableFuture<Void>> loadedByType;
 
 	JsonDao(Persistence persistence)
 	{
-		photoHandler = new PhotoJsonHandler(persistence);
-		specieHandler = new SpecieJsonHandler(persistence);
-		specimenHandler = new SpecimenJsonHandler(persistence, this::getSpecie);
-		tripHandler = new TripJsonHandler(persistence, this::getSpecimen, this::getPhoto);
+		this(persistence, JsonFormat.PRETTY);
+	}
 
-		JsonHandler<Photo>.Reader photoReader = photoHandler.reader();
-	    JsonHandler<Specie>.Reader specieReader = specieHandler.reader();
-	    JsonHandler<Specimen>.Reader specimenReader = specimenHandler.reader();
-	    JsonHandler<Trip>.Reader tripReader = tripHandler.reader();
+	JsonDao(Persistence persistence, JsonFormat format)
+	{
+		this(persistence, format, Sharding.NONE);
+	}
 
-        photos = photoReader.read()
-        		.stream()
-        		.collect(toMap(Photo::getId, identity()));
+	JsonDao(Persistence persistence, JsonFormat format, Sharding sharding)
+	{
+		this(persistence, format, sharding, Journal.DEFAULT_COMPACTION_THRESHOLD, new WriteBehind(persistence));
+	}
 
-        species = specieReader.read()
+	JsonDao(Persistence persistence, JsonFormat format, Sharding sharding, int compactionThreshold, WriteBehind writer)
+	{
+		this.persistence = requireNonNull(persistence);
+		this.writer = requireNonNull(writer);
+		StringDictionary dictionary = new StringDictionary();
+		photoHandler = new PhotoJsonHandler(persistence, format, sharding, dictionary);
+		specieHandler = new SpecieJsonHandler(persistence, format);
+		specimenHandler = new SpecimenJsonHandler(persistence, format, sharding, dictionary, this::getSpecie);
+		tripHandler = new TripJsonHandler(persistence, format, sharding, this::getSpecimen, this::getPhoto);
+
+        version = new AtomicReference<>(Version.EMPTY);
+        specieText = new TextIndex();
+        specimenText = new TextIndex();
+        tripText = new TextIndex();
+        autoCompletions = new AutoCompletions();
+        statistics = new SpecimenStatistics();
+
+        // The journals snapshot the current version as is, as they may compact while their own type is loading
+        photoJournal = new Journal<>(photoHandler, () -> version.get().getPhotos(), compactionThreshold, writer);
+        specieJournal = new Journal<>(specieHandler, () -> version.get().getSpecies(), compactionThreshold, writer);
+        specimenJournal = new Journal<>(specimenHandler, () -> version.get().getSpecimens()
+                .stream()
+                .sorted(comparing(Specimen::getInstant).thenComparing(Specimen::getId))
+                .collect(toList()), compactionThreshold, writer);
+        tripJournal = new Journal<>(tripHandler, () -> version.get().getTrips()
                 .stream()
-                .collect(toMap(Specie::getId, identity()));
+                .sorted(comparing(Trip::getStartDate).thenComparing(Trip::getDescription))
+                .collect(toList()), compactionThreshold, writer);
+
+        // Species, trips and photos are independent of each other and specimens need species.
+        // Trips resolve their specimens and photos when first accessed, so they don't wait for them to load.
+        long start = nanoTime();
+        ExecutorService loader = newFixedThreadPool(4, true, "JsonDao-loader");
+        speciesLoaded = runAsync(stage("species", () -> specieJournal.restore(specieHandler.reader().read(this::putSpecie)), () -> version.get().getSpecies().size()), loader);
+        tripsLoaded = runAsync(stage("trips", () -> tripJournal.restore(tripHandler.reader().read(this::putTrip)), () -> version.get().getTrips().size()), loader);
+        photosLoaded = runAsync(stage("photos", () -> photoJournal.restore(photoHandler.reader().read(this::putPhoto)), () -> version.get().getPhotos().size()), loader);
+        specimensLoaded = speciesLoaded.thenRunAsync(stage("specimens", () -> specimenJournal.restore(specimenHandler.reader().read(this::putSpecimen)), () -> version.get().getSpecimens().size()), loader);
+        allLoaded = CompletableFuture.allOf(speciesLoaded, tripsLoaded, photosLoaded, specimensLoaded);
+        loadedByType = Map.of(
+                Photo.class, photosLoaded,
+                Specie.class, speciesLoaded,
+                Specimen.class, specimensLoaded,
+                Trip.class, tripsLoaded);
+        allLoaded.whenComplete((v, e) ->
+        {
+            loader.shutdown();
+            if (e == null)
+            {
+                LOGGER.log("Loaded all data in " + millisSince(start) + " ms");
+                LOGGER.log(dictionary.toString());
+            }
+        });
+	}
 
-        specimens = specimenReader.read()
-        		.stream()
-        		.collect(toMap(Specimen::getId, identity()));
+	/**
+	 * Creates a load stage that logs how long it took to load some data.
+	 */
+	private static Runnable stage(String name, Runnable loading, IntSupplier loaded)
+	{
+	    return () ->
+	    {
+	        long start = nanoTime();
+	        loading.run();
+	        LOGGER.log("Loaded " + loaded.getAsInt() + " " + name + " in " + millisSince(start) + " ms");
+	    };
+	}
 
-        trips = tripReader.read()
-            .stream()
-            .collect(toMap(Trip::getId, identity()));
+	private static long millisSince(long startNanos)
+	{
+	    return NANOSECONDS.toMillis(nanoTime() - startNanos);
 	}
 
 	@VisibleForTesting
 	JsonDao(Persistence persistence, Collection<Specie> testSpecies, Collection<Trip> testTrips)
     {
 	    this(persistence);
-	    this.photos.clear();
-	    this.photos.putAll(testTrips.stream().flatMap(t -> t.getPhotos().stream()).collect(toMap(Photo::getId, identity())));
-	    this.species.clear();
-	    this.species.putAll(testSpecies.stream().collect(toMap(Specie::getId, identity())));
-	    this.specimens.clear();
-	    this.specimens.putAll(testTrips.stream().flatMap(t -> t.getSpecimens().stream()).collect(toMap(Specimen::getId, identity())));
-	    this.trips.clear();
-	    this.trips.putAll(testTrips.stream().collect(toMap(Trip::getId, identity())));
+	    join(allLoaded);
+	    getPhotos().forEach(photo -> removePhoto(photo.getId()));
+	    testTrips.stream().flatMap(t -> t.getPhotos().stream()).forEach(this::putPhoto);
+	    getSpecies().forEach(specie -> removeSpecie(specie.getId()));
+	    testSpecies.forEach(this::putSpecie);
+	    getSpecimens().forEach(specimen -> removeSpecimen(specimen.getId()));
+	    testTrips.stream().flatMap(t -> t.getSpecimens().stream()).forEach(this::putSpecimen);
+	    getTrips().forEach(trip -> removeTrip(trip.getId()));
+	    testTrips.forEach(this::putTrip);
     }
 
-	@VisibleForTesting
-	void writeAll()
+	@Override
+	public boolean isReady()
 	{
-		writePhotos();
-		writeSpecies();
-		writeSpecimens();
-		writeTrips();
+	    return isLoaded(allLoaded);
 	}
 
-	private void writePhotos()
+	@Override
+	public void onReady(Runnable action)
 	{
-		photoHandler.write(photos.values());
+	    allLoaded.thenRun(action);
 	}
 
-	private void writeSpecies()
+	@Override
+	public boolean awaitReady(Duration timeout)
 	{
-		specieHandler.write(getSpecies());
+	    return await(allLoaded, timeout);
 	}
 
-	private void writeSpecimens()
+	@Override
+	public boolean isReady(Class<? extends Domain<?>> type)
 	{
-	    autoCompleteMap = null;
-		specimenHandler.write(streamSpecimens()
-				.sorted(comparing(Specimen::getInstant).thenComparing(Specimen::getId))
-				.collect(toList()));
+	    return isLoaded(loaded(type));
 	}
 
-	private void writeTrips()
+	@Override
+	public void onReady(Class<? extends Domain<?>> type, Runnable action)
 	{
-		tripHandler.write(streamTrips()
-				.sorted(comparing(Trip::getStartDate).thenComparing(Trip::getDescription))
-				.collect(toList()));
+	    loaded(type).thenRun(action);
 	}
 
-	private Stream<Specimen> streamSpecimens()
+	private CompletableFuture<Void> loaded(Class<? extends Domain<?>> type)
 	{
-		return specimens.values().stream();
+	    CompletableFuture<Void> loaded = loadedByType.get(type);
+	    if (loaded == null)
+	    {
+	        throw new IllegalArgumentException("Unknown type of data: " + type);
+	    }
+	    return loaded;
 	}
 
-	private Stream<Trip> streamTrips()
+	private static boolean isLoaded(CompletableFuture<Void> loaded)
 	{
-	    return trips.values().stream();
+	    return loaded.isDone() && !loaded.isCompletedExceptionally();
 	}
 
-    private Stream<Specie> streamSpecies()
-    {
-        return species.values().stream();
-    }
+	/**
+	 * Gets the current version once given stage is loaded, throwing its failure if it failed.
+	 */
+	private Version version(CompletableFuture<Void> loaded)
+	{
+	    join(loaded);
+	    return version.get();
+	}
+
+	/**
+	 * Publishes the version that given change makes of the current version.
+	 * <p>
+	 * The change is applied again if another writer published a version in the meantime, which only the load stages do,
+	 * as they load different kinds of objects concurrently, all other writers are serialized by {@link #writeLock}.
+	 *
+	 * @param change to apply, must be free of side effects
+	 * @return the version that was replaced
+	 */
+	private Version publish(UnaryOperator<Version> change)
+	{
+	    return version.getAndUpdate(change);
+	}
+
+	private void putPhoto(Photo photo)
+	{
+	    publish(v -> v.withPhotos(List.of(photo)));
+	}
+
+	private void removePhoto(String id)
+	{
+	    publish(v -> v.withoutPhotos(List.of(id)));
+	}
+
+	private void putSpecie(Specie specie)
+	{
+	    Version previous = publish(v -> v.withSpecies(List.of(specie)));
+	    reindexSpecie(previous.getSpecie(specie.getId()), specie);
+	}
+
+	private void removeSpecie(String id)
+	{
+	    Version previous = publish(v -> v.withoutSpecies(List.of(id)));
+	    reindexSpecie(previous.getSpecie(id), null);
+	}
+
+	private void putSpecimen(Specimen specimen)
+	{
+	    Version previous = publish(v -> v.withSpecimens(List.of(specimen)));
+	    reindexSpecimen(previous.getSpecimen(specimen.getId()), specimen);
+	}
+
+	private void removeSpecimen(String id)
+	{
+	    Version previous = publish(v -> v.withoutSpecimens(List.of(id)));
+	    reindexSpecimen(previous.getSpecimen(id), null);
+	}
+
+	private void putTrip(Trip trip)
+	{
+	    Version previous = publish(v -> v.withTrip(trip));
+	    reindexTrip(previous.getTrip(trip.getId()), trip);
+	}
+
+	private void removeTrip(String id)
+	{
+	    Version previous = publish(v -> v.withoutTrip(id));
+	    reindexTrip(previous.getTrip(id), null);
+	}
+
+	/**
+	 * Updates the indexes that aren't part of a version for a specie that was replaced.
+	 *
+	 * @param old version of the specie, {@code null} if added
+	 * @param specie new version of the specie, {@code null} if removed
+	 */
+	private void reindexSpecie(Specie old, Specie specie)
+	{
+	    if (old != null)
+	    {
+	        specieText.remove(old.getId());
+	    }
+	    if (specie != null)
+	    {
+	        specieText.put(specie.getId(), SpecieTextPredicate.textOf(specie));
+	    }
+	}
+
+	/**
+	 * Updates the indexes that aren't part of a version for a specimen that was replaced.
+	 *
+	 * @param old version of the specimen, {@code null} if added
+	 * @param specimen new version of the specimen, {@code null} if removed
+	 */
+	private void reindexSpecimen(Specimen old, Specimen specimen)
+	{
+	    if (old != null)
+	    {
+	        autoCompletions.remove(old);
+	        statistics.remove(old);
+	        specimenText.remove(old.getId());
+	    }
+	    if (specimen != null)
+	    {
+	        autoCompletions.add(specimen);
+	        statistics.add(specimen);
+	        specimenText.put(specimen.getId(), SpecimenTextPredicate.textOf(specimen));
+	    }
+	}
+
+	/**
+	 * Updates the indexes that aren't part of a version for a trip that was replaced.
+	 *
+	 * @param old version of the trip, {@code null} if added
+	 * @param trip new version of the trip, {@code null} if removed
+	 */
+	private void reindexTrip(Trip old, Trip trip)
+	{
+	    if (old != null)
+	    {
+	        tripText.remove(old.getId());
+	    }
+	    if (trip != null)
+	    {
+	        tripText.put(trip.getId(), TripTextPredicate.textOf(trip));
+	    }
+	}
+
+	@VisibleForTesting
+	void writeAll()
+	{
+		join(allLoaded);
+		photoJournal.compact();
+		specieJournal.compact();
+		specimenJournal.compact();
+		tripJournal.compact();
+		try
+		{
+			persistence.commit();
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void flush()
+	{
+	    writer.flush();
+	}
+
+	@Override
+	public int getPendingWrites()
+	{
+	    return writer.getPendingWrites();
+	}
+
+	/**
+	 * Gets the candidates that differ from their current version, i.e. the ones that need to be journaled.
+	 */
+	private static <D extends Domain<D>> List<D> changed(Collection<D> candidates, Function<String, D> current)
+	{
+	    return candidates.stream()
+	            .filter(candidate -> !candidate.equals(current.apply(candidate.getId())))
+	            .collect(toList());
+	}
+
+	/**
+	 * Gets the IDs of the previous objects that are no longer among the current objects.
+	 */
+	private static <D extends Domain<D>> Set<String> removed(Collection<D> previous, Collection<D> current)
+	{
+	    Set<String> ids = previous.stream().map(Domain::getId).collect(toSet());
+	    current.forEach(object -> ids.remove(object.getId()));
+	    return ids;
+	}
+
+	private static Set<String> ids(Collection<? extends Domain<?>> objects)
+	{
+	    return objects.stream().map(Domain::getId).collect(toSet());
+	}
 
     @Override
     public Photo getPhoto(String id)
     {
-    	Photo photo = photos.get(id);
+    	Photo photo = version(photosLoaded).getPhoto(id);
     	if (photo == null)
     	{
     		throw new IllegalArgumentException("There's no Photo with id="+id);
@@ -154,17 +430,19 @@ class JsonDao implements FishBaseDao
     @Override
     public List<Photo> getPhotos()
     {
-    	return photos
-    			.values()
-    			.stream()
-    			.sorted(comparing(Photo::getTime).reversed())
-    			.collect(toList());
+    	return version(photosLoaded).getPhotos();
+    }
+
+    @Override
+    public List<Photo> getPhotosOfSpecimen(String specimenId)
+    {
+        return version(photosLoaded).getPhotosOfSpecimen(specimenId);
     }
 
     @Override
     public Specie getSpecie(String id)
     {
-	    Specie specie = species.get(id);
+	    Specie specie = version(speciesLoaded).getSpecie(id);
 	    if (specie == null)
 	    {
 	    	throw new IllegalArgumentException("There's no Specie with id="+id);
@@ -175,55 +453,31 @@ class JsonDao implements FishBaseDao
 	@Override
 	public List<Specie> getSpecies()
 	{
-		return streamSpecies()
-		        .sorted(comparing(Specie::getName, CASE_INSENSITIVE_ORDER))
-				.collect(toList());
+		return version(speciesLoaded).getSpecies();
 	}
 
 	@Override
 	public void saveSpecies(Collection<Specie> species)
 	{
-	    if (!species.isEmpty())
-	    {
-    	    Map<String, Specie> specieMap = species.stream().collect(toMap(Specie::getId, identity()));
-    	    this.species.putAll(specieMap);
-            writeSpecies();
-            species.forEach(Specie::markPersisted);
-
-    	    Set<Specimen> newSpecimens = streamSpecimens()
-        	        .filter(specimen -> specieMap.containsKey(specimen.getSpecie().getId()))
-        	        .map(specimen -> specimen.withSpecie(specieMap.get(specimen.getSpecie().getId())))
-        	        .collect(toSet());
-
-    	    saveSpecimens(newSpecimens, false);
-	    }
+	    batch(batch -> batch.saveSpecies(species));
 	}
 
 	@Override
 	public boolean isSpecieDeletable(Specie specie)
 	{
-	    return !streamSpecimens()
-	            .anyMatch(s -> s.getSpecie().equalsId(specie));
+	    return !version(specimensLoaded).hasSpecimensOfSpecie(specie.getId());
 	}
 
 	@Override
 	public void deleteSpecies(Collection<Specie> species)
 	{
-		species.forEach(s ->
-		{
-			if (!isSpecieDeletable(s))
-			{
-				throw new IllegalArgumentException("Specie is not deletable: " + s);
-			}
-		});
-
-		species.forEach(s -> this.species.remove(s.getId()));
+	    batch(batch -> batch.deleteSpecies(species));
 	}
 
 	@Override
 	public Specimen getSpecimen(String id)
 	{
-	    Specimen specimen = specimens.get(id);
+	    Specimen specimen = version(specimensLoaded).getSpecimen(id);
 	    if (specimen == null)
 	    {
 	        throw new IllegalArgumentException("There's no Specimen with id="+id);
@@ -234,97 +488,90 @@ class JsonDao implements FishBaseDao
 	@Override
 	public List<Specimen> getSpecimens()
 	{
-	    return streamSpecimens()
-	            .sorted(comparing((Specimen s) -> s.getSpecie().getName())
-	                    .thenComparing(comparing(Specimen::getWeight).reversed()))
-	            .collect(toList());
+	    return version(specimensLoaded).getSpecimens();
 	}
 
 	@Override
-	public void saveSpecimens(Collection<Specimen> specimens)
+	public List<Specimen> getSpecimensOfSpecie(String specieId)
 	{
-	    if (!specimens.isEmpty())
+	    return version(specimensLoaded).getSpecimensOfSpecie(specieId);
+	}
+
+	@Override
+	public List<Specimen> getHeaviestSpecimens(int limit)
+	{
+	    if (limit < 1)
 	    {
-    	    saveSpecimens(specimens, true);
+	        throw new IllegalArgumentException("limit must be positive but was " + limit);
 	    }
+	    Version current = version(specimensLoaded);
+	    return current.getSpecies()
+	            .stream()
+	            .map(specie -> current.getSpecimensOfSpecie(specie.getId()))
+	            .flatMap(specimens -> specimens.subList(0, Math.min(limit, specimens.size())).stream())
+	            .collect(toList());
+	}
+
+	@Override
+	public List<Specimen> getSpecimensOfTrip(String tripId)
+	{
+	    return version(specimensLoaded).getSpecimensOfTrip(tripId);
 	}
 
-	private void saveSpecimens(Collection<Specimen> specimens, boolean writeSpecimens)
+	@Override
+	public void saveSpecimens(Collection<Specimen> specimens)
 	{
-		Map<String, Specimen> specimenMap = specimens.stream().collect(toMap(Specimen::getId, identity()));
-		Map<String, Set<Specimen>> tripSpecimens = specimens.stream()
-		        .collect(groupingBy(Specimen::getTripId, toSet()));
+	    batch(batch -> batch.saveSpecimens(specimens));
+	}
 
-		Map<String, Trip> modifiedTrips = tripSpecimens.entrySet().stream()
+	/**
+	 * Gets the trips of given specimens, with the specimens added to them or replacing their previous versions.
+	 */
+	private static Collection<Trip> tripsWithSpecimens(Version version, Collection<Specimen> specimens)
+	{
+		Set<String> ids = ids(specimens);
+		return specimens.stream()
+		        .collect(groupingBy(Specimen::getTripId, toSet()))
+		        .entrySet()
+		        .stream()
 		        .map(e ->
 		        {
-		            Trip trip = getTrip(e.getKey());
+		            Trip trip = getTrip(version, e.getKey());
 		            ArrayList<Specimen> newSpecimens = new ArrayList<>(trip.getSpecimens());
-		            newSpecimens.removeIf(s -> specimenMap.containsKey(s.getId()));
+		            newSpecimens.removeIf(s -> ids.contains(s.getId()));
 		            newSpecimens.addAll(e.getValue());
 		            return trip.withSpecimens(newSpecimens);
 		        })
-		        .collect(toMap(Trip::getId, trip -> trip));
-
-		boolean writeTrips = modifiedTrips
-				.entrySet()
-				.stream()
-				.anyMatch(e -> getSpecimenIds(getTrip(e.getKey())).size() != e.getValue().getSpecimens().size());
-
-		trips.putAll(modifiedTrips);
-
-		specimens.forEach(specimen -> this.specimens.put(specimen.getId(), specimen));
-
-		if (writeTrips)
-		{
-			writeTrips();
-		}
-
-		if (writeSpecimens)
-		{
-			writeSpecimens();
-		}
-
-		specimens.forEach(Specimen::markPersisted);
+		        .collect(toList());
 	}
 
 	@Override
 	public void deleteSpecimens(Collection<Specimen> specimens)
 	{
-	    if (!specimens.isEmpty())
-        {
-            Map<String, Set<Specimen>> tripSpecimens = specimens.stream()
-                    .collect(groupingBy(Specimen::getTripId, toSet()));
-
-            trips.putAll(tripSpecimens.entrySet().stream()
-                    .map(e ->
-                    {
-                        Trip trip = getTrip(e.getKey());
-                        List<Specimen> newSpecimens = new ArrayList<>(trip.getSpecimens());
-                        newSpecimens.removeAll(tripSpecimens.get(trip.getId()));
-                        return trip.withSpecimens(newSpecimens);
-                    })
-                    .collect(toMap(Trip::getId, trip -> trip)));
-
-            specimens.forEach(specimen -> this.specimens.remove(specimen.getId()));
-
-            writeSpecimens();
-            writeTrips();
-        }
+	    batch(batch -> batch.deleteSpecimens(specimens));
 	}
 
 	@Override
 	public List<Trip> getTrips()
 	{
-		return streamTrips()
-				.sorted(comparing(Trip::getStartDate).reversed().thenComparing(Trip::getDescription))
-				.collect(toList());
+		return version(tripsLoaded).getTrips();
+	}
+
+	@Override
+	public List<Trip> getTrips(LocalDate from, LocalDate to)
+	{
+	    return version(tripsLoaded).getTrips(from, to);
 	}
 
 	@Override
 	public Trip getTrip(String id)
 	{
-	    Trip trip = trips.get(id);
+	    return getTrip(version(tripsLoaded), id);
+	}
+
+	private static Trip getTrip(Version version, String id)
+	{
+	    Trip trip = version.getTrip(id);
 	    if (trip == null)
 	    {
 	        throw new IllegalArgumentException("There's no Trip with id="+id);
@@ -335,56 +582,17 @@ class JsonDao implements FishBaseDao
 	@Override
 	public void saveTrip(Trip trip)
 	{
-		requireNonNull(trip, "trip cannot be null");
-		checkPhotoIntegrity(trip);
-
-		boolean tripChanged = isTripChanged(trip);
-		boolean specimensChanged = isSpecimensChanged(trip);
-		boolean photosChanged = isPhotosChanged(trip);
-
-		ofNullable(trips.get(trip.getId()))
-				.map(Trip::getSpecimens)
-				.orElse(emptyList())
-				.stream()
-				.map(Specimen::getId)
-				.forEach(specimens::remove);
-		trip.getSpecimens().forEach(specimen -> specimens.put(specimen.getId(), specimen));
-
-		ofNullable(trips.get(trip.getId()))
-				.map(Trip::getPhotos)
-				.orElse(emptyList())
-				.stream()
-				.map(Photo::getId)
-				.forEach(photos::remove);
-		trip.getPhotos().forEach(photo -> photos.put(photo.getId(), photo));
-
-		trips.put(trip.getId(), trip);
-
-		if (tripChanged)
-		{
-			writeTrips();
-			trip.markPersisted();
-		}
-		if (specimensChanged)
-		{
-			writeSpecimens();
-			trip.getSpecimens().forEach(Specimen::markPersisted);
-		}
-		if (photosChanged)
-		{
-			writePhotos();
-			trip.getPhotos().forEach(Photo::markPersisted);
-		}
+		batch(batch -> batch.saveTrip(trip));
 	}
 
-	private void checkPhotoIntegrity(Trip trip)
+	private void checkPhotoIntegrity(Version current, Trip trip)
 	{
 		trip.getPhotos()
 				.stream()
-				.map(p -> photos.get(p.getId()))
+				.map(p -> current.getPhoto(p.getId()))
 				.filter(p -> p != null)
 				.filter(p -> !p.getTripId().equals(trip.getId()))
-				.map(p -> trips.get(p.getTripId()))
+				.map(p -> current.getTrip(p.getTripId()))
 				.findAny()
 				.ifPresent(t ->
 				{
@@ -392,15 +600,15 @@ class JsonDao implements FishBaseDao
 				});
 	}
 
-	private boolean isTripChanged(Trip trip)
+	private boolean isTripChanged(Trip previous, Trip trip)
 	{
 		return trip.isNew()
-			|| !trips.get(trip.getId()).equalsWithoutCollections(trip)
-			|| !getSpecimenIds(trips.get(trip.getId())).equals(getSpecimenIds(trip))
-			|| !getPhotoIds(trips.get(trip.getId())).equals(getPhotoIds(trip));
+			|| !previous.equalsWithoutCollections(trip)
+			|| !getSpecimenIds(previous).equals(getSpecimenIds(trip))
+			|| !getPhotoIds(previous).equals(getPhotoIds(trip));
 	}
 
-	private Set<String> getSpecimenIds(Trip trip)
+	private static Set<String> getSpecimenIds(Trip trip)
 	{
 		return trip.getSpecimens().stream().map(Specimen::getId).collect(toSet());
 	}
@@ -410,54 +618,326 @@ class JsonDao implements FishBaseDao
 		return trip.getPhotos().stream().map(Photo::getId).collect(toSet());
 	}
 
-	private boolean isSpecimensChanged(Trip trip)
+	private boolean isSpecimensChanged(Trip previous, Trip trip)
 	{
 		return (trip.isNew() && trip.hasSpecimens())
-			|| !trips.getOrDefault(trip.getId(), EMPTY_TRIP).getSpecimens().equals(trip.getSpecimens());
+			|| !previous.getSpecimens().equals(trip.getSpecimens());
 	}
 
-	private boolean isPhotosChanged(Trip trip)
+	private boolean isPhotosChanged(Trip previous, Trip trip)
 	{
 		return (trip.isNew() && trip.hasPhotos())
-			|| !trips.getOrDefault(trip.getId(), EMPTY_TRIP).getPhotos().equals(trip.getPhotos());
+			|| !previous.getPhotos().equals(trip.getPhotos());
+	}
+
+	@Override
+	public void deleteTrip(Trip trip)
+	{
+	    batch(batch -> batch.deleteTrip(trip));
 	}
 
 	@Override
-	public void deleteTrip(Trip tripToDelete)
+	public void batch(Consumer<Batch> changes)
 	{
-	    String id = tripToDelete.getId();
-        if (trips.containsKey(id))
+	    join(allLoaded);
+	    synchronized (writeLock)
 	    {
-	        Trip trip = trips.remove(id);
-	        trip.getSpecimens().stream().map(Specimen::getId).forEach(specimens::remove);
-	        trip.getPhotos().stream().map(Photo::getId).forEach(photos::remove);
+	        JsonBatch batch = new JsonBatch(version.get());
+	        changes.accept(batch);
+	        batch.commit();
+	    }
+	}
 
-	        writeTrips();
-	        if (trip.hasSpecimens())
+	/**
+	 * Records the changes of given objects in a journal, as they are in the current version.
+	 *
+	 * @param ids of the changed objects, the ones that aren't in the current version are recorded as deleted
+	 * @param previous gets the previous version of an object, {@code null} if it didn't exist
+	 * @param current gets the current version of an object, {@code null} if it doesn't exist
+	 */
+	private static <D extends Domain<D>> void record(Journal<D> journal, Set<String> ids, Function<String, D> previous, Function<String, D> current)
+	{
+	    List<D> upserts = new ArrayList<>();
+	    List<String> deletes = new ArrayList<>();
+	    List<D> replaced = new ArrayList<>();
+	    for (String id : ids)
+	    {
+	        D replacedObject = previous.apply(id);
+	        if (replacedObject != null)
+	        {
+	            replaced.add(replacedObject);
+	        }
+	        D object = current.apply(id);
+	        if (object != null)
 	        {
-	            writeSpecimens();
+	            upserts.add(object);
 	        }
-	        if (trip.hasPhotos())
+	        else
 	        {
-	        	writePhotos();
+	            deletes.add(id);
 	        }
 	    }
+	    journal.record(upserts, deletes, replaced);
 	}
 
-	@Override
-	public SortedSet<String> getAutoCompletions(AutoCompleteField field)
+	/**
+	 * A batch of changes that are made to a working version and published, indexed and journaled together when committed.
+	 * <p>
+	 * Each journal is recorded once per batch, with the latest version of each object that was changed by any of the changes,
+	 * so that each changed file is scheduled to be written once.
+	 */
+	private class JsonBatch implements Batch
 	{
-	    if (autoCompleteMap == null)
+	    private final Version base;
+	    private Version working;
+	    private boolean committed;
+
+	    // IDs of the objects to journal
+	    private final Set<String> journaledPhotos = new LinkedHashSet<>();
+	    private final Set<String> journaledSpecies = new LinkedHashSet<>();
+	    private final Set<String> journaledSpecimens = new LinkedHashSet<>();
+	    private final Set<String> journaledTrips = new LinkedHashSet<>();
+
+	    // IDs of the objects to reindex, which also includes objects that are changed without being journaled
+	    private final Set<String> changedSpecies = new HashSet<>();
+	    private final Set<String> changedSpecimens = new HashSet<>();
+	    private final Set<String> changedTrips = new HashSet<>();
+
+	    private final List<Domain<?>> persisted = new ArrayList<>();
+
+	    private JsonBatch(Version base)
+	    {
+	        this.base = base;
+	        this.working = base;
+	    }
+
+	    @Override
+	    public Batch saveSpecies(Collection<Specie> species)
 	    {
-    	    autoCompleteMap = streamSpecimens()
-    	            .map(Specimen::getAutoCompletions)
-    	            .flatMap(map -> map.entrySet().stream())
-    	            .collect(groupingBy(
-    	                    Entry::getKey,
-    	                    mapping(Entry::getValue, 
-    	                            collectingAndThen(
-    	                                    toCollection(TreeSet::new), Collections::unmodifiableSortedSet))));
+	        checkNotCommitted();
+	        if (!species.isEmpty())
+	        {
+	            Version current = working;
+	            Set<Specimen> newSpecimens = species.stream()
+	                    .flatMap(specie -> current.getSpecimensOfSpecie(specie.getId())
+	                            .stream()
+	                            .map(specimen -> specimen.withSpecie(specie)))
+	                    .collect(toSet());
+	            Collection<Trip> modifiedTrips = tripsWithSpecimens(current, newSpecimens);
+
+	            working = current.withSpecies(species).withTrips(modifiedTrips).withSpecimens(newSpecimens);
+	            journaledSpecies.addAll(ids(changed(species, current::getSpecie)));
+	            changedSpecies.addAll(ids(species));
+	            changedTrips.addAll(ids(modifiedTrips));
+	            changedSpecimens.addAll(ids(newSpecimens));
+	            persisted.addAll(species);
+	            persisted.addAll(newSpecimens);
+	        }
+	        return this;
+	    }
+
+	    @Override
+	    public Batch deleteSpecies(Collection<Specie> species)
+	    {
+	        checkNotCommitted();
+	        species.forEach(s ->
+	        {
+	            if (working.hasSpecimensOfSpecie(s.getId()))
+	            {
+	                throw new IllegalArgumentException("Specie is not deletable: " + s);
+	            }
+	        });
+
+	        Set<String> ids = ids(species);
+	        working = working.withoutSpecies(ids);
+	        journaledSpecies.addAll(ids);
+	        changedSpecies.addAll(ids);
+	        return this;
+	    }
+
+	    @Override
+	    public Batch saveSpecimens(Collection<Specimen> specimens)
+	    {
+	        checkNotCommitted();
+	        if (!specimens.isEmpty())
+	        {
+	            Version current = working;
+	            Collection<Trip> modifiedTrips = tripsWithSpecimens(current, specimens);
+	            List<Trip> tripsWithAddedSpecimens = modifiedTrips
+	                    .stream()
+	                    .filter(trip -> getSpecimenIds(current.getTrip(trip.getId())).size() != trip.getSpecimens().size())
+	                    .collect(toList());
+
+	            working = current.withTrips(modifiedTrips).withSpecimens(specimens);
+	            journaledTrips.addAll(ids(tripsWithAddedSpecimens));
+	            journaledSpecimens.addAll(ids(specimens));
+	            changedTrips.addAll(ids(modifiedTrips));
+	            changedSpecimens.addAll(ids(specimens));
+	            persisted.addAll(specimens);
+	        }
+	        return this;
+	    }
+
+	    @Override
+	    public Batch deleteSpecimens(Collection<Specimen> specimens)
+	    {
+	        checkNotCommitted();
+	        if (!specimens.isEmpty())
+	        {
+	            Version current = working;
+	            Set<String> ids = ids(specimens);
+	            List<Trip> modifiedTrips = specimens.stream()
+	                    .map(Specimen::getTripId)
+	                    .distinct()
+	                    .map(tripId ->
+	                    {
+	                        Trip trip = getTrip(current, tripId);
+	                        List<Specimen> newSpecimens = new ArrayList<>(trip.getSpecimens());
+	                        newSpecimens.removeIf(s -> ids.contains(s.getId()));
+	                        return trip.withSpecimens(newSpecimens);
+	                    })
+	                    .collect(toList());
+
+	            working = current.withTrips(modifiedTrips).withoutSpecimens(ids);
+	            journaledSpecimens.addAll(ids);
+	            journaledTrips.addAll(ids(modifiedTrips));
+	            changedTrips.addAll(ids(modifiedTrips));
+	            changedSpecimens.addAll(ids);
+	        }
+	        return this;
+	    }
+
+	    @Override
+	    public Batch saveTrip(Trip trip)
+	    {
+	        requireNonNull(trip, "trip cannot be null");
+	        checkNotCommitted();
+	        Version current = working;
+	        checkPhotoIntegrity(current, trip);
+
+	        Trip previousTrip = ofNullable(current.getTrip(trip.getId())).orElse(EMPTY_TRIP);
+	        Set<String> removedSpecimens = removed(previousTrip.getSpecimens(), trip.getSpecimens());
+	        Set<String> removedPhotos = removed(previousTrip.getPhotos(), trip.getPhotos());
+	        working = current
+	                .withoutSpecimens(removedSpecimens)
+	                .withSpecimens(trip.getSpecimens())
+	                .withoutPhotos(removedPhotos)
+	                .withPhotos(trip.getPhotos())
+	                .withTrip(trip);
+	        changedTrips.add(trip.getId());
+	        changedSpecimens.addAll(removedSpecimens);
+	        changedSpecimens.addAll(ids(trip.getSpecimens()));
+
+	        if (isTripChanged(previousTrip, trip))
+	        {
+	            journaledTrips.add(trip.getId());
+	            persisted.add(trip);
+	        }
+	        if (isSpecimensChanged(previousTrip, trip))
+	        {
+	            journaledSpecimens.addAll(ids(changed(trip.getSpecimens(), current::getSpecimen)));
+	            journaledSpecimens.addAll(removedSpecimens);
+	            persisted.addAll(trip.getSpecimens());
+	        }
+	        if (isPhotosChanged(previousTrip, trip))
+	        {
+	            journaledPhotos.addAll(ids(changed(trip.getPhotos(), current::getPhoto)));
+	            journaledPhotos.addAll(removedPhotos);
+	            persisted.addAll(trip.getPhotos());
+	        }
+	        return this;
+	    }
+
+	    @Override
+	    public Batch deleteTrip(Trip tripToDelete)
+	    {
+	        checkNotCommitted();
+	        String id = tripToDelete.getId();
+	        Trip trip = working.getTrip(id);
+	        if (trip != null)
+	        {
+	            Set<String> specimenIds = ids(trip.getSpecimens());
+	            Set<String> photoIds = ids(trip.getPhotos());
+	            working = working.withoutTrip(id).withoutSpecimens(specimenIds).withoutPhotos(photoIds);
+	            journaledTrips.add(id);
+	            journaledSpecimens.addAll(specimenIds);
+	            journaledPhotos.addAll(photoIds);
+	            changedTrips.add(id);
+	            changedSpecimens.addAll(specimenIds);
+	        }
+	        return this;
 	    }
-	    return autoCompleteMap.getOrDefault(field, emptySortedSet());
+
+	    private void checkNotCommitted()
+	    {
+	        if (committed)
+	        {
+	            throw new IllegalStateException("Batch is already committed");
+	        }
+	    }
+
+	    private void commit()
+	    {
+	        checkNotCommitted();
+	        committed = true;
+
+	        // Writers are serialized and wait for loading, so no one else can have published since this batch began
+	        if (!version.compareAndSet(base, working))
+	        {
+	            throw new IllegalStateException("Data was changed outside of batch");
+	        }
+	        changedSpecies.forEach(id -> reindexSpecie(base.getSpecie(id), working.getSpecie(id)));
+	        changedTrips.forEach(id -> reindexTrip(base.getTrip(id), working.getTrip(id)));
+	        changedSpecimens.forEach(id -> reindexSpecimen(base.getSpecimen(id), working.getSpecimen(id)));
+
+	        record(specieJournal, journaledSpecies, base::getSpecie, working::getSpecie);
+	        record(photoJournal, journaledPhotos, base::getPhoto, working::getPhoto);
+	        record(specimenJournal, journaledSpecimens, base::getSpecimen, working::getSpecimen);
+	        record(tripJournal, journaledTrips, base::getTrip, working::getTrip);
+	        persisted.forEach(Domain::markPersisted);
+	        // Later changes of the batch may have replaced saved objects with copies that were made before they were marked
+	        changedSpecies.stream().map(working::getSpecie).filter(Objects::nonNull).forEach(Domain::markPersisted);
+	        changedSpecimens.stream().map(working::getSpecimen).filter(Objects::nonNull).forEach(Domain::markPersisted);
+	        changedTrips.stream().map(working::getTrip).filter(Objects::nonNull).forEach(Domain::markPersisted);
+	    }
+	}
+
+	@Override
+	public List<String> getAutoCompletions(AutoCompleteField field, String text)
+	{
+	    join(specimensLoaded);
+	    return autoCompletions.get(field, text);
+	}
+
+	@Override
+	public List<Statistics> getStatistics(StatisticsField field, String specieId)
+	{
+	    join(specimensLoaded);
+	    return statistics.get(field, specieId);
+	}
+
+	@Override
+	public Set<String> searchSpecimens(String text)
+	{
+	    return searchSpecimens(version(specimensLoaded), text);
+	}
+
+	private Set<String> searchSpecimens(Version current, String text)
+	{
+	    // A specimen matches by its own text or by the name of its specie, as in SpecimenTextPredicate
+	    Set<String> ids = specimenText.search(text);
+	    specieText.search(text).forEach(specieId -> current.getSpecimensOfSpecie(specieId).forEach(specimen -> ids.add(specimen.getId())));
+	    return ids;
+	}
+
+	@Override
+	public Set<String> searchTrips(String text)
+	{
+	    // A trip matches by its own text or by any of its specimens, as in TripTextPredicate
+	    join(tripsLoaded);
+	    Version current = version(specimensLoaded);
+	    Set<String> ids = tripText.search(text);
+	    searchSpecimens(current, text).forEach(specimenId -> ofNullable(current.getSpecimen(specimenId)).ifPresent(specimen -> ids.add(specimen.getTripId())));
+	    return ids;
 	}
 }
@@ -0,0 +1,33 @@
+package se.martinuhlen.fishbase.dao;
+
+/**
+ * Layout of the JSON written to {@link Persistence}.
+ * <p>
+ * Both formats are read transparently, the format only affects how data is written.
+ *
+ * @author Martin
+ */
+public enum JsonFormat
+{
+    /**
+     * Indented, human readable JSON.
+     */
+    PRETTY("  "),
+
+    /**
+     * JSON without any whitespace, smallest possible output.
+     */
+    COMPACT("");
+
+    private final String indent;
+
+    private JsonFormat(String indent)
+    {
+        this.indent = indent;
+    }
+
+    String getIndent()
+    {
+        return indent;
+    }
+}
@@ -1,53 +1,143 @@
 package se.martinuhlen.fishbase.dao;
 
+import static com.google.gson.stream.JsonToken.END_DOCUMENT;
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.util.Collections.emptyList;
 import static java.util.Objects.requireNonNull;
-import static java.util.Objects.requireNonNullElse;
-import static java.util.stream.Collectors.toUnmodifiableList;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toList;
+import static se.martinuhlen.fishbase.utils.Checked.run;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
-import java.io.Writer;
-import java.lang.reflect.Type;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.stream.Collector;
-import java.util.stream.StreamSupport;
+import java.util.function.Predicate;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonSerializer;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
 
 import se.martinuhlen.fishbase.domain.Domain;
+import se.martinuhlen.fishbase.utils.Logger;
 
-abstract class JsonHandler<D extends Domain<D>> implements JsonSerializer<D>, JsonDeserializer<D>
+abstract class JsonHandler<D extends Domain<D>>
 {
+	private static final Logger LOGGER = Logger.getLogger(JsonHandler.class);
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final String UPSERT = "upsert";
+	private static final String DELETE = "delete";
+
 	private final Persistence persistence;
+	private final String typeName;
 	private final String fileName;
+	private final String journalName;
+	private final String manifestName;
+	private final JsonFormat format;
+	private final Function<? super D, Integer> shard;
+	private final BinaryHandler<D> binary;
+	private final Map<String, Long> writtenSnapshots;
+	private final Map<String, Long> changedSnapshots;
+	private long changeCount;
+	private List<String> manifest;
 
-	private final Gson gson;
-	private final Type listOfD;
-
-	JsonHandler(Class<D> type, Persistence persistence)
+	/**
+	 * Creates a new handler.
+	 *
+	 * @param type of the objects
+	 * @param persistence to read from and write to
+	 * @param format of the written JSON
+	 * @param shard gets the shard of an object, or {@code null} to store all objects in one snapshot
+	 * @param binary handler of the binary snapshot
+	 */
+	JsonHandler(Class<D> type, Persistence persistence, JsonFormat format, Function<? super D, Integer> shard, BinaryHandler<D> binary)
 	{
 		this.persistence = persistence;
-		this.fileName = type.getSimpleName() + ".json";
-		this.listOfD = TypeToken.getParameterized(List.class, type).getType();
-		this.gson = new GsonBuilder()
-				.setPrettyPrinting()
-				.registerTypeAdapter(type, this)
-				.create();
+		this.typeName = type.getSimpleName();
+		this.fileName = typeName + ".json";
+		this.journalName = typeName + ".journal.json";
+		this.manifestName = typeName + ".shards.json";
+		this.format = requireNonNull(format);
+		this.shard = shard;
+		this.binary = requireNonNull(binary);
+		this.writtenSnapshots = new HashMap<>();
+		this.changedSnapshots = new HashMap<>();
+	}
+
+	String getFileName()
+	{
+		return fileName;
+	}
+
+	String getJournalName()
+	{
+		return journalName;
+	}
+
+	String getManifestName()
+	{
+		return manifestName;
+	}
+
+	/**
+	 * Gets the name of the snapshot of given shard.
+	 */
+	private String snapshotOf(Integer shardKey)
+	{
+		return shardKey == null ? typeName : typeName + "-" + shardKey;
+	}
+
+	private String snapshotOf(D object)
+	{
+		return shard == null ? typeName : snapshotOf(shard.apply(object));
+	}
+
+	/**
+	 * Marks the snapshots of given objects as changed, so that they're written by the next {@link #write(Collection, long) write}.
+	 * <p>
+	 * An object may move between snapshots, so both the new and the previous versions of changed objects should be given.
+	 *
+	 * @param objects that have been changed
+	 */
+	void changed(Collection<D> objects)
+	{
+		synchronized (writtenSnapshots)
+		{
+			changeCount++;
+			objects.forEach(object -> changedSnapshots.put(snapshotOf(object), changeCount));
+		}
+	}
+
+	/**
+	 * Gets the number of times objects have been {@link #changed(Collection) changed}, to be captured before the objects to write.
+	 */
+	long getChangeCount()
+	{
+		synchronized (writtenSnapshots)
+		{
+			return changeCount;
+		}
 	}
 
 	/**
 	 * Gets a new reader.
+	 * <p>
+	 * The snapshots to read are listed by the manifest, a single snapshot is read if there's no manifest.
+	 * Each snapshot is read from its binary file if it's at least as new as its JSON file, otherwise from the JSON file.
 	 * 
 	 * @return new reader instance
 	 */
@@ -55,7 +145,14 @@ abstract class JsonHandler<D extends Domain<D>> implements JsonSerializer<D>, Js
 	{
 	    try
         {
-            return new Reader(new InputStreamReader(persistence.input(fileName), UTF_8));
+	        List<String> names = readManifest().orElse(List.of(typeName));
+	        List<Snapshot> snapshots = new ArrayList<>();
+	        for (String name : names)
+	        {
+	            boolean useBinary = isBinaryCurrent(name);
+	            snapshots.add(new Snapshot(name, persistence.input(name + (useBinary ? ".bin" : ".json")), useBinary));
+	        }
+	        return new Reader(snapshots, persistence.input(journalName));
         }
         catch (IOException e)
         {
@@ -63,40 +160,334 @@ abstract class JsonHandler<D extends Domain<D>> implements JsonSerializer<D>, Js
         }
 	}
 
+	private Optional<List<String>> readManifest() throws IOException
+	{
+	    try (java.io.Reader reader = new BufferedReader(new InputStreamReader(persistence.input(manifestName), UTF_8)))
+	    {
+	        if (isEmpty(reader))
+	        {
+	            return Optional.empty();
+	        }
+	        List<String> names = readArray(new JsonReader(reader));
+	        synchronized (writtenSnapshots)
+	        {
+	            manifest = names;
+	        }
+	        return Optional.of(names);
+	    }
+	}
+
+	private boolean isBinaryCurrent(String name) throws IOException
+	{
+	    Optional<Instant> binaryTime = persistence.lastModified(name + ".bin");
+	    if (binaryTime.isEmpty())
+	    {
+	        return false;
+	    }
+	    Optional<Instant> jsonTime = persistence.lastModified(name + ".json");
+	    return jsonTime.isEmpty() || !binaryTime.get().isBefore(jsonTime.get());
+	}
+
+	private static boolean isEmpty(java.io.Reader reader) throws IOException
+	{
+	    reader.mark(1);
+	    boolean empty = reader.read() < 0;
+	    reader.reset();
+	    return empty;
+	}
+
+	/**
+	 * A snapshot to read, from its binary or JSON file.
+	 */
+	private class Snapshot
+	{
+	    private final String name;
+	    private final InputStream input;
+	    private final boolean binarySnapshot;
+
+	    Snapshot(String name, InputStream input, boolean binarySnapshot)
+	    {
+	        this.name = name;
+	        this.input = input;
+	        this.binarySnapshot = binarySnapshot;
+	    }
+
+	    /**
+	     * Reads all objects of this snapshot that aren't superseded.
+	     * <p>
+	     * Objects of a JSON snapshot are consumed as they're parsed.
+	     * Objects of a binary snapshot are consumed once all of it has been read, since the JSON snapshot is read instead if it's corrupt.
+	     */
+	    void read(Predicate<String> superseded, Consumer<? super D> consumer) throws IOException
+	    {
+	        try (input)
+	        {
+	            AtomicBoolean anySuperseded = new AtomicBoolean();
+	            Predicate<String> tracked = id ->
+	            {
+	                boolean skip = superseded.test(id);
+	                if (skip)
+	                {
+	                    anySuperseded.set(true);
+	                }
+	                return skip;
+	            };
+	            if (!binarySnapshot || !readBinary(tracked, consumer))
+	            {
+	                anySuperseded.set(false);
+	                readJson(binarySnapshot ? persistence.input(name + ".json") : input, tracked, consumer);
+	            }
+	            synchronized (writtenSnapshots)
+	            {
+	                // A snapshot with superseded objects differs from what was read and must be written when compacted,
+	                // even if its remaining objects are unchanged, or deleted and moved objects would come back when read again
+	                if (anySuperseded.get())
+	                {
+	                    writtenSnapshots.remove(name);
+	                }
+	                else
+	                {
+	                    writtenSnapshots.put(name, changeCount);
+	                }
+	            }
+	        }
+	    }
+
+	    private boolean readBinary(Predicate<String> superseded, Consumer<? super D> consumer) throws IOException
+	    {
+	        List<D> objects = new ArrayList<>();
+	        try
+	        {
+	            binary.read(input, superseded, objects::add);
+	        }
+	        catch (IOException e)
+	        {
+	            LOGGER.log("Reading '" + name + ".json' instead of '" + name + ".bin': " + e.getMessage());
+	            return false;
+	        }
+	        objects.forEach(consumer);
+	        return true;
+	    }
+
+	    private void readJson(InputStream json, Predicate<String> superseded, Consumer<? super D> consumer) throws IOException
+	    {
+	        try (java.io.Reader reader = new BufferedReader(new InputStreamReader(json, UTF_8), BUFFER_SIZE))
+	        {
+	            readElements(reader, name + ".json", in ->
+	            {
+	                D object = deserialize(in, superseded);
+	                if (object != null)
+	                {
+	                    consumer.accept(object);
+	                }
+	            });
+	        }
+	    }
+	}
+
 	/**
 	 * Reads data from persistence.
 	 * <p>
 	 * The read operation is divided into two steps; 
 	 * First a reader is constructed so that data from persistence can start to buffer immediately and then when desired, the data can be read.
+	 * <p>
+	 * Data is parsed token by token, without building any intermediate JSON tree.
+	 * The {@link Journal journal} is replayed over the snapshots, objects of the snapshots that have been changed since are never resolved.
+	 * Snapshots are parsed in parallel, if a snapshot is read from a binary file that can't be read, its JSON file is read instead.
 	 */
 	class Reader
 	{
-	    private final java.io.Reader reader;
+	    private final List<Snapshot> snapshots;
+	    private final java.io.Reader journal;
 
-        Reader(java.io.Reader reader)
+        private Reader(List<Snapshot> snapshots, InputStream journal)
         {
-            this.reader = reader;
+            this.snapshots = snapshots;
+            this.journal = new BufferedReader(new InputStreamReader(journal, UTF_8), BUFFER_SIZE);
         }
 
-	    List<D> read()
+        /**
+         * Reads all objects.
+         * 
+         * @param consumer of the current state of each object, called by one thread at a time as soon as the object is parsed
+         * @return changes of the journal, by ID, where deleted objects are mapped to {@code null}
+         */
+	    Map<String, D> read(Consumer<? super D> consumer)
 	    {
-	        try (reader)
+	        try (journal)
 	        {
-	            return requireNonNullElse(gson.fromJson(reader, listOfD), emptyList());
+	            Map<String, D> changes = new LinkedHashMap<>();
+	            readElements(journal, journalName, in -> readChange(in, changes));
+	            Consumer<D> serialized = object ->
+	            {
+	                synchronized (this)
+	                {
+	                    consumer.accept(object);
+	                }
+	            };
+	            snapshots.parallelStream().forEach(snapshot -> run(() -> snapshot.read(changes::containsKey, serialized)));
+	            List<D> upserts = changes.values()
+	                .stream()
+	                .filter(object -> object != null)
+	                .collect(toList());
+	            upserts.forEach(consumer);
+	            changed(upserts);
+	            return changes;
 	        }
 	        catch (IOException e)
 	        {
 	            throw new RuntimeException(e);
 	        }
 	    }
+
+	    private void readChange(JsonReader in, Map<String, D> changes) throws IOException
+	    {
+	        in.beginObject();
+	        while (in.hasNext())
+	        {
+	            switch (in.nextName())
+	            {
+	                case UPSERT ->
+	                {
+	                    D object = deserialize(in, id -> false);
+	                    changes.put(object.getId(), object);
+	                }
+	                case DELETE -> changes.put(in.nextString(), null);
+	                default -> in.skipValue();
+	            }
+	        }
+	        in.endObject();
+	    }
 	}
 
-	void write(Collection<D> objects)
+	private static void readElements(java.io.Reader reader, String name, ElementReader elementReader) throws IOException
+	{
+	    if (isEmpty(reader))
+	    {
+	        return;
+	    }
+	    JsonReader in = new JsonReader(reader);
+	    in.beginArray();
+	    while (in.hasNext())
+	    {
+	        elementReader.read(in);
+	    }
+	    in.endArray();
+	    if (in.peek() != END_DOCUMENT)
+	    {
+	        throw new IOException("Expected end of '" + name + "' but was " + in.peek());
+	    }
+	}
+
+	private interface ElementReader
+	{
+	    void read(JsonReader in) throws IOException;
+	}
+
+	/**
+	 * Reads a single object from given JSON reader, positioned at the beginning of the object.
+	 * <p>
+	 * References to other objects must not be resolved until the object is known not to be superseded,
+	 * a superseded object may refer to objects that no longer exist.
+	 * 
+	 * @param in to read from
+	 * @param superseded tests if the object with a given ID is superseded and should be skipped
+	 * @return the read object, or {@code null} if it's superseded
+	 * @throws IOException if reading fails or data is malformed
+	 */
+	abstract D deserialize(JsonReader in, Predicate<String> superseded) throws IOException;
+
+	/**
+	 * Writes given objects to persistence as new snapshots, replacing any previously written data.
+	 * <p>
+	 * Objects are written field by field in the configured {@link JsonFormat}, without building any intermediate JSON tree.
+	 * If objects are sharded, only the snapshots of shards that have changed since they were read or last written are written,
+	 * followed by the manifest if the set of shards has changed.
+	 * 
+	 * @param objects to write
+	 * @param changeCount the {@link #getChangeCount() change count} before the objects were captured,
+	 *        snapshots changed after that are written again by the next write
+	 */
+	void write(Collection<D> objects, long changeCount)
 	{
 		requireNonNull(objects);
-		try (Writer writer = new OutputStreamWriter(persistence.output(fileName), UTF_8))
+		Map<String, List<D>> snapshots = new LinkedHashMap<>();
+		if (shard == null)
 		{
-			gson.toJson(objects, writer);
+			snapshots.put(typeName, new ArrayList<>(objects));
+		}
+		else
+		{
+			objects.forEach(object -> snapshots.computeIfAbsent(snapshotOf(shard.apply(object)), name -> new ArrayList<>()).add(object));
+		}
+
+		int written = 0;
+		for (Entry<String, List<D>> snapshot : snapshots.entrySet())
+		{
+			synchronized (writtenSnapshots)
+			{
+				Long writtenCount = writtenSnapshots.get(snapshot.getKey());
+				if (writtenCount != null && writtenCount >= changedSnapshots.getOrDefault(snapshot.getKey(), 0L))
+				{
+					continue;
+				}
+			}
+			writeSnapshot(snapshot.getKey(), snapshot.getValue());
+			written++;
+			synchronized (writtenSnapshots)
+			{
+				writtenSnapshots.merge(snapshot.getKey(), changeCount, Math::max);
+			}
+		}
+
+		List<String> names = List.copyOf(snapshots.keySet());
+		boolean manifestChanged;
+		synchronized (writtenSnapshots)
+		{
+			manifestChanged = !names.equals(manifest);
+			writtenSnapshots.keySet().retainAll(names);
+			changedSnapshots.keySet().retainAll(names);
+		}
+		if (manifestChanged)
+		{
+			write(manifestName, out ->
+			{
+				for (String name : names)
+				{
+					out.value(name);
+				}
+			});
+			synchronized (writtenSnapshots)
+			{
+				manifest = names;
+			}
+		}
+		if (shard != null)
+		{
+			LOGGER.log("Wrote " + written + " of " + names.size() + " shards of " + typeName);
+		}
+	}
+
+	private void writeSnapshot(String name, List<D> objects)
+	{
+		write(name + ".json", out ->
+		{
+			for (D object : objects)
+			{
+				serialize(out, object);
+			}
+		});
+		writeBinary(name + ".bin", objects);
+	}
+
+	/**
+	 * Writes given objects as a binary snapshot, after the JSON snapshot so that it's never older than it.
+	 */
+	private void writeBinary(String name, Collection<D> objects)
+	{
+		try
+		{
+			persistence.write(name, output -> binary.write(output, objects));
 		}
 		catch (IOException e)
 		{
@@ -104,27 +495,103 @@ abstract class JsonHandler<D extends Domain<D>> implements JsonSerializer<D>, Js
 		}
 	}
 
-	protected <E> JsonArray serializeArray(Collection<E> collection, Function<? super E, String> mapper)
+	/**
+	 * Writes the journal, replacing any previously written journal.
+	 * 
+	 * @param changes by ID, where deleted objects are mapped to {@code null}
+	 */
+	void writeJournal(Map<String, D> changes)
 	{
-		return collection
-				.stream()
-				.map(mapper)
-				.collect(Collector.of(
-						() -> new JsonArray(collection.size()),
-						(array, value) -> array.add(value),
-						(array1, array2) ->
-						{
-							array1.addAll(array2);
-							return array1;
-						}));
+		requireNonNull(changes);
+		write(journalName, out ->
+		{
+			for (Entry<String, D> change : changes.entrySet())
+			{
+				out.beginObject();
+				if (change.getValue() == null)
+				{
+					out.name(DELETE).value(change.getKey());
+				}
+				else
+				{
+					serialize(out.name(UPSERT), change.getValue());
+				}
+				out.endObject();
+			}
+		});
 	}
 
-	protected <E> List<E> deserializeArray(JsonObject obj, String name, Function<String, E> mapper)
+	private void write(String name, ElementWriter elementWriter)
 	{
-		JsonArray jsonArray = obj.get(name).getAsJsonArray();
-		return StreamSupport.stream(jsonArray.spliterator(), false)
-				.map(element -> element.getAsString())
-				.map(photoId -> mapper.apply(photoId))
-				.collect(toUnmodifiableList());
+		try
+		{
+			persistence.write(name, output ->
+			{
+				try (JsonWriter out = new JsonWriter(new BufferedWriter(new OutputStreamWriter(output, UTF_8), BUFFER_SIZE)))
+				{
+					out.setIndent(format.getIndent());
+					out.beginArray();
+					elementWriter.write(out);
+					out.endArray();
+				}
+			});
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private interface ElementWriter
+	{
+	    void write(JsonWriter out) throws IOException;
+	}
+
+	/**
+	 * Writes a single object to given JSON writer.
+	 * 
+	 * @param out to write to
+	 * @param object to write
+	 * @throws IOException if writing fails
+	 */
+	abstract void serialize(JsonWriter out, D object) throws IOException;
+
+	protected <E> void writeArray(JsonWriter out, Collection<E> collection, Function<? super E, String> mapper) throws IOException
+	{
+		out.beginArray();
+		for (E element : collection)
+		{
+			out.value(mapper.apply(element));
+		}
+		out.endArray();
+	}
+
+	protected List<String> readArray(JsonReader in) throws IOException
+	{
+		List<String> list = new ArrayList<>();
+		in.beginArray();
+		while (in.hasNext())
+		{
+			list.add(in.nextString());
+		}
+		in.endArray();
+		return List.copyOf(list);
+	}
+
+	/**
+	 * Checks that a required field has been read.
+	 *
+	 * @param value of the field, {@code null} if it's missing
+	 * @param name of the field
+	 * @return the value
+	 * @throws MalformedJsonException if the field is missing
+	 */
+	protected <T> T required(T value, String name) throws MalformedJsonException
+	{
+		if (value == null)
+		{
+			throw new MalformedJsonException("Missing field '" + name + "' of " + typeName);
+		}
+		return value;
 	}
 }
@@ -0,0 +1,247 @@
+package se.martinuhlen.fishbase.dao;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static se.martinuhlen.fishbase.utils.Concurrency.await;
+import static se.martinuhlen.fishbase.utils.Concurrency.join;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import se.martinuhlen.fishbase.domain.AutoCompleteField;
+import se.martinuhlen.fishbase.domain.Domain;
+import se.martinuhlen.fishbase.domain.Photo;
+import se.martinuhlen.fishbase.domain.Specie;
+import se.martinuhlen.fishbase.domain.Specimen;
+import se.martinuhlen.fishbase.domain.Statistics;
+import se.martinuhlen.fishbase.domain.StatisticsField;
+import se.martinuhlen.fishbase.domain.Trip;
+
+/**
+ * A {@link FishBaseDao} that's available right away and delegates to a DAO that's loaded in the background.
+ * <p>
+ * Until loading is done each call waits for it, after that each call costs a single volatile read of the delegate.
+ * Loading failures are thrown by every call, as thrown by the loader.
+ * The readiness of the delegate's data is forwarded once it's created.
+ *
+ * @author Martin
+ */
+class LazyFishBaseDao implements FishBaseDao
+{
+	private final CompletableFuture<FishBaseDao> loading;
+	private volatile FishBaseDao delegate;
+
+	LazyFishBaseDao(Supplier<? extends FishBaseDao> loader)
+	{
+		// The delegate is set before any action waiting for the loading is run
+		loading = supplyAsync(loader).thenApply(dao -> delegate = dao);
+	}
+
+	private FishBaseDao dao()
+	{
+		FishBaseDao dao = delegate;
+		return dao != null ? dao : join(loading);
+	}
+
+	@Override
+	public boolean isReady()
+	{
+		FishBaseDao dao = delegate;
+		return dao != null && dao.isReady();
+	}
+
+	@Override
+	public void onReady(Runnable action)
+	{
+		loading.thenAccept(dao -> dao.onReady(action));
+	}
+
+	@Override
+	public boolean awaitReady(Duration timeout)
+	{
+		long deadline = nanoTime() + timeout.toNanos();
+		return await(loading, timeout)
+		    && delegate.awaitReady(Duration.ofNanos(deadline - nanoTime()));
+	}
+
+	@Override
+	public boolean isReady(Class<? extends Domain<?>> type)
+	{
+		FishBaseDao dao = delegate;
+		return dao != null && dao.isReady(type);
+	}
+
+	@Override
+	public void onReady(Class<? extends Domain<?>> type, Runnable action)
+	{
+		loading.thenAccept(dao -> dao.onReady(type, action));
+	}
+
+	@Override
+	public Photo getPhoto(String id)
+	{
+		return dao().getPhoto(id);
+	}
+
+	@Override
+	public List<Photo> getPhotos()
+	{
+		return dao().getPhotos();
+	}
+
+	@Override
+	public List<Photo> getPhotosOfSpecimen(String specimenId)
+	{
+		return dao().getPhotosOfSpecimen(specimenId);
+	}
+
+	@Override
+	public Specie getSpecie(String id)
+	{
+		return dao().getSpecie(id);
+	}
+
+	@Override
+	public List<Specie> getSpecies()
+	{
+		return dao().getSpecies();
+	}
+
+	@Override
+	public void saveSpecies(Collection<Specie> species)
+	{
+		dao().saveSpecies(species);
+	}
+
+	@Override
+	public boolean isSpecieDeletable(Specie specie)
+	{
+		return dao().isSpecieDeletable(specie);
+	}
+
+	@Override
+	public void deleteSpecies(Collection<Specie> species)
+	{
+		dao().deleteSpecies(species);
+	}
+
+	@Override
+	public Specimen getSpecimen(String id)
+	{
+		return dao().getSpecimen(id);
+	}
+
+	@Override
+	public List<Specimen> getSpecimens()
+	{
+		return dao().getSpecimens();
+	}
+
+	@Override
+	public List<Specimen> getSpecimensOfSpecie(String specieId)
+	{
+		return dao().getSpecimensOfSpecie(specieId);
+	}
+
+	@Override
+	public List<Specimen> getHeaviestSpecimens(int limit)
+	{
+		return dao().getHeaviestSpecimens(limit);
+	}
+
+	@Override
+	public List<Specimen> getSpecimensOfTrip(String tripId)
+	{
+		return dao().getSpecimensOfTrip(tripId);
+	}
+
+	@Override
+	public void saveSpecimens(Collection<Specimen> specimens)
+	{
+		dao().saveSpecimens(specimens);
+	}
+
+	@Override
+	public void deleteSpecimens(Collection<Specimen> specimens)
+	{
+		dao().deleteSpecimens(specimens);
+	}
+
+	@Override
+	public List<Trip> getTrips()
+	{
+		return dao().getTrips();
+	}
+
+	@Override
+	public List<Trip> getTrips(LocalDate from, LocalDate to)
+	{
+		return dao().getTrips(from, to);
+	}
+
+	@Override
+	public Trip getTrip(String id)
+	{
+		return dao().getTrip(id);
+	}
+
+	@Override
+	public void saveTrip(Trip trip)
+	{
+		dao().saveTrip(trip);
+	}
+
+	@Override
+	public void deleteTrip(Trip trip)
+	{
+		dao().deleteTrip(trip);
+	}
+
+	@Override
+	public void batch(Consumer<Batch> changes)
+	{
+		dao().batch(changes);
+	}
+
+	@Override
+	public List<String> getAutoCompletions(AutoCompleteField field, String text)
+	{
+		return dao().getAutoCompletions(field, text);
+	}
+
+	@Override
+	public List<Statistics> getStatistics(StatisticsField field, String specieId)
+	{
+		return dao().getStatistics(field, specieId);
+	}
+
+	@Override
+	public Set<String> searchSpecimens(String text)
+	{
+		return dao().searchSpecimens(text);
+	}
+
+	@Override
+	public Set<String> searchTrips(String text)
+	{
+		return dao().searchTrips(text);
+	}
+
+	@Override
+	public void flush()
+	{
+		dao().flush();
+	}
+
+	@Override
+	public int getPendingWrites()
+	{
+		return dao().getPendingWrites();
+	}
+}
@@ -1,41 +1,285 @@
 package se.martinuhlen.fishbase.dao;
 
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static org.apache.commons.lang3.ArrayUtils.EMPTY_BYTE_ARRAY;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
 
+import se.martinuhlen.fishbase.utils.Logger;
+
+/**
+ * Persistence of files in a local directory.
+ * <p>
+ * Files are never written in place. Each file is written to a temporary file that's staged when it's completely written,
+ * on {@link #commit()} all staged files are synced to disk in one go and then atomically moved into place.
+ * A crash therefore leaves either the previous or the new version of each file, never a truncated one.
+ * A staged file that's written again before it's committed is simply replaced, it's never synced.
+ * <p>
+ * Reading a file that's staged commits it first, so that what's been written can always be read back.
+ *
+ * @author Martin
+ */
 public class LocalFilePersistence implements Persistence
 {
-	private final File directory;
+	private static final Logger LOGGER = Logger.getLogger(LocalFilePersistence.class);
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Path directory;
+	private final Map<String, Path> staged;
 
 	public LocalFilePersistence(File directory)
 	{
-		this.directory = directory;
+		this.directory = directory.toPath();
+		this.staged = new LinkedHashMap<>();
+		deleteTempFiles();
+	}
+
+	/**
+	 * Deletes temporary files left behind by a crash, they were never committed.
+	 */
+	private void deleteTempFiles()
+	{
+		if (!Files.isDirectory(directory))
+		{
+			return;
+		}
+		try (DirectoryStream<Path> tempFiles = Files.newDirectoryStream(directory, "*" + TEMP_SUFFIX))
+		{
+			for (Path tempFile : tempFiles)
+			{
+				Files.delete(tempFile);
+			}
+		}
+		catch (IOException e)
+		{
+			LOGGER.log("Failed to delete temporary files: " + e);
+		}
 	}
 
 	@Override
 	public InputStream input(String name) throws IOException
 	{
-		File file = fileOf(name);
-		return file.exists()
-				? new FileInputStream(file)
-				: new ByteArrayInputStream(EMPTY_BYTE_ARRAY);
+		commitIfStaged(name);
+		Path file = pathOf(name);
+		if (!Files.exists(file))
+		{
+			return new ByteArrayInputStream(EMPTY_BYTE_ARRAY);
+		}
+		try (FileChannel channel = FileChannel.open(file, READ))
+		{
+			ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(channel.size()));
+			while (buffer.hasRemaining())
+			{
+				if (channel.read(buffer) < 0)
+				{
+					break;
+				}
+			}
+			return new ByteArrayInputStream(buffer.array(), 0, buffer.position());
+		}
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The file is staged when the output is closed, even if it's not completely written.
+	 * Use {@link #write(String, OutputWriter)} to only stage files that are.
+	 */
 	@Override
 	public OutputStream output(String name) throws IOException
 	{
-		return new FileOutputStream(fileOf(name));
+		return new BufferedOutputStream(new ChannelOutputStream(name, true), BUFFER_SIZE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The file is staged only if the writer completes, if it fails the temporary file is deleted
+	 * and the previously written file is kept.
+	 */
+	@Override
+	public void write(String name, OutputWriter writer) throws IOException
+	{
+		ChannelOutputStream channelOutput = new ChannelOutputStream(name, false);
+		try
+		{
+			try (OutputStream output = new BufferedOutputStream(channelOutput, BUFFER_SIZE))
+			{
+				writer.write(output);
+			}
+			channelOutput.complete();
+		}
+		finally
+		{
+			channelOutput.finish();
+		}
 	}
 
-	private File fileOf(String name)
+	@Override
+	public Optional<Instant> lastModified(String name) throws IOException
+	{
+		commitIfStaged(name);
+		Path file = pathOf(name);
+		return Files.exists(file)
+				? Optional.of(Files.getLastModifiedTime(file).toInstant())
+				: Optional.empty();
+	}
+
+	/**
+	 * Syncs all staged files to disk and moves them into place.
+	 */
+	@Override
+	public synchronized void commit() throws IOException
 	{
-		return new File(directory, name);
+		if (staged.isEmpty())
+		{
+			return;
+		}
+		for (Path tempFile : staged.values())
+		{
+			try (FileChannel channel = FileChannel.open(tempFile, WRITE))
+			{
+				channel.force(true);
+			}
+		}
+		for (Iterator<Entry<String, Path>> iterator = staged.entrySet().iterator(); iterator.hasNext();)
+		{
+			Entry<String, Path> entry = iterator.next();
+			Files.move(entry.getValue(), pathOf(entry.getKey()), ATOMIC_MOVE, REPLACE_EXISTING);
+			iterator.remove();
+		}
+		syncDirectory();
+	}
+
+	private void syncDirectory()
+	{
+		try (FileChannel channel = FileChannel.open(directory, READ))
+		{
+			channel.force(true);
+		}
+		catch (IOException e)
+		{
+			// Directories can't be opened on all platforms, the moves are then made durable by the file system itself
+		}
+	}
+
+	private void commitIfStaged(String name) throws IOException
+	{
+		boolean isStaged;
+		synchronized (this)
+		{
+			isStaged = staged.containsKey(name);
+		}
+		if (isStaged)
+		{
+			commit();
+		}
+	}
+
+	private synchronized void stage(String name, Path tempFile) throws IOException
+	{
+		Path replaced = staged.put(name, tempFile);
+		if (replaced != null)
+		{
+			Files.delete(replaced);
+		}
+	}
+
+	private Path pathOf(String name)
+	{
+		return directory.resolve(name);
+	}
+
+	/**
+	 * Writes to a temporary file through a {@link FileChannel}.
+	 * <p>
+	 * When finished, the file is staged if it's been completed, otherwise it's deleted.
+	 */
+	private class ChannelOutputStream extends OutputStream
+	{
+		private final String name;
+		private final Path tempFile;
+		private final FileChannel channel;
+		private final boolean completeWhenClosed;
+		private boolean completed;
+		private boolean finished;
+
+		ChannelOutputStream(String name, boolean completeWhenClosed) throws IOException
+		{
+			this.name = name;
+			this.tempFile = Files.createTempFile(directory, name + ".", TEMP_SUFFIX);
+			this.channel = FileChannel.open(tempFile, WRITE);
+			this.completeWhenClosed = completeWhenClosed;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException
+		{
+			ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+			while (buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			channel.close();
+			if (completeWhenClosed)
+			{
+				complete();
+				finish();
+			}
+		}
+
+		void complete()
+		{
+			completed = true;
+		}
+
+		void finish() throws IOException
+		{
+			if (finished)
+			{
+				return;
+			}
+			finished = true;
+			channel.close();
+			if (completed)
+			{
+				stage(name, tempFile);
+			}
+			else
+			{
+				Files.deleteIfExists(tempFile);
+			}
+		}
 	}
 }
@@ -3,6 +3,8 @@ package se.martinuhlen.fishbase.dao;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.time.Instant;
+import java.util.Optional;
 
 /**
  * A storage where data is persisted.
@@ -28,4 +30,54 @@ public interface Persistence
      * @throws IOException if data can't be written
      */
 	OutputStream output(String name) throws IOException;
+
+    /**
+     * Writes the data with given name.
+     * <p>
+     * Persistences that can tell a completed write from a failed one keep the previously written data if the writer fails,
+     * by default the data is simply written to an {@link #output(String) output stream}.
+     * 
+     * @param name of the data to write
+     * @param writer writes the data
+     * @throws IOException if data can't be written
+     */
+	default void write(String name, OutputWriter writer) throws IOException
+	{
+		try (OutputStream output = output(name))
+		{
+			writer.write(output);
+		}
+	}
+
+    /**
+     * Gets when the data with given name was last written.
+     * 
+     * @param name of the data
+     * @return time of last modification, or empty if data doesn't exist or the time is unknown
+     * @throws IOException if the time can't be read
+     */
+	default Optional<Instant> lastModified(String name) throws IOException
+	{
+		return Optional.empty();
+	}
+
+    /**
+     * Commits all data written since last commit as one group, making it durable.
+     * <p>
+     * Persistences that make each output durable when it's closed don't need to do anything.
+     * 
+     * @throws IOException if data can't be committed
+     */
+	default void commit() throws IOException
+	{
+	}
+
+	/**
+	 * Writes data to an output stream, that may be closed by the writer.
+	 */
+	@FunctionalInterface
+	interface OutputWriter
+	{
+		void write(OutputStream output) throws IOException;
+	}
 }
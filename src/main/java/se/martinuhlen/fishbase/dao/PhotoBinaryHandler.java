@@ -0,0 +1,45 @@
+package se.martinuhlen.fishbase.dao;
+
+import static java.util.function.Function.identity;
+
+import java.io.IOException;
+import java.util.function.Predicate;
+
+import se.martinuhlen.fishbase.domain.Photo;
+
+class PhotoBinaryHandler extends BinaryHandler<Photo>
+{
+	private final StringDictionary dictionary;
+
+	PhotoBinaryHandler(StringDictionary dictionary)
+	{
+		this.dictionary = dictionary;
+	}
+
+	@Override
+	void serialize(Output out, Photo photo) throws IOException
+	{
+		out.writeId(photo.getId());
+		out.writeId(photo.getTripId());
+		out.writeIds(photo.getSpecimens(), identity());
+		out.writeString(photo.getFileName());
+		out.writeDateTime(photo.getTime());
+		out.writeBoolean(photo.isStarred());
+	}
+
+	@Override
+	Photo deserialize(Input in, Predicate<String> superseded) throws IOException
+	{
+		String id = in.readId();
+		if (superseded.test(id))
+		{
+			return null;
+		}
+		return Photo.asPersisted(id)
+				.tripId(dictionary.canonical(in.readId()))
+				.specimens(in.readIds())
+				.fileName(in.readString())
+				.time(in.readDateTime())
+				.starred(in.readBoolean());
+	}
+}
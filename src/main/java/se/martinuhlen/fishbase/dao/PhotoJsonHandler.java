@@ -3,45 +3,74 @@ package se.martinuhlen.fishbase.dao;
 import static java.time.LocalDateTime.parse;
 import static java.util.function.Function.identity;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Predicate;
 
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
-import com.google.gson.JsonSerializationContext;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 import se.martinuhlen.fishbase.domain.Photo;
 
 class PhotoJsonHandler extends JsonHandler<Photo>
 {
-	PhotoJsonHandler(Persistence persistence)
+	private final StringDictionary dictionary;
+
+	PhotoJsonHandler(Persistence persistence, JsonFormat format, Sharding sharding, StringDictionary dictionary)
 	{
-		super(Photo.class, persistence);
+		super(Photo.class, persistence, format, sharding.shardOf(Photo::getTime), new PhotoBinaryHandler(dictionary));
+		this.dictionary = dictionary;
 	}
 
 	@Override
-	public JsonElement serialize(Photo photo, Type typeOfSrc, JsonSerializationContext context)
+	void serialize(JsonWriter out, Photo photo) throws IOException
 	{
-		JsonObject json = new JsonObject();
-		json.addProperty("id", photo.getId());
-		json.addProperty("trip", photo.getTripId());
-		json.add("specimens", serializeArray(photo.getSpecimens(), identity()));
-		json.addProperty("fileName", photo.getFileName());
-		json.addProperty("time", photo.getTime().toString());
-		json.addProperty("starred", photo.isStarred());
-		return json;
+		out.beginObject();
+		out.name("id").value(photo.getId());
+		out.name("trip").value(photo.getTripId());
+		writeArray(out.name("specimens"), photo.getSpecimens(), identity());
+		out.name("fileName").value(photo.getFileName());
+		out.name("time").value(photo.getTime().toString());
+		out.name("starred").value(photo.isStarred());
+		out.endObject();
 	}
 
 	@Override
-	public Photo deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException
+	Photo deserialize(JsonReader in, Predicate<String> superseded) throws IOException
 	{
-		JsonObject obj = json.getAsJsonObject();
-		return Photo.asPersisted(obj.get("id").getAsString())
-				.tripId(obj.get("trip").getAsString())
-				.specimens(deserializeArray(obj, "specimens", identity()))
-				.fileName(obj.get("fileName").getAsString())
-				.time(parse(obj.get("time").getAsString()))
-				.starred(obj.get("starred").getAsBoolean());
+		String id = null;
+		String tripId = null;
+		List<String> specimens = null;
+		String fileName = null;
+		LocalDateTime time = null;
+		Boolean starred = null;
+
+		in.beginObject();
+		while (in.hasNext())
+		{
+			switch (in.nextName())
+			{
+				case "id" -> id = in.nextString();
+				case "trip" -> tripId = dictionary.canonical(in.nextString());
+				case "specimens" -> specimens = readArray(in);
+				case "fileName" -> fileName = in.nextString();
+				case "time" -> time = parse(in.nextString());
+				case "starred" -> starred = in.nextBoolean();
+				default -> in.skipValue();
+			}
+		}
+		in.endObject();
+
+		if (superseded.test(required(id, "id")))
+		{
+			return null;
+		}
+		return Photo.asPersisted(id)
+				.tripId(required(tripId, "trip"))
+				.specimens(required(specimens, "specimens"))
+				.fileName(required(fileName, "fileName"))
+				.time(required(time, "time"))
+				.starred(required(starred, "starred"));
 	}
 }
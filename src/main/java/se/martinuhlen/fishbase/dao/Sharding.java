@@ -0,0 +1,44 @@
+package se.martinuhlen.fishbase.dao;
+
+import java.time.temporal.ChronoField;
+import java.time.temporal.Temporal;
+import java.util.function.Function;
+
+/**
+ * How trips, specimens and photos are split into snapshot files in {@link Persistence}.
+ * <p>
+ * Both layouts are read transparently, the sharding only affects how data is written.
+ *
+ * @author Martin
+ */
+public enum Sharding
+{
+    /**
+     * One snapshot file per type.
+     */
+    NONE,
+
+    /**
+     * One snapshot file per type and year, so that compacting rewrites only the years that have changed.
+     */
+    YEAR;
+
+    /**
+     * Gets a function of the shard of an object.
+     *
+     * @param time of an object, may be {@code null} for objects without time
+     * @return function of the shard of an object, or {@code null} if objects aren't sharded
+     */
+    <D> Function<D, Integer> shardOf(Function<? super D, ? extends Temporal> time)
+    {
+        if (this == NONE)
+        {
+            return null;
+        }
+        return object ->
+        {
+            Temporal temporal = time.apply(object);
+            return temporal == null ? null : temporal.get(ChronoField.YEAR);
+        };
+    }
+}
@@ -0,0 +1,32 @@
+package se.martinuhlen.fishbase.dao;
+
+import java.io.IOException;
+import java.util.function.Predicate;
+
+import se.martinuhlen.fishbase.domain.Specie;
+
+class SpecieBinaryHandler extends BinaryHandler<Specie>
+{
+	@Override
+	void serialize(Output out, Specie specie) throws IOException
+	{
+		out.writeId(specie.getId());
+		out.writeString(specie.getName());
+		out.writeInt(specie.getRegWeight());
+		out.writeBoolean(specie.isFreshWater());
+	}
+
+	@Override
+	Specie deserialize(Input in, Predicate<String> superseded) throws IOException
+	{
+		String id = in.readId();
+		if (superseded.test(id))
+		{
+			return null;
+		}
+		return Specie.asPersisted(id)
+				.name(in.readString())
+				.regWeight(in.readInt())
+				.freshWater(in.readBoolean());
+	}
+}
@@ -1,40 +1,60 @@
 package se.martinuhlen.fishbase.dao;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.util.function.Predicate;
 
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
-import com.google.gson.JsonSerializationContext;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 import se.martinuhlen.fishbase.domain.Specie;
 
 class SpecieJsonHandler extends JsonHandler<Specie>
 {
-	SpecieJsonHandler(Persistence persistence)
+	SpecieJsonHandler(Persistence persistence, JsonFormat format)
 	{
-		super(Specie.class, persistence);
+		super(Specie.class, persistence, format, null, new SpecieBinaryHandler());
 	}
 
 	@Override
-	public JsonElement serialize(Specie specie, Type typeOfSrc, JsonSerializationContext context)
+	void serialize(JsonWriter out, Specie specie) throws IOException
 	{
-		JsonObject json = new JsonObject();
-		json.addProperty("id", specie.getId());
-		json.addProperty("name", specie.getName());
-		json.addProperty("regWeight", specie.getRegWeight());
-		json.addProperty("freshWater", specie.isFreshWater());;
-		return json;
+		out.beginObject();
+		out.name("id").value(specie.getId());
+		out.name("name").value(specie.getName());
+		out.name("regWeight").value(specie.getRegWeight());
+		out.name("freshWater").value(specie.isFreshWater());
+		out.endObject();
 	}
 
 	@Override
-	public Specie deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException
+	Specie deserialize(JsonReader in, Predicate<String> superseded) throws IOException
 	{
-		JsonObject obj = json.getAsJsonObject();
-		return Specie.asPersisted(obj.get("id").getAsString())
-				.name(obj.get("name").getAsString())
-				.regWeight(obj.get("regWeight").getAsInt())
-				.freshWater(obj.get("freshWater").getAsBoolean());
+		String id = null;
+		String name = null;
+		Integer regWeight = null;
+		Boolean freshWater = null;
+
+		in.beginObject();
+		while (in.hasNext())
+		{
+			switch (in.nextName())
+			{
+				case "id" -> id = in.nextString();
+				case "name" -> name = in.nextString();
+				case "regWeight" -> regWeight = in.nextInt();
+				case "freshWater" -> freshWater = in.nextBoolean();
+				default -> in.skipValue();
+			}
+		}
+		in.endObject();
+
+		if (superseded.test(required(id, "id")))
+		{
+			return null;
+		}
+		return Specie.asPersisted(id)
+				.name(required(name, "name"))
+				.regWeight(required(regWeight, "regWeight"))
+				.freshWater(required(freshWater, "freshWater"));
 	}
 }
@@ -0,0 +1,57 @@
+package se.martinuhlen.fishbase.dao;
+
+import java.io.IOException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import se.martinuhlen.fishbase.domain.Specie;
+import se.martinuhlen.fishbase.domain.Specimen;
+
+class SpecimenBinaryHandler extends BinaryHandler<Specimen>
+{
+	private final StringDictionary dictionary;
+	private final Function<String, Specie> specie;
+
+	SpecimenBinaryHandler(StringDictionary dictionary, Function<String, Specie> specie)
+	{
+		this.dictionary = dictionary;
+		this.specie = specie;
+	}
+
+	@Override
+	void serialize(Output out, Specimen s) throws IOException
+	{
+		out.writeId(s.getId());
+		out.writeId(s.getTripId());
+		out.writeId(s.getSpecie().getId());
+		out.writeInt(s.getWeight());
+		out.writeFloat(s.getLength());
+		out.writeString(s.getLocation());
+		out.writeDateTime(s.getInstant());
+		out.writeString(s.getMethod());
+		out.writeString(s.getBait());
+		out.writeString(s.getWeather());
+		out.writeString(s.getText());
+	}
+
+	@Override
+	Specimen deserialize(Input in, Predicate<String> superseded) throws IOException
+	{
+		String id = in.readId();
+		if (superseded.test(id))
+		{
+			return null;
+		}
+		return Specimen.asPersisted(id)
+				.tripId(dictionary.canonical(in.readId()))
+				.specie(specie.apply(in.readId()))
+				.weight(in.readInt())
+				.length(in.readFloat())
+				.location(dictionary.canonical(in.readString()))
+				.instant(in.readDateTime())
+				.method(dictionary.canonical(in.readString()))
+				.bait(dictionary.canonical(in.readString()))
+				.weather(dictionary.canonical(in.readString()))
+				.text(in.readString());
+	}
+}
@@ -2,14 +2,13 @@ package se.martinuhlen.fishbase.dao;
 
 import static java.time.LocalDateTime.parse;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.time.LocalDateTime;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
-import com.google.gson.JsonSerializationContext;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 import se.martinuhlen.fishbase.domain.Specie;
 import se.martinuhlen.fishbase.domain.Specimen;
@@ -17,45 +16,83 @@ import se.martinuhlen.fishbase.domain.Specimen;
 class SpecimenJsonHandler extends JsonHandler<Specimen>
 {
 	private Function<String, Specie> specie;
+	private final StringDictionary dictionary;
 
-	SpecimenJsonHandler(Persistence persistence, Function<String, Specie> specie)
+	SpecimenJsonHandler(Persistence persistence, JsonFormat format, Sharding sharding, StringDictionary dictionary, Function<String, Specie> specie)
 	{
-		super(Specimen.class, persistence);
+		super(Specimen.class, persistence, format, sharding.shardOf(Specimen::getInstant), new SpecimenBinaryHandler(dictionary, specie));
+		this.dictionary = dictionary;
 		this.specie = specie;
 	}
 
 	@Override
-	public JsonElement serialize(Specimen s, Type typeOfSrc, JsonSerializationContext context)
+	void serialize(JsonWriter out, Specimen s) throws IOException
 	{
-		JsonObject json = new JsonObject();
-		json.addProperty("id", s.getId());
-		json.addProperty("trip", s.getTripId());
-		json.addProperty("specie", s.getSpecie().getId());
-		json.addProperty("weight", s.getWeight());
-		json.addProperty("length", s.getLength());
-		json.addProperty("location", s.getLocation());
-		json.addProperty("instant", s.getInstant().toString());
-		json.addProperty("method", s.getMethod());
-		json.addProperty("bait", s.getBait());
-		json.addProperty("weather", s.getWeather());
-		json.addProperty("text", s.getText());
-		return json;
+		out.beginObject();
+		out.name("id").value(s.getId());
+		out.name("trip").value(s.getTripId());
+		out.name("specie").value(s.getSpecie().getId());
+		out.name("weight").value(s.getWeight());
+		out.name("length").value(s.getLength());
+		out.name("location").value(s.getLocation());
+		out.name("instant").value(s.getInstant().toString());
+		out.name("method").value(s.getMethod());
+		out.name("bait").value(s.getBait());
+		out.name("weather").value(s.getWeather());
+		out.name("text").value(s.getText());
+		out.endObject();
 	}
 
 	@Override
-	public Specimen deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException
+	Specimen deserialize(JsonReader in, Predicate<String> superseded) throws IOException
 	{
-		JsonObject obj = json.getAsJsonObject();
-		return Specimen.asPersisted(obj.get("id").getAsString())
-		        .tripId(obj.get("trip").getAsString())
-				.specie(specie.apply(obj.get("specie").getAsString()))
-				.weight(obj.get("weight").getAsInt())
-				.length(obj.get("length").getAsFloat())
-				.location(obj.get("location").getAsString())
-				.instant(parse(obj.get("instant").getAsString()))
-				.method(obj.get("method").getAsString())
-				.bait(obj.get("bait").getAsString())
-				.weather(obj.get("weather").getAsString())
-				.text(obj.get("text").getAsString());
+		String id = null;
+		String tripId = null;
+		String specieId = null;
+		Integer weight = null;
+		Float length = null;
+		String location = null;
+		LocalDateTime instant = null;
+		String method = null;
+		String bait = null;
+		String weather = null;
+		String text = null;
+
+		in.beginObject();
+		while (in.hasNext())
+		{
+			switch (in.nextName())
+			{
+				case "id" -> id = in.nextString();
+				case "trip" -> tripId = dictionary.canonical(in.nextString());
+				case "specie" -> specieId = in.nextString();
+				case "weight" -> weight = in.nextInt();
+				case "length" -> length = (float) in.nextDouble();
+				case "location" -> location = dictionary.canonical(in.nextString());
+				case "instant" -> instant = parse(in.nextString());
+				case "method" -> method = dictionary.canonical(in.nextString());
+				case "bait" -> bait = dictionary.canonical(in.nextString());
+				case "weather" -> weather = dictionary.canonical(in.nextString());
+				case "text" -> text = in.nextString();
+				default -> in.skipValue();
+			}
+		}
+		in.endObject();
+
+		if (superseded.test(required(id, "id")))
+		{
+			return null;
+		}
+		return Specimen.asPersisted(id)
+		        .tripId(required(tripId, "trip"))
+				.specie(specie.apply(required(specieId, "specie")))
+				.weight(required(weight, "weight"))
+				.length(required(length, "length"))
+				.location(required(location, "location"))
+				.instant(required(instant, "instant"))
+				.method(required(method, "method"))
+				.bait(required(bait, "bait"))
+				.weather(required(weather, "weather"))
+				.text(required(text, "text"));
 	}
 }
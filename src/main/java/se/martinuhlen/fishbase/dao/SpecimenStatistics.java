@@ -0,0 +1,116 @@
+package se.martinuhlen.fishbase.dao;
+
+import static java.lang.String.CASE_INSENSITIVE_ORDER;
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import se.martinuhlen.fishbase.domain.Specimen;
+import se.martinuhlen.fishbase.domain.Statistics;
+import se.martinuhlen.fishbase.domain.StatisticsField;
+
+/**
+ * Rollups of {@link Statistics} of each {@link StatisticsField}, maintained as specimens are added and removed.
+ * <p>
+ * Each specimen is rolled up twice per field, once over all species and once within its own specie,
+ * so that both kinds of queries are answered without aggregating any specimens.
+ * Counts, weight sums and histograms are updated in constant time, min and max weights are kept in a sorted
+ * count of weights so that they survive removals.
+ *
+ * @author Martin
+ */
+class SpecimenStatistics
+{
+	private static final String ALL_SPECIES = "";
+	private static final Comparator<Statistics> ORDER = comparing(Statistics::getCount).reversed()
+			.thenComparing(Statistics::getValue, CASE_INSENSITIVE_ORDER);
+
+	// Rollups by field, specie ID (or ALL_SPECIES) and value
+	private final Map<StatisticsField, Map<String, Map<String, Rollup>>> rollups;
+
+	SpecimenStatistics()
+	{
+		rollups = new EnumMap<>(StatisticsField.class);
+		for (StatisticsField field : StatisticsField.values())
+		{
+			rollups.put(field, new HashMap<>());
+		}
+	}
+
+	synchronized void add(Specimen specimen)
+	{
+		update(specimen, 1);
+	}
+
+	synchronized void remove(Specimen specimen)
+	{
+		update(specimen, -1);
+	}
+
+	private void update(Specimen specimen, int delta)
+	{
+		int bucket = Statistics.ratioBucketOf(specimen);
+		rollups.forEach((field, bySpecie) ->
+		{
+			String value = field.valueOf(specimen);
+			for (String specieId : new String[] {ALL_SPECIES, specimen.getSpecie().getId()})
+			{
+				Map<String, Rollup> byValue = bySpecie.computeIfAbsent(specieId, id -> new HashMap<>());
+				Rollup rollup = byValue.computeIfAbsent(value, v -> new Rollup());
+				rollup.update(specimen.getWeight(), bucket, delta);
+				if (rollup.count == 0)
+				{
+					byValue.remove(value);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Gets the statistics of each value of given field.
+	 *
+	 * @param field to group by
+	 * @param specieId of the specimens, {@code null} for all species
+	 * @return statistics of each value, most specimens first
+	 */
+	synchronized List<Statistics> get(StatisticsField field, String specieId)
+	{
+		return rollups.get(field)
+				.getOrDefault(specieId == null ? ALL_SPECIES : specieId, Map.of())
+				.entrySet()
+				.stream()
+				.map(e -> e.getValue().toStatistics(e.getKey()))
+				.sorted(ORDER)
+				.collect(toList());
+	}
+
+	private static class Rollup
+	{
+		private int count;
+		private long totalWeight;
+		private final TreeMap<Integer, Integer> weights = new TreeMap<>();
+		private final int[] ratioHistogram = new int[Statistics.RATIO_BUCKETS];
+
+		void update(int weight, int bucket, int delta)
+		{
+			count += delta;
+			totalWeight += (long) weight * delta;
+			weights.merge(weight, delta, (c1, c2) -> c1 + c2 == 0 ? null : c1 + c2);
+			if (bucket >= 0)
+			{
+				ratioHistogram[bucket] += delta;
+			}
+		}
+
+		Statistics toStatistics(String value)
+		{
+			return new Statistics(value, count, totalWeight, weights.firstKey(), weights.lastKey(), ratioHistogram);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package se.martinuhlen.fishbase.dao;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dictionary of canonical instances of strings that are repeated in many objects,
+ * such as the location, method, bait and weather of specimens or the trip ID of specimens and photos.
+ * <p>
+ * Equal strings that are read are replaced by one shared instance, leaving the duplicates to be garbage collected.
+ *
+ * @author Martin
+ */
+class StringDictionary
+{
+	/**
+	 * Approximate size of a String instance with its (Latin-1) byte array, excluding the characters.
+	 */
+	private static final int STRING_OVERHEAD = 24 + 16;
+
+	private final Map<String, String> values = new ConcurrentHashMap<>();
+	private final LongAdder duplicates = new LongAdder();
+	private final LongAdder savedBytes = new LongAdder();
+
+	/**
+	 * Gets the canonical instance of given string.
+	 *
+	 * @param value to get canonical instance of, may be {@code null}
+	 * @return canonical instance that's equal to given value
+	 */
+	String canonical(String value)
+	{
+		if (value == null)
+		{
+			return null;
+		}
+		String canonical = values.putIfAbsent(value, value);
+		if (canonical == null)
+		{
+			return value;
+		}
+		duplicates.increment();
+		savedBytes.add(STRING_OVERHEAD + value.length());
+		return canonical;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Deduplicated " + duplicates.sum() + " strings into " + values.size() + " values, saving ~" + (savedBytes.sum() / 1024) + " KB";
+	}
+}
@@ -0,0 +1,62 @@
+package se.martinuhlen.fishbase.dao;
+
+import static java.util.stream.Collectors.toList;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import se.martinuhlen.fishbase.domain.Photo;
+import se.martinuhlen.fishbase.domain.Specimen;
+import se.martinuhlen.fishbase.domain.Trip;
+
+class TripBinaryHandler extends BinaryHandler<Trip>
+{
+	private final Function<String, Specimen> specimen;
+	private final Function<String, Photo> photo;
+
+	TripBinaryHandler(Function<String, Specimen> specimen, Function<String, Photo> photo)
+	{
+		this.specimen = specimen;
+		this.photo = photo;
+	}
+
+	@Override
+	void serialize(Output out, Trip trip) throws IOException
+	{
+		out.writeId(trip.getId());
+		out.writeString(trip.getDescription());
+		out.writeDate(trip.getStartDate());
+		out.writeDate(trip.getEndDate());
+		out.writeString(trip.getText());
+		out.writeIds(trip.getSpecimens(), Specimen::getId);
+		out.writeIds(trip.getPhotos(), Photo::getId);
+	}
+
+	@Override
+	Trip deserialize(Input in, Predicate<String> superseded) throws IOException
+	{
+		String id = in.readId();
+		if (superseded.test(id))
+		{
+			return null;
+		}
+		String description = in.readString();
+		LocalDate startDate = in.readDate();
+		LocalDate endDate = in.readDate();
+		String text = in.readString();
+		List<String> specimenIds = in.readIds();
+		List<String> photoIds = in.readIds();
+
+		return Trip.asPersisted(id)
+				.description(description)
+				.startDate(startDate)
+				.endDate(endDate)
+				.text(text)
+				.references(
+						() -> specimenIds.stream().map(specimen).collect(toList()),
+						() -> photoIds.stream().map(photo).collect(toList()));
+	}
+}
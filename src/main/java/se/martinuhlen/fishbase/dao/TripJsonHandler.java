@@ -1,14 +1,15 @@
 package se.martinuhlen.fishbase.dao;
 
-import java.lang.reflect.Type;
+import static java.util.stream.Collectors.toList;
+
+import java.io.IOException;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
-import com.google.gson.JsonSerializationContext;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 import se.martinuhlen.fishbase.domain.Photo;
 import se.martinuhlen.fishbase.domain.Specimen;
@@ -19,37 +20,68 @@ class TripJsonHandler extends JsonHandler<Trip>
 	private Function<String, Specimen> specimen;
 	private Function<String, Photo> photo;
 
-	TripJsonHandler(Persistence persistence, Function<String, Specimen> specimen, Function<String, Photo> photo)
+	TripJsonHandler(Persistence persistence, JsonFormat format, Sharding sharding, Function<String, Specimen> specimen, Function<String, Photo> photo)
 	{
-		super(Trip.class, persistence);
+		super(Trip.class, persistence, format, sharding.shardOf(Trip::getStartDate), new TripBinaryHandler(specimen, photo));
 		this.specimen = specimen;
 		this.photo = photo;
 	}
 
 	@Override
-	public JsonElement serialize(Trip trip, Type typeOfSrc, JsonSerializationContext context)
+	void serialize(JsonWriter out, Trip trip) throws IOException
 	{
-		JsonObject json = new JsonObject();
-		json.addProperty("id", trip.getId());
-		json.addProperty("description", trip.getDescription());
-		json.addProperty("startDate", trip.getStartDate().toString());
-		json.addProperty("endDate", trip.getEndDate().toString());
-		json.addProperty("text", trip.getText());
-		json.add("specimens", serializeArray(trip.getSpecimens(), Specimen::getId));
-		json.add("photos", serializeArray(trip.getPhotos(), Photo::getId));
-		return json;
+		out.beginObject();
+		out.name("id").value(trip.getId());
+		out.name("description").value(trip.getDescription());
+		out.name("startDate").value(trip.getStartDate().toString());
+		out.name("endDate").value(trip.getEndDate().toString());
+		out.name("text").value(trip.getText());
+		writeArray(out.name("specimens"), trip.getSpecimens(), Specimen::getId);
+		writeArray(out.name("photos"), trip.getPhotos(), Photo::getId);
+		out.endObject();
 	}
 
 	@Override
-	public Trip deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException
+	Trip deserialize(JsonReader in, Predicate<String> superseded) throws IOException
 	{
-		JsonObject obj = json.getAsJsonObject();
-		return Trip.asPersisted(obj.get("id").getAsString())
-				.description(obj.get("description").getAsString())
-				.startDate(LocalDate.parse(obj.get("startDate").getAsString()))
-				.endDate(LocalDate.parse(obj.get("endDate").getAsString()))
-				.text(obj.get("text").getAsString())
-				.specimens(deserializeArray(obj, "specimens", specimen::apply))
-				.photos(deserializeArray(obj, "photos", photo::apply));
+		String id = null;
+		String description = null;
+		LocalDate startDate = null;
+		LocalDate endDate = null;
+		String text = null;
+		List<String> specimenIds = null;
+		List<String> photoIds = null;
+
+		in.beginObject();
+		while (in.hasNext())
+		{
+			switch (in.nextName())
+			{
+				case "id" -> id = in.nextString();
+				case "description" -> description = in.nextString();
+				case "startDate" -> startDate = LocalDate.parse(in.nextString());
+				case "endDate" -> endDate = LocalDate.parse(in.nextString());
+				case "text" -> text = in.nextString();
+				case "specimens" -> specimenIds = readArray(in);
+				case "photos" -> photoIds = readArray(in);
+				default -> in.skipValue();
+			}
+		}
+		in.endObject();
+
+		if (superseded.test(required(id, "id")))
+		{
+			return null;
+		}
+		List<String> tripSpecimenIds = required(specimenIds, "specimens");
+		List<String> tripPhotoIds = required(photoIds, "photos");
+		return Trip.asPersisted(id)
+				.description(required(description, "description"))
+				.startDate(required(startDate, "startDate"))
+				.endDate(required(endDate, "endDate"))
+				.text(required(text, "text"))
+				.references(
+						() -> tripSpecimenIds.stream().map(specimen).collect(toList()),
+						() -> tripPhotoIds.stream().map(photo).collect(toList()));
 	}
 }
@@ -0,0 +1,358 @@
+package se.martinuhlen.fishbase.dao;
+
+import static java.lang.String.CASE_INSENSITIVE_ORDER;
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import se.martinuhlen.fishbase.domain.Photo;
+import se.martinuhlen.fishbase.domain.Specie;
+import se.martinuhlen.fishbase.domain.Specimen;
+import se.martinuhlen.fishbase.domain.Trip;
+import se.martinuhlen.fishbase.utils.PersistentMap;
+import se.martinuhlen.fishbase.utils.SortedTree;
+
+/**
+ * An immutable version of all data of a {@link JsonDao}, with its indexes.
+ * <p>
+ * Each change returns a new version that shares all untouched data with this version, in O(log n) per changed object,
+ * so that a version is a consistent snapshot that any number of readers can use without locking while writers make the next one.
+ *
+ * @author Martin
+ */
+final class Version
+{
+	private static final Comparator<Photo> PHOTO_ORDER = comparing(Photo::getTime).reversed().thenComparing(Photo::getId);
+	private static final Comparator<Photo> PHOTO_TIME_ORDER = comparing(Photo::getTime).thenComparing(Photo::getId);
+	private static final Comparator<Specie> SPECIE_ORDER = comparing(Specie::getName, CASE_INSENSITIVE_ORDER).thenComparing(Specie::getId);
+	private static final Comparator<Specimen> SPECIMEN_ORDER = comparing((Specimen s) -> s.getSpecie().getName())
+			.thenComparing(comparing(Specimen::getWeight).reversed())
+			.thenComparing(Specimen::getId);
+	private static final Comparator<Specimen> SPECIMEN_TIME_ORDER = comparing(Specimen::getInstant).thenComparing(Specimen::getId);
+	private static final Comparator<Specimen> HEAVIEST_FIRST = comparing(Specimen::getWeight).reversed().thenComparing(Specimen::getId);
+	private static final Comparator<Trip> TRIP_ORDER = comparing(Trip::getStartDate).reversed()
+			.thenComparing(Trip::getDescription)
+			.thenComparing(Trip::getId);
+	private static final Comparator<Trip> TRIP_DESCRIPTION_ORDER = comparing(Trip::getDescription).thenComparing(Trip::getId);
+
+	static final Version EMPTY = new Version(
+			PersistentMap.empty(),
+			PersistentMap.empty(),
+			PersistentMap.empty(),
+			PersistentMap.empty(),
+			PersistentMap.empty(),
+			PersistentMap.empty(),
+			PersistentMap.empty(),
+			PersistentMap.empty(),
+			SortedTree.empty(PHOTO_ORDER),
+			SortedTree.empty(SPECIE_ORDER),
+			SortedTree.empty(SPECIMEN_ORDER),
+			SortedTree.empty(TRIP_ORDER));
+
+	private final PersistentMap<String, Photo> photos;
+	private final PersistentMap<String, Specie> species;
+	private final PersistentMap<String, Specimen> specimens;
+	private final PersistentMap<String, Trip> trips;
+
+	// Indexes of the maps above, by ID
+	private final PersistentMap<String, SortedTree<Photo>> photosBySpecimen; // Oldest first
+	private final PersistentMap<String, SortedTree<Specimen>> specimensBySpecie; // Heaviest first, answers personal best and top N queries
+	private final PersistentMap<String, SortedTree<Specimen>> specimensByTrip; // Oldest first
+	private final PersistentMap<LocalDate, SortedTree<Trip>> tripsByStartDate; // By description
+
+	// The maps above, in canonical order
+	private final SortedTree<Photo> sortedPhotos;
+	private final SortedTree<Specie> sortedSpecies;
+	private final SortedTree<Specimen> sortedSpecimens;
+	private final SortedTree<Trip> sortedTrips;
+
+	private Version(
+			PersistentMap<String, Photo> photos,
+			PersistentMap<String, Specie> species,
+			PersistentMap<String, Specimen> specimens,
+			PersistentMap<String, Trip> trips,
+			PersistentMap<String, SortedTree<Photo>> photosBySpecimen,
+			PersistentMap<String, SortedTree<Specimen>> specimensBySpecie,
+			PersistentMap<String, SortedTree<Specimen>> specimensByTrip,
+			PersistentMap<LocalDate, SortedTree<Trip>> tripsByStartDate,
+			SortedTree<Photo> sortedPhotos,
+			SortedTree<Specie> sortedSpecies,
+			SortedTree<Specimen> sortedSpecimens,
+			SortedTree<Trip> sortedTrips)
+	{
+		this.photos = photos;
+		this.species = species;
+		this.specimens = specimens;
+		this.trips = trips;
+		this.photosBySpecimen = photosBySpecimen;
+		this.specimensBySpecie = specimensBySpecie;
+		this.specimensByTrip = specimensByTrip;
+		this.tripsByStartDate = tripsByStartDate;
+		this.sortedPhotos = sortedPhotos;
+		this.sortedSpecies = sortedSpecies;
+		this.sortedSpecimens = sortedSpecimens;
+		this.sortedTrips = sortedTrips;
+	}
+
+	Photo getPhoto(String id)
+	{
+		return photos.get(id);
+	}
+
+	Specie getSpecie(String id)
+	{
+		return species.get(id);
+	}
+
+	Specimen getSpecimen(String id)
+	{
+		return specimens.get(id);
+	}
+
+	Trip getTrip(String id)
+	{
+		return trips.get(id);
+	}
+
+	List<Photo> getPhotos()
+	{
+		return sortedPhotos.asList();
+	}
+
+	List<Specie> getSpecies()
+	{
+		return sortedSpecies.asList();
+	}
+
+	List<Specimen> getSpecimens()
+	{
+		return sortedSpecimens.asList();
+	}
+
+	List<Trip> getTrips()
+	{
+		return sortedTrips.asList();
+	}
+
+	List<Photo> getPhotosOfSpecimen(String specimenId)
+	{
+		return photosBySpecimen.getOrDefault(specimenId, SortedTree.empty(PHOTO_TIME_ORDER)).asList();
+	}
+
+	List<Specimen> getSpecimensOfSpecie(String specieId)
+	{
+		return specimensBySpecie.getOrDefault(specieId, SortedTree.empty(HEAVIEST_FIRST)).asList();
+	}
+
+	boolean hasSpecimensOfSpecie(String specieId)
+	{
+		return specimensBySpecie.containsKey(specieId);
+	}
+
+	List<Specimen> getSpecimensOfTrip(String tripId)
+	{
+		return specimensByTrip.getOrDefault(tripId, SortedTree.empty(SPECIMEN_TIME_ORDER)).asList();
+	}
+
+	/**
+	 * Gets the trips that started within given dates, latest first.
+	 */
+	List<Trip> getTrips(LocalDate from, LocalDate to)
+	{
+		return Lists.reverse(tripsByStartDate.valuesBetween(from, to))
+				.stream()
+				.flatMap(trips -> trips.asList().stream())
+				.collect(toList());
+	}
+
+	Version withPhotos(Collection<Photo> photos)
+	{
+		Version version = this;
+		for (Photo photo : photos)
+		{
+			version = version.withPhoto(photo);
+		}
+		return version;
+	}
+
+	private Version withPhoto(Photo photo)
+	{
+		Version v = withoutPhoto(photo.getId());
+		PersistentMap<String, SortedTree<Photo>> photosBySpecimen = v.photosBySpecimen;
+		for (String specimenId : photo.getSpecimens())
+		{
+			photosBySpecimen = photosBySpecimen.update(specimenId, tree -> (tree == null ? SortedTree.empty(PHOTO_TIME_ORDER) : tree).add(photo));
+		}
+		return new Version(
+				v.photos.put(photo.getId(), photo), v.species, v.specimens, v.trips,
+				photosBySpecimen, v.specimensBySpecie, v.specimensByTrip, v.tripsByStartDate,
+				v.sortedPhotos.add(photo), v.sortedSpecies, v.sortedSpecimens, v.sortedTrips);
+	}
+
+	Version withoutPhotos(Collection<String> ids)
+	{
+		Version version = this;
+		for (String id : ids)
+		{
+			version = version.withoutPhoto(id);
+		}
+		return version;
+	}
+
+	private Version withoutPhoto(String id)
+	{
+		Photo photo = photos.get(id);
+		if (photo == null)
+		{
+			return this;
+		}
+		PersistentMap<String, SortedTree<Photo>> photosBySpecimen = this.photosBySpecimen;
+		for (String specimenId : photo.getSpecimens())
+		{
+			photosBySpecimen = photosBySpecimen.update(specimenId, tree -> removeFrom(tree, photo));
+		}
+		return new Version(
+				photos.remove(id), species, specimens, trips,
+				photosBySpecimen, specimensBySpecie, specimensByTrip, tripsByStartDate,
+				sortedPhotos.remove(photo), sortedSpecies, sortedSpecimens, sortedTrips);
+	}
+
+	Version withSpecies(Collection<Specie> species)
+	{
+		Version version = this;
+		for (Specie specie : species)
+		{
+			version = version.withSpecie(specie);
+		}
+		return version;
+	}
+
+	private Version withSpecie(Specie specie)
+	{
+		Version v = withoutSpecie(specie.getId());
+		return new Version(
+				v.photos, v.species.put(specie.getId(), specie), v.specimens, v.trips,
+				v.photosBySpecimen, v.specimensBySpecie, v.specimensByTrip, v.tripsByStartDate,
+				v.sortedPhotos, v.sortedSpecies.add(specie), v.sortedSpecimens, v.sortedTrips);
+	}
+
+	Version withoutSpecies(Collection<String> ids)
+	{
+		Version version = this;
+		for (String id : ids)
+		{
+			version = version.withoutSpecie(id);
+		}
+		return version;
+	}
+
+	private Version withoutSpecie(String id)
+	{
+		Specie specie = species.get(id);
+		if (specie == null)
+		{
+			return this;
+		}
+		return new Version(
+				photos, species.remove(id), specimens, trips,
+				photosBySpecimen, specimensBySpecie, specimensByTrip, tripsByStartDate,
+				sortedPhotos, sortedSpecies.remove(specie), sortedSpecimens, sortedTrips);
+	}
+
+	Version withSpecimens(Collection<Specimen> specimens)
+	{
+		Version version = this;
+		for (Specimen specimen : specimens)
+		{
+			version = version.withSpecimen(specimen);
+		}
+		return version;
+	}
+
+	private Version withSpecimen(Specimen specimen)
+	{
+		Version v = withoutSpecimen(specimen.getId());
+		return new Version(
+				v.photos, v.species, v.specimens.put(specimen.getId(), specimen), v.trips,
+				v.photosBySpecimen,
+				v.specimensBySpecie.update(specimen.getSpecie().getId(), tree -> (tree == null ? SortedTree.empty(HEAVIEST_FIRST) : tree).add(specimen)),
+				v.specimensByTrip.update(specimen.getTripId(), tree -> (tree == null ? SortedTree.empty(SPECIMEN_TIME_ORDER) : tree).add(specimen)),
+				v.tripsByStartDate,
+				v.sortedPhotos, v.sortedSpecies, v.sortedSpecimens.add(specimen), v.sortedTrips);
+	}
+
+	Version withoutSpecimens(Collection<String> ids)
+	{
+		Version version = this;
+		for (String id : ids)
+		{
+			version = version.withoutSpecimen(id);
+		}
+		return version;
+	}
+
+	private Version withoutSpecimen(String id)
+	{
+		Specimen specimen = specimens.get(id);
+		if (specimen == null)
+		{
+			return this;
+		}
+		return new Version(
+				photos, species, specimens.remove(id), trips,
+				photosBySpecimen,
+				specimensBySpecie.update(specimen.getSpecie().getId(), tree -> removeFrom(tree, specimen)),
+				specimensByTrip.update(specimen.getTripId(), tree -> removeFrom(tree, specimen)),
+				tripsByStartDate,
+				sortedPhotos, sortedSpecies, sortedSpecimens.remove(specimen), sortedTrips);
+	}
+
+	Version withTrips(Collection<Trip> trips)
+	{
+		Version version = this;
+		for (Trip trip : trips)
+		{
+			version = version.withTrip(trip);
+		}
+		return version;
+	}
+
+	Version withTrip(Trip trip)
+	{
+		Version v = withoutTrip(trip.getId());
+		return new Version(
+				v.photos, v.species, v.specimens, v.trips.put(trip.getId(), trip),
+				v.photosBySpecimen, v.specimensBySpecie, v.specimensByTrip,
+				v.tripsByStartDate.update(trip.getStartDate(), tree -> (tree == null ? SortedTree.empty(TRIP_DESCRIPTION_ORDER) : tree).add(trip)),
+				v.sortedPhotos, v.sortedSpecies, v.sortedSpecimens, v.sortedTrips.add(trip));
+	}
+
+	Version withoutTrip(String id)
+	{
+		Trip trip = trips.get(id);
+		if (trip == null)
+		{
+			return this;
+		}
+		return new Version(
+				photos, species, specimens, trips.remove(id),
+				photosBySpecimen, specimensBySpecie, specimensByTrip,
+				tripsByStartDate.update(trip.getStartDate(), tree -> removeFrom(tree, trip)),
+				sortedPhotos, sortedSpecies, sortedSpecimens, sortedTrips.remove(trip));
+	}
+
+	/**
+	 * Removes an element from an index tree, dropping the tree when it becomes empty.
+	 */
+	private static <E> SortedTree<E> removeFrom(SortedTree<E> tree, E element)
+	{
+		SortedTree<E> remaining = tree == null ? null : tree.remove(element);
+		return remaining == null || remaining.isEmpty() ? null : remaining;
+	}
+}
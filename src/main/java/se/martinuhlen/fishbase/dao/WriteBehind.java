@@ -0,0 +1,214 @@
+package se.martinuhlen.fishbase.dao;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import se.martinuhlen.fishbase.utils.Logger;
+
+/**
+ * Writes files of a {@link Persistence} behind the back of the caller.
+ * <p>
+ * A scheduled write only marks its file as dirty, the write is performed on a single writer thread once no more writes
+ * have been scheduled for a short while, or at the latest ten times that long after the first file became dirty.
+ * Writes scheduled for a file that's already dirty supersede the pending write, so a burst of saves results in a single write per file.
+ * All files written together are then {@link Persistence#commit() committed} as one group.
+ * A write that fails is retried later, unless it's been superseded by then.
+ * Pending writes must be {@link #flush() flushed} before shutdown to be durable.
+ *
+ * @author Martin
+ */
+class WriteBehind
+{
+	static final long DEFAULT_DELAY_MILLIS = 1000;
+	private static final int MAX_DELAYS = 10;
+
+	private static final Logger LOGGER = Logger.getLogger(WriteBehind.class);
+
+	private final Persistence persistence;
+	private final long delayMillis;
+	private final ScheduledExecutorService executor;
+	private final Map<String, Runnable> pending;
+	private ScheduledFuture<?> scheduledWrite;
+	private long dirtySince;
+	private int writing;
+	private RuntimeException failure;
+
+	WriteBehind(Persistence persistence)
+	{
+		this(persistence, DEFAULT_DELAY_MILLIS);
+	}
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param persistence that files are written to
+	 * @param delayMillis how long dirty files wait for more changes before they're written
+	 */
+	WriteBehind(Persistence persistence, long delayMillis)
+	{
+		this.persistence = persistence;
+		this.delayMillis = delayMillis;
+		this.executor = Executors.newSingleThreadScheduledExecutor(task ->
+		{
+			Thread thread = new Thread(task, "JsonDao-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.pending = new LinkedHashMap<>();
+	}
+
+	/**
+	 * Schedules a write of given file, superseding any pending write of the same file.
+	 * The write of all dirty files is postponed by the delay, but not beyond the maximum delay since the first became dirty.
+	 *
+	 * @param name of the file
+	 * @param write that writes the latest state of the file when executed
+	 */
+	synchronized void schedule(String name, Runnable write)
+	{
+		pending.put(name, write);
+		long now = System.nanoTime();
+		if (scheduledWrite == null)
+		{
+			dirtySince = now;
+		}
+		else
+		{
+			scheduledWrite.cancel(false);
+		}
+		long maxDelayMillis = MAX_DELAYS * delayMillis - NANOSECONDS.toMillis(now - dirtySince);
+		scheduledWrite = executor.schedule(this::writePending, Math.max(0, Math.min(delayMillis, maxDelayMillis)), MILLISECONDS);
+	}
+
+	/**
+	 * Gets the number of files that are dirty or being written.
+	 *
+	 * @return number of pending writes
+	 */
+	synchronized int getPendingWrites()
+	{
+		return pending.size() + writing;
+	}
+
+	/**
+	 * Writes all pending files and blocks until they've been written.
+	 *
+	 * @throws RuntimeException if any write has failed since last flush
+	 */
+	void flush()
+	{
+		try
+		{
+			executor.submit(this::writePending).get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+		synchronized (this)
+		{
+			RuntimeException e = failure;
+			failure = null;
+			if (e != null)
+			{
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Writes the files that are dirty when called, files that become dirty meanwhile are written by the next scheduled write.
+	 */
+	private void writePending()
+	{
+		Map<String, Runnable> writes;
+		synchronized (this)
+		{
+			if (scheduledWrite != null)
+			{
+				scheduledWrite.cancel(false);
+				scheduledWrite = null;
+			}
+			writes = new LinkedHashMap<>(pending);
+			pending.clear();
+			writing = writes.size();
+		}
+		boolean written = false;
+		boolean failed = false;
+		for (Entry<String, Runnable> write : writes.entrySet())
+		{
+			try
+			{
+				write.getValue().run();
+				written = true;
+			}
+			catch (RuntimeException e)
+			{
+				LOGGER.log("Failed to write '" + write.getKey() + "', retrying later: " + e);
+				failed = true;
+				synchronized (this)
+				{
+					failure = e;
+					pending.putIfAbsent(write.getKey(), write.getValue());
+				}
+			}
+			finally
+			{
+				synchronized (this)
+				{
+					writing--;
+				}
+			}
+		}
+		if (written)
+		{
+			commit();
+		}
+		if (failed)
+		{
+			scheduleRetry();
+		}
+	}
+
+	/**
+	 * Schedules failed writes to be retried, unless they've been superseded by a newer write that's already scheduled.
+	 */
+	private synchronized void scheduleRetry()
+	{
+		if (scheduledWrite == null && !pending.isEmpty())
+		{
+			dirtySince = System.nanoTime();
+			scheduledWrite = executor.schedule(this::writePending, delayMillis, MILLISECONDS);
+		}
+	}
+
+	private void commit()
+	{
+		try
+		{
+			persistence.commit();
+		}
+		catch (IOException e)
+		{
+			LOGGER.log("Failed to commit written files: " + e);
+			synchronized (this)
+			{
+				failure = new RuntimeException(e);
+			}
+		}
+	}
+}
@@ -2,14 +2,9 @@ package se.martinuhlen.fishbase.domain;
 
 import static java.time.LocalDateTime.MIN;
 import static org.apache.commons.lang3.StringUtils.isBlank;
-import static se.martinuhlen.fishbase.domain.AutoCompleteField.BAIT;
-import static se.martinuhlen.fishbase.domain.AutoCompleteField.LOCATION;
-import static se.martinuhlen.fishbase.domain.AutoCompleteField.METHOD;
-import static se.martinuhlen.fishbase.domain.AutoCompleteField.WEATHER;
 import static se.martinuhlen.fishbase.domain.Specie.EMPTY_SPECIE;
 
 import java.time.LocalDateTime;
-import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Stream;
 
@@ -135,13 +130,15 @@ public final class Specimen extends Domain<Specimen>
 		return specie.getName() + " " + weight + "g";
 	}
 
-	public Map<AutoCompleteField, String> getAutoCompletions()
+	public String getAutoCompletion(AutoCompleteField field)
 	{
-	    return Map.of(
-	            LOCATION, location,
-	            METHOD, method,
-	            BAIT, bait,
-	            WEATHER, weather);
+	    return switch (field)
+	    {
+	        case LOCATION -> location;
+	        case METHOD -> method;
+	        case BAIT -> bait;
+	        case WEATHER -> weather;
+	    };
 	}
 	
 	@Override
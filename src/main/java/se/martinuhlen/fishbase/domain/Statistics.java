@@ -0,0 +1,91 @@
+package se.martinuhlen.fishbase.domain;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+
+/**
+ * Aggregate statistics of the specimens that share the value of a {@link StatisticsField}.
+ *
+ * @author Martin
+ */
+public final class Statistics
+{
+	/**
+	 * Number of buckets of the ratio histogram, each 10% of the reg weight wide and the last for 100% and more.
+	 */
+	public static final int RATIO_BUCKETS = 11;
+
+	private final String value;
+	private final int count;
+	private final long totalWeight;
+	private final int minWeight;
+	private final int maxWeight;
+	private final int[] ratioHistogram;
+
+	public Statistics(String value, int count, long totalWeight, int minWeight, int maxWeight, int[] ratioHistogram)
+	{
+		if (ratioHistogram.length != RATIO_BUCKETS)
+		{
+			throw new IllegalArgumentException("ratioHistogram must have " + RATIO_BUCKETS + " buckets");
+		}
+		this.value = requireNonNull(value, "value can't be null");
+		this.count = count;
+		this.totalWeight = totalWeight;
+		this.minWeight = minWeight;
+		this.maxWeight = maxWeight;
+		this.ratioHistogram = ratioHistogram.clone();
+	}
+
+	/**
+	 * Gets the bucket of the ratio histogram that a specimen belongs to.
+	 *
+	 * @param specimen to get bucket of
+	 * @return index of the bucket, or {@code -1} if the specie has no reg weight
+	 */
+	public static int ratioBucketOf(Specimen specimen)
+	{
+		if (specimen.getSpecie().getRegWeight() <= 0)
+		{
+			return -1;
+		}
+		return (int) Math.min(specimen.getRatio() * 10, RATIO_BUCKETS - 1);
+	}
+
+	//@formatter:off
+	public String getValue(){return value;}
+	public int getCount(){return count;}
+	public long getTotalWeight(){return totalWeight;}
+	public int getMinWeight(){return minWeight;}
+	public int getMaxWeight(){return maxWeight;}
+	public int getAverageWeight(){return count == 0 ? 0 : (int) (totalWeight / count);}
+	public int[] getRatioHistogram(){return ratioHistogram.clone();}
+	//@formatter:on
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (obj instanceof Statistics that)
+		{
+			return value.equals(that.value)
+				&& count == that.count
+				&& totalWeight == that.totalWeight
+				&& minWeight == that.minWeight
+				&& maxWeight == that.maxWeight
+				&& Arrays.equals(ratioHistogram, that.ratioHistogram);
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return value.hashCode() * 31 + count;
+	}
+
+	@Override
+	public String toString()
+	{
+		return value + ": " + count + " specimens, " + minWeight + "-" + maxWeight + " g, average " + getAverageWeight() + " g, ratios " + Arrays.toString(ratioHistogram);
+	}
+}
@@ -0,0 +1,61 @@
+package se.martinuhlen.fishbase.domain;
+
+import java.time.YearMonth;
+
+/**
+ * A field of specimens that {@link Statistics} are grouped by.
+ *
+ * @author Martin
+ */
+public enum StatisticsField
+{
+    /**
+     * @see Specimen#getSpecie()
+     */
+    SPECIE,
+
+    /**
+     * @see Specimen#getLocation()
+     */
+    LOCATION,
+
+    /**
+     * @see Specimen#getMethod()
+     */
+    METHOD,
+
+    /**
+     * @see Specimen#getBait()
+     */
+    BAIT,
+
+    /**
+     * Year of {@link Specimen#getInstant()}
+     */
+    YEAR,
+
+    /**
+     * Year and month of {@link Specimen#getInstant()}
+     */
+    MONTH;
+
+    /**
+     * Gets the value of this field of a specimen, that it's grouped by.
+     *
+     * @param specimen to get value of
+     * @return value of this field, never {@code null}
+     */
+    public String valueOf(Specimen specimen)
+    {
+        String value = switch (this)
+        {
+            case SPECIE -> specimen.getSpecie().getName();
+            case LOCATION -> specimen.getLocation();
+            case METHOD -> specimen.getMethod();
+            case BAIT -> specimen.getBait();
+            case YEAR -> Integer.toString(specimen.getInstant().getYear());
+            case MONTH -> YearMonth.from(specimen.getInstant()).toString();
+        };
+        return value == null ? "" : value;
+    }
+}
@@ -14,10 +14,13 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
 
+import se.martinuhlen.fishbase.utils.LazyList;
+
 /**
  * Represents a fishing trip.
  *
@@ -272,6 +275,14 @@ public final class Trip extends Domain<Trip>
             return this;
         }
 
+        @Override
+        public Trip references(Supplier<? extends Collection<Specimen>> specimens, Supplier<? extends Collection<Photo>> photos)
+        {
+            return new Trip(id, persisted, description, startDate, endDate, text,
+                    new LazyList<>(() -> applySpecimens(id, specimens.get())),
+                    new LazyList<>(() -> applyPhotos(id, photos.get())));
+        }
+
         @Override
         public Trip photos(List<Photo> photos)
         {
@@ -308,6 +319,16 @@ public final class Trip extends Domain<Trip>
     public interface SpecimenBuilder
     {
         PhotoBuilder specimens(Collection<Specimen> specimens);
+
+        /**
+         * Builds a trip whose specimens and photos are resolved when they're first accessed,
+         * so that it can be built before its specimens and photos are loaded.
+         *
+         * @param specimens resolves the specimens of the trip
+         * @param photos resolves the photos of the trip
+         * @return built trip
+         */
+        Trip references(Supplier<? extends Collection<Specimen>> specimens, Supplier<? extends Collection<Photo>> photos);
     }
 
 	public interface PhotoBuilder
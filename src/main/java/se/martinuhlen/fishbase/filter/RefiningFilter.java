@@ -0,0 +1,109 @@
+package se.martinuhlen.fishbase.filter;
+
+import static java.util.stream.Collectors.toList;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Strings;
+
+/**
+ * Filters elements by text from user input, remembering the previous result.
+ * <p>
+ * When the text is a refinement of the previous text, i.e. each previous part is contained in a part of the new text,
+ * every element that matches the new text also matched the previous text. Only the previous matches are then re-tested,
+ * any other text is a full scan of the elements.
+ *
+ * @param <T> type of elements being filtered
+ * @author Martin
+ */
+public class RefiningFilter<T>
+{
+	private final Function<String, Predicate<? super T>> scan;
+	private final Function<String, Predicate<? super T>> refinement;
+
+	private String previousText;
+	private List<T> previousSource;
+	private List<T> previousMatches;
+
+	/**
+	 * Creates a new filter.
+	 *
+	 * @param scan creates the predicate of a full scan for a text
+	 * @param refinement creates the predicate to re-test previous matches with for a text, must accept the same elements as {@code scan}
+	 */
+	public RefiningFilter(Function<String, Predicate<? super T>> scan, Function<String, Predicate<? super T>> refinement)
+	{
+		this.scan = scan;
+		this.refinement = refinement;
+	}
+
+	/**
+	 * Creates a new filter that uses the same predicate for full scans and refinements.
+	 */
+	public RefiningFilter(Function<String, Predicate<? super T>> predicate)
+	{
+		this(predicate, predicate);
+	}
+
+	/**
+	 * Filters given elements by given text.
+	 *
+	 * @param text to filter by, blank for all elements
+	 * @param source elements to filter, a refinement requires the same instance as the previous call
+	 * @return matching elements, in source order
+	 */
+	public synchronized List<T> filter(String text, List<T> source)
+	{
+		List<T> matches;
+		if (isBlank(text))
+		{
+			matches = source;
+		}
+		else if (source == previousSource && text.equals(previousText))
+		{
+			matches = previousMatches;
+		}
+		else if (source == previousSource && refines(text, previousText))
+		{
+			matches = filter(previousMatches, refinement.apply(text));
+		}
+		else
+		{
+			matches = filter(source, scan.apply(text));
+		}
+		previousText = text;
+		previousSource = source;
+		previousMatches = matches;
+		return matches;
+	}
+
+	private static <T> List<T> filter(List<T> elements, Predicate<? super T> predicate)
+	{
+		return elements.stream()
+				.filter(predicate)
+				.collect(toList());
+	}
+
+	/**
+	 * Tests if given text is a refinement of a previous text, so that it can only match a subset of what the previous text matched.
+	 *
+	 * @param text to test
+	 * @param previous text, all elements matched it if blank so a blank text is never refined
+	 * @return {@code true} if {@code text} refines {@code previous}
+	 */
+	static boolean refines(String text, String previous)
+	{
+		if (isBlank(text) || isBlank(previous))
+		{
+			return false;
+		}
+		String[] parts = StringUtils.split(text);
+		return Stream.of(StringUtils.split(previous))
+				.allMatch(previousPart -> Stream.of(parts).anyMatch(part -> Strings.CI.contains(part, previousPart)));
+	}
+}
@@ -2,6 +2,8 @@ package se.martinuhlen.fishbase.filter;
 
 import static org.apache.commons.lang3.StringUtils.containsIgnoreCase;
 
+import java.util.stream.Stream;
+
 import se.martinuhlen.fishbase.domain.Specie;
 
 /**
@@ -17,6 +19,14 @@ public class SpecieTextPredicate extends TextPredicate<Specie>
 	@Override
 	boolean matchesText(Specie specie, String text)
 	{
-		return containsIgnoreCase(specie.getName(), text);
+		return textOf(specie).anyMatch(str -> containsIgnoreCase(str, text));
+	}
+
+	/**
+	 * Gets the text of a specie that's filtered by this predicate, also indexed by {@link TextIndex}.
+	 */
+	public static Stream<String> textOf(Specie specie)
+	{
+		return Stream.of(specie.getName());
 	}
 }
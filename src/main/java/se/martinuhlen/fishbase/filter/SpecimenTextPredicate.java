@@ -23,13 +23,22 @@ public class SpecimenTextPredicate extends TextPredicate<Specimen>
 	boolean matchesText(Specimen s, String text)
 	{
 		return speciePredicate.test(s.getSpecie())
-	        || Stream.of(
-    			s.getLocation(),
-    			s.getInstant().toString(),
-    			s.getMethod(),
-    			s.getBait(),
-    			s.getWeather(),
-    			s.getText())
-    					.anyMatch(str -> containsIgnoreCase(str, text));
+	        || textOf(s).anyMatch(str -> containsIgnoreCase(str, text));
+	}
+
+	/**
+	 * Gets the text of a specimen that's filtered by this predicate, also indexed by {@link TextIndex}.
+	 * <p>
+	 * A specimen also matches if its specie matches, the name of the specie isn't part of this text.
+	 */
+	public static Stream<String> textOf(Specimen s)
+	{
+	    return Stream.of(
+	            s.getLocation(),
+	            s.getInstant().toString(),
+	            s.getMethod(),
+	            s.getBait(),
+	            s.getWeather(),
+	            s.getText());
 	}
 }
@@ -0,0 +1,152 @@
+package se.martinuhlen.fishbase.filter;
+
+import static java.util.Collections.emptySet;
+import static java.util.Comparator.comparingInt;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Inverted index of the text of objects, by ID, that answers the same queries as a {@link TextPredicate}.
+ * <p>
+ * Every substring of up to {@value #GRAM_LENGTH} characters of the indexed text is mapped to the IDs of the objects that contain it,
+ * so a short part of a query is looked up directly. A longer part is looked up by intersecting the IDs of all its n-grams
+ * and the few candidates left are then verified against their text.
+ * <p>
+ * Text is case folded character by character, so that a match is exactly a match of
+ * {@link StringUtils#containsIgnoreCase(CharSequence, CharSequence) containsIgnoreCase}.
+ *
+ * @author Martin
+ */
+public class TextIndex
+{
+	private static final int GRAM_LENGTH = 3;
+
+	private final Map<String, String[]> texts = new HashMap<>();
+	private final Map<String, Set<String>> postings = new HashMap<>();
+
+	/**
+	 * Indexes the text of an object, replacing any previously indexed text of it.
+	 *
+	 * @param id of the object
+	 * @param text of the object, {@code null} elements are ignored
+	 */
+	public synchronized void put(String id, Stream<String> text)
+	{
+		remove(id);
+		String[] folded = text
+				.filter(Objects::nonNull)
+				.map(TextIndex::fold)
+				.toArray(String[]::new);
+		texts.put(id, folded);
+		grams(folded).forEach(gram -> postings.computeIfAbsent(gram, g -> new HashSet<>()).add(id));
+	}
+
+	/**
+	 * Removes the text of an object from this index.
+	 *
+	 * @param id of the object
+	 */
+	public synchronized void remove(String id)
+	{
+		String[] folded = texts.remove(id);
+		if (folded != null)
+		{
+			grams(folded).forEach(gram -> postings.computeIfPresent(gram, (g, ids) -> ids.remove(id) && ids.isEmpty() ? null : ids));
+		}
+	}
+
+	/**
+	 * Gets the IDs of the objects whose text contains all white space separated parts of given text, ignoring case.
+	 *
+	 * @param text to search for, all objects match blank text
+	 * @return IDs of the matching objects
+	 * @see TextPredicate#test(Object)
+	 */
+	public synchronized Set<String> search(String text)
+	{
+		if (isBlank(text))
+		{
+			return new HashSet<>(texts.keySet());
+		}
+		Set<String> ids = null;
+		for (String part : StringUtils.split(text))
+		{
+			Set<String> matches = searchPart(fold(part));
+			if (ids == null)
+			{
+				ids = matches;
+			}
+			else
+			{
+				ids.retainAll(matches);
+			}
+			if (ids.isEmpty())
+			{
+				break;
+			}
+		}
+		return ids;
+	}
+
+	private Set<String> searchPart(String part)
+	{
+		if (part.length() <= GRAM_LENGTH)
+		{
+			return new HashSet<>(postings.getOrDefault(part, emptySet()));
+		}
+		List<Set<String>> candidates = new ArrayList<>();
+		for (int i = 0; i + GRAM_LENGTH <= part.length(); i++)
+		{
+			Set<String> ids = postings.get(part.substring(i, i + GRAM_LENGTH));
+			if (ids == null)
+			{
+				return new HashSet<>();
+			}
+			candidates.add(ids);
+		}
+		candidates.sort(comparingInt(Set::size));
+		Set<String> ids = new HashSet<>(candidates.get(0));
+		candidates.subList(1, candidates.size()).forEach(ids::retainAll);
+		ids.removeIf(id -> Stream.of(texts.get(id)).noneMatch(str -> str.contains(part)));
+		return ids;
+	}
+
+	private static Set<String> grams(String[] folded)
+	{
+		Set<String> grams = new HashSet<>();
+		for (String str : folded)
+		{
+			for (int start = 0; start < str.length(); start++)
+			{
+				for (int end = start + 1; end <= Math.min(start + GRAM_LENGTH, str.length()); end++)
+				{
+					grams.add(str.substring(start, end));
+				}
+			}
+		}
+		return grams;
+	}
+
+	/**
+	 * Folds the case of each character the same way as {@link String#regionMatches(boolean, int, String, int, int)}.
+	 */
+	private static String fold(String str)
+	{
+		char[] chars = str.toCharArray();
+		for (int i = 0; i < chars.length; i++)
+		{
+			chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+		}
+		return new String(chars);
+	}
+}
@@ -30,8 +30,17 @@ public class TripTextPredicate extends TextPredicate<Trip>
 
 	private boolean tripMatches(Trip trip, String text)
 	{
-		return Stream.of(trip.getDescription(), trip.getStartDate().toString(), trip.getText())
-					.anyMatch(str -> containsIgnoreCase(str, text));
+		return textOf(trip).anyMatch(str -> containsIgnoreCase(str, text));
+	}
+
+	/**
+	 * Gets the text of a trip that's filtered by this predicate, also indexed by {@link TextIndex}.
+	 * <p>
+	 * A trip also matches if any of its specimens matches, their text isn't part of this text.
+	 */
+	public static Stream<String> textOf(Trip trip)
+	{
+		return Stream.of(trip.getDescription(), trip.getStartDate().toString(), trip.getText());
 	}
 
 	private boolean specimensMatches(Trip trip)
@@ -1,6 +1,7 @@
 package se.martinuhlen.fishbase.google;
 
 import static se.martinuhlen.fishbase.utils.Constants.APPLICATION_NAME;
+import static se.martinuhlen.fishbase.utils.Constants.LOCAL_FOLDER;
 
 import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInstalledApp;
@@ -8,6 +9,9 @@ import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
 import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
 import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.http.HttpBackOffIOExceptionHandler;
+import com.google.api.client.http.HttpBackOffUnsuccessfulResponseHandler;
+import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
@@ -28,10 +32,11 @@ import java.security.GeneralSecurityException;
 import java.util.List;
 import java.util.stream.Stream;
 
+import se.martinuhlen.fishbase.google.drive.DriveService;
+
 public class GoogleServiceFactory
 {
 	private static final String USER_ID = "user";
-	private static final java.io.File LOCAL_FOLDER = new java.io.File(System.getProperty("user.home"), "." + APPLICATION_NAME.toLowerCase());
 
 	private static final List<String> REQUIRED_SCOPES = Stream.concat(
 	        Stream.of("https://www.googleapis.com/auth/photoslibrary.readonly"),
@@ -96,11 +101,24 @@ public class GoogleServiceFactory
 
 	public Drive createDrive()
 	{
-		return new Drive.Builder(httpTransport, jsonFactory, credential)
+		return new Drive.Builder(httpTransport, jsonFactory, this::initializeDriveRequest)
 				.setApplicationName(APPLICATION_NAME)
 				.build();
 	}
 
+	/**
+	 * Authorizes a request and makes it retry network and server errors with backoff.
+	 * Resumable uploads are resumed from the last acknowledged offset when a chunk is retried.
+	 */
+	private void initializeDriveRequest(HttpRequest request) throws IOException
+	{
+		credential.initialize(request);
+		HttpBackOffUnsuccessfulResponseHandler backOffHandler = new HttpBackOffUnsuccessfulResponseHandler(DriveService.newBackOff());
+		request.setUnsuccessfulResponseHandler((req, response, supportsRetry) ->
+				credential.handleResponse(req, response, supportsRetry) || backOffHandler.handleResponse(req, response, supportsRetry));
+		request.setIOExceptionHandler(new HttpBackOffIOExceptionHandler(DriveService.newBackOff()));
+	}
+
 	public PhotosLibraryClient createPhotosLibraryClient()
 	{
 		UserCredentials userCredentials = UserCredentials.newBuilder()
@@ -0,0 +1,138 @@
+package se.martinuhlen.fishbase.google.drive;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Properties;
+
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.model.File;
+
+/**
+ * Local copies of files on Google Drive, each stored with the ID, modification time and MD5 checksum of the revision it's a copy of.
+ * <p>
+ * A copy is current as long as the metadata of the file on Drive is unchanged, checking that is much cheaper than downloading the file.
+ *
+ * @author Martin
+ */
+class DriveCache
+{
+	private static final String ID = "id";
+	private static final String MODIFIED_TIME = "modifiedTime";
+	private static final String MD5 = "md5";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private final Path directory;
+
+	DriveCache(java.io.File directory)
+	{
+		this.directory = directory.toPath();
+	}
+
+	/**
+	 * Gets whether the local copy of a file is a copy of given revision.
+	 *
+	 * @param name of the file
+	 * @param remote metadata of the file on Drive
+	 * @return {@code true} if the local copy can be used instead of downloading the file
+	 */
+	boolean isCurrent(String name, File remote) throws IOException
+	{
+		Path metadataFile = metadataOf(name);
+		if (!Files.exists(metadataFile) || !Files.exists(dataOf(name)))
+		{
+			return false;
+		}
+		Properties metadata = new Properties();
+		try (Reader reader = Files.newBufferedReader(metadataFile))
+		{
+			metadata.load(reader);
+		}
+		return Objects.equals(metadata.getProperty(ID), remote.getId())
+				&& Objects.equals(metadata.getProperty(MODIFIED_TIME), toString(remote.getModifiedTime()))
+				&& Objects.equals(metadata.getProperty(MD5), remote.getMd5Checksum());
+	}
+
+	/**
+	 * Gets a new temporary file to write a copy to, before it's {@link #put(String, Path, File) put} into the cache.
+	 */
+	Path newTempFile(String name) throws IOException
+	{
+		Files.createDirectories(directory);
+		return Files.createTempFile(directory, name + ".", TEMP_SUFFIX);
+	}
+
+	/**
+	 * Puts a copy of given revision of a file into the cache, replacing any previous copy.
+	 *
+	 * @param name of the file
+	 * @param tempFile holding the copy, moved into the cache
+	 * @param remote metadata of the revision that's been copied
+	 */
+	void put(String name, Path tempFile, File remote) throws IOException
+	{
+		Properties metadata = new Properties();
+		metadata.setProperty(ID, remote.getId());
+		if (remote.getModifiedTime() != null)
+		{
+			metadata.setProperty(MODIFIED_TIME, toString(remote.getModifiedTime()));
+		}
+		if (remote.getMd5Checksum() != null)
+		{
+			metadata.setProperty(MD5, remote.getMd5Checksum());
+		}
+
+		Files.deleteIfExists(metadataOf(name));
+		Files.move(tempFile, dataOf(name), ATOMIC_MOVE, REPLACE_EXISTING);
+		Path tempMetadata = newTempFile(name);
+		try (Writer writer = Files.newBufferedWriter(tempMetadata))
+		{
+			metadata.store(writer, null);
+		}
+		Files.move(tempMetadata, metadataOf(name), ATOMIC_MOVE, REPLACE_EXISTING);
+	}
+
+	/**
+	 * Copies the local copy of a file to given stream.
+	 *
+	 * @param output to copy to, closed when done
+	 */
+	void copyTo(String name, OutputStream output) throws IOException
+	{
+		try (output)
+		{
+			Files.copy(dataOf(name), output);
+		}
+	}
+
+	/**
+	 * Removes the local copy of a file, if any.
+	 */
+	void remove(String name) throws IOException
+	{
+		Files.deleteIfExists(metadataOf(name));
+		Files.deleteIfExists(dataOf(name));
+	}
+
+	private Path dataOf(String name)
+	{
+		return directory.resolve(name);
+	}
+
+	private Path metadataOf(String name)
+	{
+		return directory.resolve(name + ".properties");
+	}
+
+	private static String toString(DateTime time)
+	{
+		return time == null ? null : Long.toString(time.getValue());
+	}
+}
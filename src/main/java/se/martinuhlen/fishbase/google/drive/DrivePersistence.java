@@ -9,20 +9,51 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 
+import org.apache.commons.io.input.TeeInputStream;
+
+import com.google.api.services.drive.model.File;
+
 import se.martinuhlen.fishbase.dao.Persistence;
+import se.martinuhlen.fishbase.utils.Logger;
 
+/**
+ * Persistence of files on Google Drive.
+ * <p>
+ * Optionally, files are cached locally. A cached file is read from disk as long as the file on Drive is unchanged since it was cached,
+ * which is checked by its metadata, so only files that have been changed by someone else are downloaded.
+ * Files that are written are cached as they're uploaded.
+ */
 public class DrivePersistence implements Persistence
 {
+	private static final Logger LOGGER = Logger.getLogger(DrivePersistence.class);
+
 	private final DriveService service;
+	private final DriveCache cache;
 	private final Map<String, ExecutorService> executors;
 
 	public DrivePersistence(DriveService service)
+	{
+		this(service, null);
+	}
+
+	/**
+	 * Creates a new instance that caches files locally.
+	 * 
+	 * @param service to read and write files with
+	 * @param cacheDirectory where files are cached, {@code null} to not cache files
+	 */
+	public DrivePersistence(DriveService service, java.io.File cacheDirectory)
 	{
 		this.service = service;
+		this.cache = cacheDirectory == null ? null : new DriveCache(cacheDirectory);
 		this.executors = new ConcurrentHashMap<>();
 	}
 
@@ -31,19 +62,69 @@ public class DrivePersistence implements Persistence
 	{
 		PipedInputStream input = new PipedInputStream(1_000_000);
 		PipedOutputStream output = new PipedOutputStream(input);
-		execute(name, () ->	service.download(name, output));
+		execute(name, cache == null
+				? () -> service.download(name, output)
+				: $(() -> readThrough(name, output)));
 		return input;
 	}
 
+	private void readThrough(String name, OutputStream output) throws IOException
+	{
+		Optional<File> remote = service.getFile(name);
+		if (remote.isEmpty())
+		{
+			cache.remove(name);
+			output.close();
+			return;
+		}
+		if (cache.isCurrent(name, remote.get()))
+		{
+			LOGGER.log("Reading cached copy of '" + name + "'");
+		}
+		else
+		{
+			Path tempFile = cache.newTempFile(name);
+			service.download(remote.get(), Files.newOutputStream(tempFile));
+			cache.put(name, tempFile, remote.get());
+		}
+		cache.copyTo(name, output);
+	}
+
 	@Override
 	public OutputStream output(String name) throws IOException
 	{
 		PipedInputStream input = new PipedInputStream(1_000_000);
 		PipedOutputStream output = new PipedOutputStream(input);
-		execute(name, () -> service.upload(name, input));
+		Instant modifiedTime = Instant.now();
+		execute(name, cache == null
+				? () -> service.upload(name, input, modifiedTime)
+				: $(() -> writeThrough(name, input, modifiedTime)));
 		return output;
 	}
 
+	private void writeThrough(String name, InputStream input, Instant modifiedTime) throws IOException
+	{
+		Path tempFile = cache.newTempFile(name);
+		File uploaded;
+		try (OutputStream copy = Files.newOutputStream(tempFile))
+		{
+			uploaded = service.upload(name, new TeeInputStream(input, copy), modifiedTime);
+		}
+		cache.put(name, tempFile, uploaded);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Files are stamped with the time they were requested to be written, not when their upload finished,
+	 * so the order in which files are written is kept even though they're uploaded concurrently.
+	 */
+	@Override
+	public Optional<Instant> lastModified(String name)
+	{
+		return service.getModifiedTime(name);
+	}
+
 	private void execute(String name, Runnable task)
 	{
 		executors
@@ -8,84 +8,403 @@ import static se.martinuhlen.fishbase.utils.Constants.APPLICATION_NAME;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
-import com.google.api.client.http.AbstractInputStreamContent;
-import com.google.api.client.http.InputStreamContent;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.util.BackOff;
+import com.google.api.client.util.DateTime;
+import com.google.api.client.util.ExponentialBackOff;
+import com.google.api.client.util.Sleeper;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.Drive.Files.Update;
 import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
 
+import se.martinuhlen.fishbase.utils.Checked;
 import se.martinuhlen.fishbase.utils.Logger;
 
+/**
+ * Reads and writes files in the application folder on Google Drive.
+ * <p>
+ * The metadata of all files in the application folder is resolved once, by a single query, and is then kept up to date
+ * from the responses of creating and updating files, so files are read and written straight by their ID
+ * and their metadata is known without asking Drive. Changes made to the folder by others are therefore only seen after a restart.
+ * Cached metadata is only invalidated if Drive responds 404 for its ID.
+ * Files that are missing when written are created in one batch, together with any other missing files that are written at the same time.
+ * <p>
+ * Files larger than a chunk are uploaded in chunks over a resumable session, an interrupted chunk is resumed from the offset acknowledged by Drive.
+ * An upload that fails anyway is retried with exponential backoff and jitter, as long as the failure is transient.
+ */
 public class DriveService
 {
 	private static final Logger LOGGER = Logger.getLogger(DriveService.class);
 	private static final String MIMETYPE_FOLDER = "application/vnd.google-apps.folder";
+	private static final String FILE_FIELDS = "id, name, modifiedTime, md5Checksum";
+	private static final int NOT_FOUND = 404;
+	static final int DEFAULT_CHUNK_SIZE = 4 * MediaHttpUploader.MINIMUM_CHUNK_SIZE;
 
 	private final Drive drive;
+	private final int chunkSize;
+	private final Supplier<BackOff> backOff;
+	private final Sleeper sleeper;
+	private final Map<String, UploadProgress> uploads;
+	private final Map<String, File> files;
+	private final Set<String> pendingCreations;
+	private final Object folderLock = new Object();
+	private final Object creationLock = new Object();
 
-	private File applicationFolder;
+	private volatile File applicationFolder;
+	private volatile boolean filesListed;
 
 	public DriveService(Drive drive)
 	{
+		this(drive, DEFAULT_CHUNK_SIZE, DriveService::newBackOff, Sleeper.DEFAULT);
+	}
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param drive client to use
+	 * @param chunkSize of resumable uploads, a multiple of {@link MediaHttpUploader#MINIMUM_CHUNK_SIZE}
+	 * @param backOff supplies the policy of retrying a failed upload
+	 * @param sleeper that waits between retries
+	 */
+	DriveService(Drive drive, int chunkSize, Supplier<BackOff> backOff, Sleeper sleeper)
+	{
+		if (chunkSize <= 0 || chunkSize % MediaHttpUploader.MINIMUM_CHUNK_SIZE != 0)
+		{
+			throw new IllegalArgumentException("Chunk size must be a multiple of " + MediaHttpUploader.MINIMUM_CHUNK_SIZE + ": " + chunkSize);
+		}
 		this.drive = drive;
+		this.chunkSize = chunkSize;
+		this.backOff = backOff;
+		this.sleeper = sleeper;
+		this.uploads = new ConcurrentHashMap<>();
+		this.files = new ConcurrentHashMap<>();
+		this.pendingCreations = new LinkedHashSet<>();
 	}
 
-	public void upload(String name, InputStream input)
+	public File upload(String name, InputStream input)
 	{
-		InputStreamContent content = new InputStreamContent(null, input);
-		findFile(name)
-  		.ifPresentOrElse(
-  				$(file -> updateFile(file, content)),
-  				$(() -> insertFile(name, content)));
+		return upload(name, input, Instant.now());
 	}
 
-	private void updateFile(File file, AbstractInputStreamContent content) throws IOException
+	/**
+	 * Uploads a file, stamping it with given modification time.
+	 * 
+	 * @param name of the file
+	 * @param input to upload
+	 * @param modifiedTime to set on the file
+	 * @return metadata of the uploaded file
+	 */
+	public File upload(String name, InputStream input, Instant modifiedTime)
 	{
-		log("Starting update of '" + file.getName() + "'");
-		Update update = drive.files().update(file.getId(), null, content);
-		update.getMediaHttpUploader().setDirectUploadEnabled(true);
-		update.execute();
-		log("Finished updating '" + file.getName() + "'");
+		return get(() ->
+		{
+			ByteArrayContent content;
+			try (input)
+			{
+				content = new ByteArrayContent(null, input.readAllBytes());
+			}
+			DateTime time = new DateTime(modifiedTime.toEpochMilli());
+			BackOff retries = backOff.get();
+			while (true)
+			{
+				try
+				{
+					return upload(name, content, time);
+				}
+				catch (IOException e)
+				{
+					long delay = isTransient(e) ? retries.nextBackOffMillis() : BackOff.STOP;
+					if (delay == BackOff.STOP)
+					{
+						throw e;
+					}
+					log("Failed to upload '" + name + "', retrying in " + delay + " ms: " + e);
+					sleeper.sleep(delay);
+				}
+			}
+		});
 	}
 
-	private void insertFile(String name, AbstractInputStreamContent content) throws IOException
+	private File upload(String name, ByteArrayContent content, DateTime modifiedTime) throws IOException
 	{
-		log("Starting insert of '" + name + "'");
-	    File file = new File();
-	    file.setName(name);
-	    file.setParents(asList(getApplicationFolder().getId()));
-		drive.files().create(file, content).execute();
-		log("Finished inserting '" + name + "'");
+		File file = getCachedFile(name).orElseGet($(() -> createFile(name)));
+		try
+		{
+			return updateFile(name, file.getId(), content, modifiedTime);
+		}
+		catch (GoogleJsonResponseException e)
+		{
+			if (e.getStatusCode() != NOT_FOUND)
+			{
+				throw e;
+			}
+			log("File '" + name + "' was not found by its ID, creating it again");
+			files.remove(name, file);
+			return updateFile(name, createFile(name).getId(), content, modifiedTime);
+		}
+	}
+
+	private File updateFile(String name, String id, ByteArrayContent content, DateTime modifiedTime) throws IOException
+	{
+		log("Starting update of '" + name + "'");
+		Update update = drive.files().update(id, new File().setModifiedTime(modifiedTime), content);
+		UploadProgress progress = new UploadProgress(name, content.getLength());
+		uploads.put(name, progress);
+		try
+		{
+			MediaHttpUploader uploader = update.getMediaHttpUploader();
+			boolean resumable = content.getLength() > chunkSize;
+			uploader.setDirectUploadEnabled(!resumable);
+			if (resumable)
+			{
+				uploader.setChunkSize(chunkSize);
+			}
+			uploader.setProgressListener(u -> uploads.put(name, progress.withBytesSent(u.getNumBytesUploaded())));
+			File updated = update.setFields(FILE_FIELDS).execute();
+			files.put(name, updated);
+			log("Finished updating '" + name + "'");
+			return updated;
+		}
+		finally
+		{
+			uploads.remove(name);
+		}
+	}
+
+	/**
+	 * Gets whether a failure is worth retrying, i.e. it's a network error or an error on the server side.
+	 */
+	private static boolean isTransient(IOException e)
+	{
+		if (e instanceof HttpResponseException response)
+		{
+			int code = response.getStatusCode();
+			return code >= 500 || code == 429 || code == 408;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the default policy for retrying failed requests; exponential backoff, randomized by 50%, for up to ten minutes.
+	 */
+	public static BackOff newBackOff()
+	{
+		return new ExponentialBackOff.Builder()
+				.setInitialIntervalMillis(1_000)
+				.setMultiplier(2)
+				.setRandomizationFactor(0.5)
+				.setMaxIntervalMillis(60_000)
+				.setMaxElapsedTimeMillis(600_000)
+				.build();
+	}
+
+	/**
+	 * Gets the progress of all uploads in progress.
+	 *
+	 * @return current progress of each upload
+	 */
+	public List<UploadProgress> getUploads()
+	{
+		return new ArrayList<>(uploads.values());
+	}
+
+	/**
+	 * Creates an empty file, together with all other files that are waiting to be created, in one batch.
+	 *
+	 * @return metadata of the created file
+	 */
+	private File createFile(String name) throws IOException
+	{
+		synchronized (pendingCreations)
+		{
+			pendingCreations.add(name);
+		}
+		synchronized (creationLock)
+		{
+			List<String> names;
+			synchronized (pendingCreations)
+			{
+				names = new ArrayList<>(pendingCreations);
+				pendingCreations.clear();
+			}
+			if (!names.isEmpty())
+			{
+				createFiles(names);
+			}
+		}
+		return getCachedFile(name).orElseThrow(() -> new IOException("Failed to create '" + name + "'"));
+	}
+
+	private void createFiles(List<String> names) throws IOException
+	{
+		log("Creating " + names);
+		String folderId = getApplicationFolder().getId();
+		BatchRequest batch = drive.batch();
+		for (String name : names)
+		{
+			File file = new File()
+					.setName(name)
+					.setParents(asList(folderId));
+			drive.files().create(file).setFields(FILE_FIELDS).queue(batch, new JsonBatchCallback<File>()
+			{
+				@Override
+				public void onSuccess(File created, HttpHeaders headers)
+				{
+					files.put(name, created);
+				}
+
+				@Override
+				public void onFailure(GoogleJsonError error, HttpHeaders headers)
+				{
+					log("Failed to create '" + name + "': " + error.getMessage());
+				}
+			});
+		}
+		batch.execute();
 	}
 
 	public void download(String name, OutputStream output)
 	{
-		findFile(name)
+		getFile(name)
 			.ifPresentOrElse(
-				$(f ->
-		  		{
-		  			log("Starting download of '" + name + "'");
-		  			try (output)
-		  			{
-		  				drive.files().get(f.getId()).executeMediaAndDownloadTo(output);
-		  				log("Finished downloading '" + name + "'");
-		  			}
-		  		}),
+				file -> download(file, output),
 				$(() -> output.close()));
 	}
 
-	private Optional<File> findFile(String name)
+	/**
+	 * Downloads the content of a file.
+	 * <p>
+	 * If the file isn't found by its ID it's searched for by name, if it's not found by name either nothing is downloaded.
+	 * 
+	 * @param file to download, as returned by {@link #getFile(String)}
+	 * @param output to download to, closed when done
+	 */
+	public void download(File file, OutputStream output)
+	{
+		Checked.run(() ->
+		{
+			String name = file.getName();
+			log("Starting download of '" + name + "'");
+			try (output)
+			{
+				try
+				{
+					drive.files().get(file.getId()).executeMediaAndDownloadTo(output);
+				}
+				catch (HttpResponseException e)
+				{
+					if (e.getStatusCode() != NOT_FOUND)
+					{
+						throw e;
+					}
+					log("File '" + name + "' was not found by its ID, searching for it by name");
+					files.remove(name, file);
+					Optional<File> found = findFile(name);
+					if (found.isEmpty())
+					{
+						return;
+					}
+					files.put(name, found.get());
+					drive.files().get(found.get().getId()).executeMediaAndDownloadTo(output);
+				}
+				log("Finished downloading '" + name + "'");
+			}
+		});
+	}
+
+	/**
+	 * Gets the cached metadata of a file; its ID, name, modification time and MD5 checksum.
+	 * 
+	 * @param name of the file
+	 * @return metadata, or empty if there's no such file
+	 */
+	public Optional<File> getFile(String name)
+	{
+		return get(() -> getCachedFile(name));
+	}
+
+	/**
+	 * Gets the modification time of a file.
+	 * 
+	 * @param name of the file
+	 * @return modification time, or empty if there's no such file
+	 */
+	public Optional<Instant> getModifiedTime(String name)
+	{
+		return getFile(name)
+				.map(File::getModifiedTime)
+				.map(time -> Instant.ofEpochMilli(time.getValue()));
+	}
+
+	/**
+	 * Gets the cached metadata of a file, the metadata of all files in the application folder is resolved the first time.
+	 */
+	private Optional<File> getCachedFile(String name) throws IOException
+	{
+		if (!filesListed)
+		{
+			listFiles();
+		}
+		return Optional.ofNullable(files.get(name));
+	}
+
+	private void listFiles() throws IOException
+	{
+		synchronized (folderLock)
+		{
+			if (filesListed)
+			{
+				return;
+			}
+			log("Listing files");
+			String folderId = getApplicationFolder().getId();
+			String pageToken = null;
+			do
+			{
+				FileList list = drive.files()
+						.list()
+						.setQ("'" + folderId + "' in parents and trashed=false")
+						.setFields("nextPageToken, files(" + FILE_FIELDS + ")")
+						.setPageToken(pageToken)
+						.execute();
+				list.getFiles().forEach(file -> files.putIfAbsent(file.getName(), file));
+				pageToken = list.getNextPageToken();
+			}
+			while (pageToken != null);
+			log("Found " + files.size() + " files");
+			filesListed = true;
+		}
+	}
+
+	private Optional<File> findFile(String name) throws IOException
 	{
-		log("Searching for file '" + name + '"');
-		Optional<File> file = get(() -> drive.files()
+		log("Searching for file '" + name + "'");
+		Optional<File> file = drive.files()
 				.list()
 				.setQ("name='"+name+"' and parents in '"+getApplicationFolder().getId()+"' and trashed=false")
+				.setFields("files(" + FILE_FIELDS + ")")
 				.execute()
 				.getFiles()
 				.stream()
-				.findAny());
+				.findAny();
 
 		if (file.isPresent())
 		{
@@ -103,26 +422,34 @@ public class DriveService
 		LOGGER.log(message);
 	}
 
-	private synchronized File getApplicationFolder()
-	{
-		if (applicationFolder == null)
-		{
-			applicationFolder = get(() -> drive.files()
-					.list()
-					.setQ("name = '" + APPLICATION_NAME + "' and trashed = false and mimeType = '" + MIMETYPE_FOLDER + "'")
-					.setFields("files(id, name)")
-					.execute())
-						.getFiles()
-						.stream()
-						.findAny()
-						.orElseGet($(() ->
-						{
-							File file = new File()
-									.setName(APPLICATION_NAME)
-									.setMimeType(MIMETYPE_FOLDER);
-							return drive.files().create(file).execute();
-						}));
+	private File getApplicationFolder()
+	{
+		File folder = applicationFolder;
+		if (folder != null)
+		{
+			return folder;
+		}
+		synchronized (folderLock)
+		{
+			if (applicationFolder == null)
+			{
+				applicationFolder = get(() -> drive.files()
+						.list()
+						.setQ("name = '" + APPLICATION_NAME + "' and trashed = false and mimeType = '" + MIMETYPE_FOLDER + "'")
+						.setFields("files(id, name)")
+						.execute())
+							.getFiles()
+							.stream()
+							.findAny()
+							.orElseGet($(() ->
+							{
+								File file = new File()
+										.setName(APPLICATION_NAME)
+										.setMimeType(MIMETYPE_FOLDER);
+								return drive.files().create(file).execute();
+							}));
+			}
+			return applicationFolder;
 		}
-		return applicationFolder;
 	}
 }
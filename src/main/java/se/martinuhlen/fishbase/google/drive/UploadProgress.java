@@ -0,0 +1,64 @@
+package se.martinuhlen.fishbase.google.drive;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Progress of an upload of a file.
+ */
+public final class UploadProgress
+{
+	private final String name;
+	private final long bytesSent;
+	private final long totalBytes;
+	private final long startNanos;
+	private final long nanos;
+
+	UploadProgress(String name, long totalBytes)
+	{
+		this(name, 0, totalBytes, System.nanoTime(), System.nanoTime());
+	}
+
+	private UploadProgress(String name, long bytesSent, long totalBytes, long startNanos, long nanos)
+	{
+		this.name = name;
+		this.bytesSent = bytesSent;
+		this.totalBytes = totalBytes;
+		this.startNanos = startNanos;
+		this.nanos = nanos;
+	}
+
+	UploadProgress withBytesSent(long bytesSent)
+	{
+		return new UploadProgress(name, bytesSent, totalBytes, startNanos, System.nanoTime());
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public long getBytesSent()
+	{
+		return bytesSent;
+	}
+
+	public long getTotalBytes()
+	{
+		return totalBytes;
+	}
+
+	/**
+	 * Gets the average number of bytes sent per second, since the upload started.
+	 */
+	public double getBytesPerSecond()
+	{
+		long elapsed = nanos - startNanos;
+		return elapsed <= 0 ? 0 : (double) bytesSent * SECONDS.toNanos(1) / elapsed;
+	}
+
+	@Override
+	public String toString()
+	{
+		return name + ": " + bytesSent / 1024 + " of " + totalBytes / 1024 + " KB, " + Math.round(getBytesPerSecond() / 1024) + " KB/s";
+	}
+}
@@ -1,8 +1,10 @@
 package se.martinuhlen.fishbase.javafx;
 
 import static java.util.Collections.emptyList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
+import static javafx.application.Platform.runLater;
 import static javafx.collections.FXCollections.observableArrayList;
 import static javafx.scene.control.Alert.AlertType.CONFIRMATION;
 import static javafx.scene.control.Alert.AlertType.ERROR;
@@ -13,7 +15,9 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
-import java.util.function.Consumer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -26,6 +30,8 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.TableView;
 import javafx.scene.layout.BorderPane;
+import se.martinuhlen.fishbase.dao.AsyncFishBaseDao;
+import se.martinuhlen.fishbase.dao.Batch;
 import se.martinuhlen.fishbase.domain.Domain;
 import se.martinuhlen.fishbase.javafx.action.Action;
 import se.martinuhlen.fishbase.javafx.action.RunnableAction;
@@ -37,8 +43,9 @@ abstract class AbstractTableView<W extends Wrapper<D>, D extends Domain<D>> impl
 	private final Logger logger = Logger.getLogger(getClass());
 	private final ReadOnlyStringProperty titleProperty;
 	private final Supplier<List<D>> loader;
-	private final Consumer<Collection<D>> saver;
-	private final Consumer<Collection<D>> deleter;
+	private final AsyncFishBaseDao asyncDao;
+	private final BiConsumer<Batch, Collection<D>> saver;
+	private final BiConsumer<Batch, Collection<D>> deleter;
 
 	private TableView<W> table;
 	final ObservableList<W> list;
@@ -50,10 +57,11 @@ abstract class AbstractTableView<W extends Wrapper<D>, D extends Domain<D>> impl
 
 	private Node content;
 
-	AbstractTableView(String title, Supplier<List<D>> loader, Consumer<Collection<D>> saver, Consumer<Collection<D>> deleter)
+	AbstractTableView(String title, Supplier<List<D>> loader, AsyncFishBaseDao asyncDao, BiConsumer<Batch, Collection<D>> saver, BiConsumer<Batch, Collection<D>> deleter)
 	{
 		this.titleProperty = new ReadOnlyStringWrapper(title).getReadOnlyProperty();
 		this.loader = loader;
+		this.asyncDao = asyncDao;
 		this.saver = saver;
 		this.deleter = deleter;
 		this.list = observableArrayList();
@@ -143,22 +151,38 @@ abstract class AbstractTableView<W extends Wrapper<D>, D extends Domain<D>> impl
 		{
 			List<D> rowsToSave = currentList();
 			rowsToSave.removeAll(unchangedList);
-			saver.accept(rowsToSave);
 			logger.log("Saving: (" + rowsToSave.size() + ") " + rowsToSave);
 
 			Set<String> currentIds = currentList().stream().map(Domain::getId).collect(toSet());
 			List<D> rowsToDelete = unchangedList.stream().filter(t -> !currentIds.contains(t.getId())).collect(toList());
 			logger.log("Deleting: (" + rowsToDelete.size() + ") " + rowsToDelete);
-			deleteRows(rowsToDelete);
 
-			refresh();
+			// The rows are saved off the FX thread, the content is disabled meanwhile so that no edits are lost by the refresh.
+			// All rows are saved and deleted in one batch, so that each changed file is written once.
+			content.setDisable(true);
+			asyncDao.batch(batch ->
+			{
+				saver.accept(batch, rowsToSave);
+				deleter.accept(batch, rowsToDelete);
+			}).whenCompleteAsync((v, e) -> saved(e), runnable -> runLater(runnable));
 		}
 	}
 
-    void deleteRows(List<D> rowsToDelete)
-    {
-        deleter.accept(rowsToDelete);
-    }
+	private void saved(Throwable failure)
+	{
+		content.setDisable(false);
+		if (failure != null)
+		{
+			Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+			logger.log("Failed to save: " + cause);
+			Alert alert = new Alert(ERROR);
+			alert.setTitle("Can not save");
+			alert.setHeaderText("Failed to save changes.");
+			alert.setContentText(cause.getMessage());
+			alert.showAndWait();
+		}
+		refresh();
+	}
 
 	@Override
 	public final Action refreshAction()
@@ -193,10 +217,13 @@ abstract class AbstractTableView<W extends Wrapper<D>, D extends Domain<D>> impl
 	{
 		W wrapper = table.getSelectionModel().getSelectedItem();
 		D wrapee = wrapper.getWrapee();
-		if (isRemovable(wrapee))
+		isRemovable(wrapee).thenAcceptAsync(removable ->
 		{
-		    removeSelected();
-		}
+			if (removable && table.getSelectionModel().getSelectedItem() == wrapper)
+			{
+			    removeSelected();
+			}
+		}, runnable -> runLater(runnable));
 	}
 
     void removeSelected()
@@ -218,10 +245,10 @@ abstract class AbstractTableView<W extends Wrapper<D>, D extends Domain<D>> impl
      * Checks if if given wrapee object can be removed from the table and then on save be deleted.
      * 
      * @param wrapee to check
-     * @return {@code true} if OK to remove
+     * @return completed with {@code true} if OK to remove
      */
-	boolean isRemovable(D wrapee)
+	CompletableFuture<Boolean> isRemovable(D wrapee)
 	{
-		return true;
+		return completedFuture(true);
 	}
 }
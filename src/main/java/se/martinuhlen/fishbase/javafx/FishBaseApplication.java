@@ -1,5 +1,7 @@
 package se.martinuhlen.fishbase.javafx;
 
+import static java.util.stream.Collectors.joining;
+import static javafx.application.Platform.runLater;
 import static javafx.beans.binding.Bindings.createStringBinding;
 import static javafx.geometry.Side.BOTTOM;
 import static javafx.scene.control.Alert.AlertType.CONFIRMATION;
@@ -9,6 +11,8 @@ import static javafx.scene.control.ButtonType.CANCEL;
 import static javafx.scene.control.TabPane.TabClosingPolicy.ALL_TABS;
 import static javafx.scene.input.KeyCombination.keyCombination;
 import static javafx.stage.WindowEvent.WINDOW_CLOSE_REQUEST;
+import static se.martinuhlen.fishbase.dao.JsonFormat.COMPACT;
+import static se.martinuhlen.fishbase.dao.Sharding.YEAR;
 import static se.martinuhlen.fishbase.javafx.View.EMPTY_VIEW;
 import static se.martinuhlen.fishbase.javafx.utils.ImageSize.SIZE_256;
 import static se.martinuhlen.fishbase.javafx.utils.Images.getImageView;
@@ -17,15 +21,23 @@ import static se.martinuhlen.fishbase.javafx.utils.Images.getImages;
 import static se.martinuhlen.fishbase.utils.Constants.APPLICATION_NAME;
 import static se.martinuhlen.fishbase.utils.Constants.BUILD_TIME;
 import static se.martinuhlen.fishbase.utils.Constants.DATE_TIME_FORMAT;
+import static se.martinuhlen.fishbase.utils.Constants.LOCAL_FOLDER;
 
+import java.io.File;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import javafx.application.Application;
+import javafx.concurrent.ScheduledService;
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
+import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
@@ -44,10 +56,20 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
+import javafx.util.Duration;
+import se.martinuhlen.fishbase.dao.Codec;
+import se.martinuhlen.fishbase.dao.CompressingPersistence;
+import se.martinuhlen.fishbase.dao.AsyncFishBaseDao;
 import se.martinuhlen.fishbase.dao.FishBaseDao;
+import se.martinuhlen.fishbase.domain.Domain;
+import se.martinuhlen.fishbase.domain.Photo;
+import se.martinuhlen.fishbase.domain.Specie;
+import se.martinuhlen.fishbase.domain.Specimen;
+import se.martinuhlen.fishbase.domain.Trip;
 import se.martinuhlen.fishbase.google.GoogleServiceFactory;
 import se.martinuhlen.fishbase.google.drive.DrivePersistence;
 import se.martinuhlen.fishbase.google.drive.DriveService;
+import se.martinuhlen.fishbase.google.drive.UploadProgress;
 import se.martinuhlen.fishbase.google.photos.PhotoService;
 import se.martinuhlen.fishbase.javafx.action.Action;
 import se.martinuhlen.fishbase.javafx.action.ReplaceableAction;
@@ -88,14 +110,24 @@ public class FishBaseApplication extends Application
 	private DriveService driveService;
 	private DrivePersistence drivePersistence;
 	private FishBaseDao dao;
+	private AsyncFishBaseDao asyncDao;
 
 	private final Consumer<String> tripOpener = tripId -> openTab(TripView.class).selectTrip(tripId);
 
 	private final Map<Class<? extends View>, Supplier<? extends View>> viewSuppliers = Map.of(
-			TripView.class, () -> new TripView(dao, photoService),
-			SpecimenView.class, () -> new SpecimenView(dao, photoService, tripOpener),
-			SpecieView.class, () -> new SpecieView(dao),
-			PhotoView.class, () -> new PhotoView(photoService, dao, tripOpener));
+			TripView.class, () -> new TripView(dao, asyncDao, photoService),
+			SpecimenView.class, () -> new SpecimenView(dao, asyncDao, photoService, tripOpener),
+			SpecieView.class, () -> new SpecieView(dao, asyncDao),
+			PhotoView.class, () -> new PhotoView(photoService, dao, tripOpener),
+			StatisticsView.class, () -> new StatisticsView(dao));
+
+	// The data each view shows, so that it's refreshed as soon as its own data is loaded
+	private final Map<Class<? extends View>, List<Class<? extends Domain<?>>>> viewData = Map.of(
+			TripView.class, List.of(Trip.class),
+			SpecimenView.class, List.of(Specimen.class, Photo.class),
+			SpecieView.class, List.of(Specie.class),
+			PhotoView.class, List.of(Photo.class),
+			StatisticsView.class, List.of(Specimen.class));
 
 	public FishBaseApplication()
 	{
@@ -109,8 +141,9 @@ public class FishBaseApplication extends Application
 	    this.stage = stage;
 		photoService = PhotoService.create(GoogleServiceFactory.get().createPhotosLibraryClient());
 		driveService = new DriveService(GoogleServiceFactory.get().createDrive());
-		drivePersistence = new DrivePersistence(driveService);
-		dao = FishBaseDao.create(drivePersistence);
+		drivePersistence = new DrivePersistence(driveService, new File(LOCAL_FOLDER, "cache"));
+		dao = FishBaseDao.create(new CompressingPersistence(drivePersistence, Codec.GZIP), COMPACT, YEAR);
+		asyncDao = new AsyncFishBaseDao(dao);
 
 		tabPane.getSelectionModel().selectedItemProperty().addListener((obs, oldTab, newTab) -> selectView());
 		tabPane.setTabClosingPolicy(ALL_TABS);
@@ -121,7 +154,8 @@ public class FishBaseApplication extends Application
 		Button refreshButton = createActionButton("Refresh", "refresh.png", "F5", refreshAction);
 		Button deleteButton = createActionButton("Delete", "delete.png", "CTRL+D", deleteAction);
 		saveAction.enabledProperty().addListener((obs, old, enabled) ->	refreshButton.setGraphic(image(enabled ? "undo.png" : "refresh.png")));
-		HBox toolbar = new HBox(startButton, addButton, saveButton, refreshButton, deleteButton);
+		HBox toolbar = new HBox(startButton, addButton, saveButton, refreshButton, deleteButton, createPendingWritesLabel());
+		toolbar.setAlignment(Pos.CENTER_LEFT);
 
 		StackPane centerPane = new StackPane(getImageView("fish.png", SIZE_256), tabPane);
 		BorderPane borderPane = new BorderPane();
@@ -148,9 +182,61 @@ public class FishBaseApplication extends Application
 					.filter(b -> b != shutdown)
 					.ifPresent(b -> e.consume());
 			}
+			if (!e.isConsumed() && (asyncDao.getPendingOperations() > 0 || (dao.isReady() && dao.getPendingWrites() > 0) || !driveService.getUploads().isEmpty()))
+			{
+				e.consume();
+				new ProgressDisplayer(stage, createWriteService()).startAndThen(stage::close);
+			}
 		});
 	}
 
+	/**
+	 * Creates a service that writes all saved changes to Google Drive, displaying the progress of each upload.
+	 */
+	private Service<Void> createWriteService()
+	{
+		return new Service<>()
+		{
+			@Override
+			protected Task<Void> createTask()
+			{
+				return new Task<>()
+				{
+					@Override
+					protected Void call() throws Exception
+					{
+						updateTitle("Writing to Google Drive");
+						updateMessage("Saving changes...");
+						CompletableFuture<Void> flushed = asyncDao.flush();
+						int operations = asyncDao.getPendingOperations();
+						while (!flushed.isDone())
+						{
+							updateProgress(operations - asyncDao.getPendingOperations(), operations);
+							Thread.sleep(50);
+						}
+						flushed.join();
+						updateMessage("Uploading saved changes...");
+						CompletableFuture<Void> shutdown = CompletableFuture.runAsync(drivePersistence::shutdown);
+						while (!shutdown.isDone())
+						{
+							List<UploadProgress> uploads = driveService.getUploads();
+							if (!uploads.isEmpty())
+							{
+								updateMessage(uploads.stream().map(UploadProgress::toString).collect(joining("\n")));
+								updateProgress(
+										uploads.stream().mapToLong(UploadProgress::getBytesSent).sum(),
+										uploads.stream().mapToLong(UploadProgress::getTotalBytes).sum());
+							}
+							Thread.sleep(200);
+						}
+						shutdown.join();
+						return null;
+					}
+				};
+			}
+		};
+	}
+
 	private Button createStartButton()
     {
 	    ContextMenu menu = new ContextMenu(
@@ -158,6 +244,7 @@ public class FishBaseApplication extends Application
                 createOpenItem("Specimens", "F2", SpecimenView.class),
                 createOpenItem("Species", "F3", SpecieView.class),
                 createOpenItem("Photos", "F4", PhotoView.class),
+                createOpenItem("Statistics", "F6", StatisticsView.class),
                 new SeparatorMenuItem(),
                 createAboutItem(),
                 createExitItem());
@@ -181,6 +268,35 @@ public class FishBaseApplication extends Application
         return item;
     }
 
+    private Label createPendingWritesLabel()
+    {
+        Label label = new Label();
+        label.setTooltip(new Tooltip("Saved changes not yet written to Google Drive"));
+        ScheduledService<String> poller = new ScheduledService<>()
+        {
+            @Override
+            protected Task<String> createTask()
+            {
+                return new Task<>()
+                {
+                    @Override
+                    protected String call() throws Exception
+                    {
+                        int operations = asyncDao.getPendingOperations();
+                        int writes = dao.getPendingWrites();
+                        return operations > 0 ? "  Saving " + operations + " change(s)..."
+                             : writes > 0 ? "  Writing " + writes + " file(s)..."
+                             : "";
+                    }
+                };
+            }
+        };
+        poller.setPeriod(Duration.seconds(1));
+        poller.setOnSucceeded(e -> label.setText(poller.getValue()));
+        poller.start();
+        return label;
+    }
+
     private Button createActionButton(String text, String imageName, String shortcut, Action action)
 	{
         Button button = createButton(text, imageName, shortcut);
@@ -271,7 +387,16 @@ public class FishBaseApplication extends Application
         @SuppressWarnings("unchecked")
         Supplier<V> supplier = (Supplier<V>) viewSuppliers.get(typeOfView);
         V view = supplier.get();
-        view.refreshAction().handle(null);
+        List<Class<? extends Domain<?>>> data = viewData.get(typeOfView);
+        if (data.stream().allMatch(dao::isReady))
+        {
+            view.refreshAction().handle(null);
+        }
+        else
+        {
+            // The tab is shown right away and filled with data once the DAO has loaded the data of the view
+            onReady(data, () -> runLater(() -> view.refreshAction().handle(null)));
+        }
 
         Tab tab = new Tab("", view.getContent());
         tabToView.put(tab, view);
@@ -292,6 +417,21 @@ public class FishBaseApplication extends Application
         selectTab(tab);
     }
 
+    /**
+     * Runs an action once all given types of data are loaded.
+     */
+    private void onReady(List<Class<? extends Domain<?>>> data, Runnable action)
+    {
+        if (data.isEmpty())
+        {
+            action.run();
+        }
+        else
+        {
+            dao.onReady(data.get(0), () -> onReady(data.subList(1, data.size()), action));
+        }
+    }
+
 	private void selectTab(Tab tab)
 	{
 		tabPane.getSelectionModel().select(tab);
@@ -301,6 +441,10 @@ public class FishBaseApplication extends Application
 	public void stop() throws Exception
 	{
 		super.stop();
+		if (dao != null)
+		{
+			dao.flush();
+		}
 		if (drivePersistence != null)
 		{
 			drivePersistence.shutdown();
@@ -1,16 +1,21 @@
 package se.martinuhlen.fishbase.javafx;
 
 import static java.util.Arrays.asList;
+import static javafx.application.Platform.runLater;
 import static javafx.scene.control.Alert.AlertType.ERROR;
 import static javafx.scene.control.cell.TextFieldTableCell.forTableColumn;
 import static se.martinuhlen.fishbase.javafx.utils.Styles.RIGHT_ALIGNMENT;
 
+import java.util.concurrent.CompletableFuture;
+
 import javafx.collections.transformation.SortedList;
 import javafx.scene.control.Alert;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.cell.CheckBoxTableCell;
 import javafx.util.converter.IntegerStringConverter;
+import se.martinuhlen.fishbase.dao.AsyncFishBaseDao;
+import se.martinuhlen.fishbase.dao.Batch;
 import se.martinuhlen.fishbase.dao.FishBaseDao;
 import se.martinuhlen.fishbase.domain.Specie;
 import se.martinuhlen.fishbase.javafx.action.Action;
@@ -19,13 +24,13 @@ import se.martinuhlen.fishbase.javafx.data.SpecieWrapper;
 
 class SpecieView extends AbstractTableView<SpecieWrapper, Specie>
 {
-	private final FishBaseDao dao;
+	private final AsyncFishBaseDao asyncDao;
 	private final RunnableAction addAction = new RunnableAction(true, () -> add());
 
-	SpecieView(FishBaseDao dao)
+	SpecieView(FishBaseDao dao, AsyncFishBaseDao asyncDao)
 	{
-		super("Species", dao::getSpecies, dao::saveSpecies, dao::deleteSpecies);
-		this.dao = dao;
+		super("Species", dao::getSpecies, asyncDao, Batch::saveSpecies, Batch::deleteSpecies);
+		this.asyncDao = asyncDao;
 	}
 
 	@Override
@@ -59,20 +64,19 @@ class SpecieView extends AbstractTableView<SpecieWrapper, Specie>
 	}
 
 	@Override
-	boolean isRemovable(Specie specie)
+	CompletableFuture<Boolean> isRemovable(Specie specie)
 	{
-		if (!dao.isSpecieDeletable(specie))
-		{
-			Alert alert = new Alert(ERROR);
-			alert.setTitle("Cannot delete");
-			alert.setHeaderText("Cannot delete the specie '" + specie.getLabel() + "' because it has specimens.");
-			alert.showAndWait();
-			return false;
-		}
-		else
+		return asyncDao.isSpecieDeletable(specie).thenApplyAsync(deletable ->
 		{
-			return true;
-		}
+			if (!deletable)
+			{
+				Alert alert = new Alert(ERROR);
+				alert.setTitle("Cannot delete");
+				alert.setHeaderText("Cannot delete the specie '" + specie.getLabel() + "' because it has specimens.");
+				alert.showAndWait();
+			}
+			return deletable;
+		}, runnable -> runLater(runnable));
 	}
 
 	@Override
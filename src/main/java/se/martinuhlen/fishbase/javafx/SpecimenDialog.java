@@ -1,6 +1,5 @@
 package se.martinuhlen.fishbase.javafx;
 
-import static java.util.stream.Collectors.toList;
 import static javafx.application.Platform.runLater;
 import static javafx.collections.FXCollections.observableArrayList;
 import static javafx.geometry.Pos.BASELINE_LEFT;
@@ -30,8 +29,8 @@ import static se.martinuhlen.fishbase.javafx.utils.Styles.RIGHT_ALIGNMENT;
 
 import java.time.LocalTime;
 import java.util.Collection;
-import java.util.SortedSet;
-import java.util.function.Function;
+import java.util.List;
+import java.util.function.BiFunction;
 
 import org.controlsfx.control.textfield.TextFields;
 import org.controlsfx.validation.ValidationSupport;
@@ -66,9 +65,9 @@ class SpecimenDialog extends Dialog<Specimen>
 {
 	private final SpecimenWrapper wrapper;
 	private final ComboBox<Specie> specieCombo;
-    private final Function<AutoCompleteField, SortedSet<String>> autoCompleter;
+    private final BiFunction<AutoCompleteField, String, List<String>> autoCompleter;
 
-	SpecimenDialog(boolean add, Collection<Specie> species, Function<AutoCompleteField, SortedSet<String>> autoCompleter, Specimen specimen)
+	SpecimenDialog(boolean add, Collection<Specie> species, BiFunction<AutoCompleteField, String, List<String>> autoCompleter, Specimen specimen)
 	{
 		this.autoCompleter = autoCompleter;
         this.wrapper = new SpecimenWrapper(specimen, obs -> enableOkButton());
@@ -215,34 +214,7 @@ class SpecimenDialog extends Dialog<Specimen>
     {
 	    TextField field = new TextField();
 	    field.textProperty().bindBidirectional(property);
-	    SortedSet<String> suggestions = autoCompleter.apply(autoCompleteField);
-	    TextFields.bindAutoCompletion(field, request ->
-        {
-            String text = request.getUserText().toLowerCase().trim();
-            if (text.isEmpty())
-            {
-                return suggestions;
-            }
-            else
-            {
-                return suggestions
-                        .stream()
-                        .filter(str -> str.toLowerCase().contains(text))
-                        .sorted((String s1, String s2) ->
-                        {
-                            String str1 = s1.toLowerCase();
-                            String str2 = s2.toLowerCase();
-                            return str1.startsWith(text) && str2.startsWith(text) 
-                                    ? str1.length() - str2.length() 
-                                    : str1.startsWith(text) 
-                                        ? -1 
-                                        : str2.startsWith(text) 
-                                            ? 1 
-                                            : 0;
-                        })
-                        .collect(toList());
-            }
-        });
+	    TextFields.bindAutoCompletion(field, request -> autoCompleter.apply(autoCompleteField, request.getUserText()));
 
 	    return field;
     }
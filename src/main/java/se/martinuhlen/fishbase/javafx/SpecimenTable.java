@@ -21,9 +21,8 @@ import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.SortedSet;
 import java.util.function.Consumer;
-import java.util.function.Function;
+import java.util.function.BiFunction;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
@@ -53,11 +52,11 @@ class SpecimenTable extends TableView<SpecimenWrapper>
 {
     private final ObservableList<SpecimenWrapper> specimens;
 	private final Supplier<Collection<Specie>> specieSupplier;
-	private final Function<AutoCompleteField, SortedSet<String>> autoCompleter;
+	private final BiFunction<AutoCompleteField, String, List<String>> autoCompleter;
     private final Supplier<Trip> tripSupplier;
     private final Consumer<String> tripOpener;
 
-    private SpecimenTable(ObservableList<SpecimenWrapper> sourceSpecimens, ObservableList<SpecimenWrapper> tableSpecimens, Supplier<Collection<Specie>> specieSupplier, Function<AutoCompleteField, SortedSet<String>> autoCompleter, Supplier<Trip> tripSupplier, Consumer<String> tripOpener)
+    private SpecimenTable(ObservableList<SpecimenWrapper> sourceSpecimens, ObservableList<SpecimenWrapper> tableSpecimens, Supplier<Collection<Specie>> specieSupplier, BiFunction<AutoCompleteField, String, List<String>> autoCompleter, Supplier<Trip> tripSupplier, Consumer<String> tripOpener)
     {
         this.specimens = sourceSpecimens;
         this.specieSupplier = specieSupplier;
@@ -70,13 +69,13 @@ class SpecimenTable extends TableView<SpecimenWrapper>
         setEditable(true);
     }
 
-    SpecimenTable(ObservableList<SpecimenWrapper> specimens, Supplier<Collection<Specie>> species, Function<AutoCompleteField, SortedSet<String>> autoCompleter, Supplier<Trip> tripSupplier)
+    SpecimenTable(ObservableList<SpecimenWrapper> specimens, Supplier<Collection<Specie>> species, BiFunction<AutoCompleteField, String, List<String>> autoCompleter, Supplier<Trip> tripSupplier)
     {
         this(specimens, specimens, species, autoCompleter, tripSupplier, null);
     }
 
 	@SuppressWarnings("unchecked")
-    SpecimenTable(FilteredList<SpecimenWrapper> filteredSpecimens, Supplier<Collection<Specie>> species, Function<AutoCompleteField, SortedSet<String>> autoCompleter, Consumer<String> tripOpener)
+    SpecimenTable(FilteredList<SpecimenWrapper> filteredSpecimens, Supplier<Collection<Specie>> species, BiFunction<AutoCompleteField, String, List<String>> autoCompleter, Consumer<String> tripOpener)
 	{
 	    this((ObservableList<SpecimenWrapper>) filteredSpecimens.getSource(), filteredSpecimens, species, autoCompleter, null, tripOpener);
 	}
@@ -2,10 +2,11 @@ package se.martinuhlen.fishbase.javafx;
 
 import static java.util.Collections.emptyList;
 import static java.util.Comparator.comparing;
-import static java.util.stream.Collectors.collectingAndThen;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static java.util.stream.Collectors.groupingBy;
-import static java.util.stream.Collectors.reducing;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static javafx.application.Platform.runLater;
 import static javafx.beans.binding.Bindings.createStringBinding;
 import static javafx.geometry.Pos.BOTTOM_RIGHT;
 import static org.controlsfx.control.textfield.TextFields.createClearableTextField;
@@ -14,8 +15,8 @@ import static se.martinuhlen.fishbase.javafx.utils.ImageSize.SIZE_16;
 import static se.martinuhlen.fishbase.utils.EmptyCursor.emptyCursor;
 
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -29,15 +30,18 @@ import javafx.scene.Node;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.Slider;
+import javafx.scene.control.Spinner;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
 import javafx.scene.control.Tooltip;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
+import se.martinuhlen.fishbase.dao.AsyncFishBaseDao;
+import se.martinuhlen.fishbase.dao.Batch;
 import se.martinuhlen.fishbase.dao.FishBaseDao;
 import se.martinuhlen.fishbase.domain.Photo;
-import se.martinuhlen.fishbase.domain.Specie;
 import se.martinuhlen.fishbase.domain.Specimen;
+import se.martinuhlen.fishbase.filter.RefiningFilter;
 import se.martinuhlen.fishbase.filter.SpecimenTextPredicate;
 import se.martinuhlen.fishbase.google.photos.FishingPhoto;
 import se.martinuhlen.fishbase.google.photos.PhotoService;
@@ -48,6 +52,7 @@ import se.martinuhlen.fishbase.utils.Cursor;
 class SpecimenView extends AbstractTableView<SpecimenWrapper, Specimen>
 {
 	private final FishBaseDao dao;
+	private final AsyncFishBaseDao asyncDao;
 	private final PhotoService photoService;
 	private final SlideshowPane slideshow;
 	private final PhotoLoader photoLoader;
@@ -55,11 +60,15 @@ class SpecimenView extends AbstractTableView<SpecimenWrapper, Specimen>
 	private final TextField filterField;
 	private final Slider ratioSlider;
 	private final CheckBox personalBestCheckBox;
+	private final Spinner<Integer> topSpinner;
+	private int filterUpdates;
+	private volatile Set<String> changedSpecimens = Set.of();
 
-	SpecimenView(FishBaseDao dao, PhotoService photoService, Consumer<String> tripOpener)
+	SpecimenView(FishBaseDao dao, AsyncFishBaseDao asyncDao, PhotoService photoService, Consumer<String> tripOpener)
 	{
-		super("Specimens", dao::getSpecimens, dao::saveSpecimens, dao::deleteSpecimens);
+		super("Specimens", dao::getSpecimens, asyncDao, Batch::saveSpecimens, Batch::deleteSpecimens);
 		this.dao = dao;
+		this.asyncDao = asyncDao;
 		this.photoService = photoService;
 		this.tripOpener = tripOpener;
 		this.slideshow = new SlideshowPane();
@@ -67,10 +76,12 @@ class SpecimenView extends AbstractTableView<SpecimenWrapper, Specimen>
         this.filterField = createClearableTextField();
 		this.ratioSlider = new Slider(0, 1.0, 0.5);
 		this.personalBestCheckBox = new CheckBox("PB");
+		this.topSpinner = new Spinner<>(0, 99, 0);
 		filterField.setPromptText("Filter...");
 		filterField.setTooltip(new Tooltip("Filter specimens by free text"));
 		ratioSlider.setTooltip(new Tooltip("Filter specimens by the ratio of their weight compared to the reg weight of it's specie"));
 		personalBestCheckBox.setTooltip(new Tooltip("Show only personal best of each specie"));
+		topSpinner.setTooltip(new Tooltip("Show only the N heaviest specimens of each specie, 0 for all"));
 	}
 
 	@Override
@@ -91,7 +102,7 @@ class SpecimenView extends AbstractTableView<SpecimenWrapper, Specimen>
 	    Label countLabel = new Label();
 	    countLabel.textProperty().bind(createStringBinding(() -> getTable().getItems().size() + " specimens", getTable().getItems()));
 
-	    HBox box = new HBox(8, filterField, ratioSlider, ratioLabel, personalBestCheckBox, new Label("  "), countLabel);
+	    HBox box = new HBox(8, filterField, ratioSlider, ratioLabel, personalBestCheckBox, new Label("Top"), topSpinner, new Label("  "), countLabel);
 	    box.setAlignment(Pos.CENTER_LEFT);
 	    return box;
 	}
@@ -99,46 +110,103 @@ class SpecimenView extends AbstractTableView<SpecimenWrapper, Specimen>
 	@Override
 	TableView<SpecimenWrapper> createTable()
 	{
-	    FilteredList<SpecimenWrapper> filteredList = list.filtered(createFilterPredicate());
+	    FilteredList<SpecimenWrapper> filteredList = list.filtered(w -> true);
         SpecimenTable specimenTable = new SpecimenTable(filteredList, dao::getSpecies, dao::getAutoCompletions, tripOpener);
         specimenTable.getSelectionModel().selectedItemProperty().addListener(obs -> photoLoader.restart());
-        InvalidationListener listener = obs -> filteredList.setPredicate(createFilterPredicate());
-        filterField.textProperty().addListener(listener);
+        TextFilterService<SpecimenWrapper> textFilter = new TextFilterService<>(filteredList, new RefiningFilter<>(this::createTextPredicate, SpecimenView::createRefinementPredicate), this::captureChangedSpecimens);
+        InvalidationListener listener = obs -> updateFilterPredicate(textFilter);
+        filterField.textProperty().addListener(obs -> textFilter.setText(filterField.getText()));
         ratioSlider.valueProperty().addListener(listener);
         personalBestCheckBox.selectedProperty().addListener(listener);
+        topSpinner.valueProperty().addListener(listener);
+        topSpinner.disableProperty().bind(personalBestCheckBox.selectedProperty());
+        list.addListener(listener);
+        updateFilterPredicate(textFilter);
         specimenTable.addPhotoColumn(this::hasPhotos);
         return specimenTable;
 	}
 
 	private boolean hasPhotos(SpecimenWrapper wrapper)
 	{
-		Specimen specimen = wrapper.getWrapee();
-		return dao.getTrip(specimen.getTripId())
-				.getPhotos()
-				.stream()
-				.anyMatch(photo -> photo.getSpecimens().contains(specimen.getId()));
+		return !dao.getPhotosOfSpecimen(wrapper.getWrapee().getId()).isEmpty();
 	}
 	
-    private Predicate<SpecimenWrapper> createFilterPredicate()
+    /**
+     * Sets the predicate of the criteria other than text, once the heaviest specimens have been queried off the FX thread.
+     * A predicate that's been outdated by a later change of the criteria while it was queried is never set.
+     * <p>
+     * The DAO only knows saved specimens, so while there are unsaved changes the heaviest specimens are found among the rows instead.
+     */
+    private void updateFilterPredicate(TextFilterService<SpecimenWrapper> textFilter)
     {
-        Predicate<Specimen> textPredicate = new SpecimenTextPredicate(filterField.getText());
-        Predicate<Specimen> ratioPredicate = s -> s.getRatio() >= ratioSlider.getValue();
-        Predicate<Specimen> personalBestPredicate = w -> true;
-        if (personalBestCheckBox.isSelected())
+        int update = ++filterUpdates;
+        double ratio = ratioSlider.getValue();
+        int limit = personalBestCheckBox.isSelected() ? 1 : topSpinner.getValue();
+        CompletableFuture<Predicate<Specimen>> heaviestPredicate;
+        if (limit < 1)
         {
-            Map<Specie, Specimen> personalBest = list
-                    .stream()
-                    .map(SpecimenWrapper::getWrapee)
-                    .collect(groupingBy(
-                            Specimen::getSpecie,
-                            collectingAndThen(
-                                    reducing((s1, s2) -> s1.getWeight() >= s2.getWeight() ? s1 : s2),
-                                    Optional::get)));
-
-            personalBestPredicate = s -> s.equals(personalBest.get(s.getSpecie()));
+            heaviestPredicate = completedFuture(s -> true);
         }
-        Predicate<Specimen> predicate = textPredicate.and(ratioPredicate).and(personalBestPredicate);
-        return w -> predicate.test(w.getWrapee());
+        else if (hasChanges())
+        {
+            heaviestPredicate = completedFuture(heaviestPredicate(currentList(), limit));
+        }
+        else
+        {
+            heaviestPredicate = asyncDao.getHeaviestSpecimens(limit).thenApply(specimens -> heaviestPredicate(specimens, limit));
+        }
+
+        heaviestPredicate.thenAcceptAsync(heaviest ->
+        {
+            if (update == filterUpdates)
+            {
+                Predicate<Specimen> predicate = heaviest.and(s -> s.getRatio() >= ratio);
+                textFilter.setPredicate(w -> predicate.test(w.getWrapee()));
+            }
+        }, runnable -> runLater(runnable));
+    }
+
+    /**
+     * Captures the IDs of the specimens with unsaved changes, on the FX thread where they're changed, before they're filtered by text.
+     */
+    private void captureChangedSpecimens()
+    {
+        changedSpecimens = list.stream()
+                .filter(SpecimenWrapper::hasChanges)
+                .map(w -> w.getWrapee().getId())
+                .collect(toSet());
+    }
+
+    /**
+     * Creates a predicate that accepts the heaviest specimens of each specie among given specimens.
+     */
+    private static Predicate<Specimen> heaviestPredicate(List<Specimen> specimens, int limit)
+    {
+        Set<String> heaviest = specimens.stream()
+                .collect(groupingBy(Specimen::getSpecie))
+                .values()
+                .stream()
+                .flatMap(ofSpecie -> ofSpecie.stream()
+                        .sorted(comparing(Specimen::getWeight).reversed().thenComparing(Specimen::getId))
+                        .limit(limit))
+                .map(Specimen::getId)
+                .collect(toSet());
+        return s -> heaviest.contains(s.getId());
+    }
+
+    private Predicate<SpecimenWrapper> createTextPredicate(String text)
+    {
+        // Unsaved changes aren't indexed by the DAO, such specimens are tested directly
+        Set<String> changed = changedSpecimens;
+        Set<String> ids = dao.searchSpecimens(text);
+        Predicate<Specimen> textPredicate = new SpecimenTextPredicate(text);
+        return w -> changed.contains(w.getWrapee().getId()) ? textPredicate.test(w.getWrapee()) : ids.contains(w.getWrapee().getId());
+    }
+
+    private static Predicate<SpecimenWrapper> createRefinementPredicate(String text)
+    {
+        Predicate<Specimen> textPredicate = new SpecimenTextPredicate(text);
+        return w -> textPredicate.test(w.getWrapee());
     }
 
 	@Override
@@ -186,10 +254,8 @@ class SpecimenView extends AbstractTableView<SpecimenWrapper, Specimen>
 					else
 					{
 						Specimen specimen = selectedItem.getWrapee();
-						List<Photo> photos = dao.getTrip(specimen.getTripId())
-								.getPhotos()
+						List<Photo> photos = dao.getPhotosOfSpecimen(specimen.getId())
 								.stream()
-								.filter(p -> p.getSpecimens().contains(specimen.getId()))
 								.sorted(comparing(Photo::isStarred).reversed().thenComparing(Photo::getTime))
 								.collect(toList());
 						return photoService.load(photos);
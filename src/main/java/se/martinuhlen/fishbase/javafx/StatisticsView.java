@@ -0,0 +1,180 @@
+package se.martinuhlen.fishbase.javafx;
+
+import static java.util.Arrays.asList;
+import static org.apache.commons.lang3.StringUtils.capitalize;
+import static se.martinuhlen.fishbase.domain.Specie.EMPTY_SPECIE;
+import static se.martinuhlen.fishbase.javafx.utils.Converters.converter;
+import static se.martinuhlen.fishbase.javafx.utils.Styles.RIGHT_ALIGNMENT;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import se.martinuhlen.fishbase.dao.FishBaseDao;
+import se.martinuhlen.fishbase.domain.Specie;
+import se.martinuhlen.fishbase.domain.Statistics;
+import se.martinuhlen.fishbase.domain.StatisticsField;
+import se.martinuhlen.fishbase.javafx.action.Action;
+import se.martinuhlen.fishbase.javafx.action.RunnableAction;
+
+class StatisticsView implements View
+{
+	private static final String HISTOGRAM_BARS = " ▁▂▃▄▅▆▇█";
+
+	private final ReadOnlyStringProperty titleProperty = new ReadOnlyStringWrapper("Statistics").getReadOnlyProperty();
+	private final RunnableAction refreshAction = new RunnableAction(true, () -> refresh());
+
+	private final FishBaseDao dao;
+	private final ChoiceBox<StatisticsField> fieldChoice;
+	private final ComboBox<Specie> specieChoice;
+	private final TableView<Statistics> table;
+	private final StatisticsLoader loader;
+	private final BorderPane pane;
+
+	StatisticsView(FishBaseDao dao)
+	{
+		this.dao = dao;
+		this.fieldChoice = new ChoiceBox<>();
+		this.specieChoice = new ComboBox<>();
+		this.table = createTable();
+		this.loader = new StatisticsLoader();
+		this.pane = new BorderPane(table, createTopNode(), null, null, null);
+	}
+
+	private Node createTopNode()
+	{
+		fieldChoice.getItems().setAll(StatisticsField.values());
+		fieldChoice.setConverter(converter(field -> capitalize(field.name().toLowerCase())));
+		fieldChoice.setValue(StatisticsField.SPECIE);
+		fieldChoice.setTooltip(new Tooltip("Group specimens by"));
+		fieldChoice.valueProperty().addListener(obs -> loader.restart());
+
+		specieChoice.setConverter(converter(specie -> specie == EMPTY_SPECIE ? "All species" : specie.getName()));
+		specieChoice.setValue(EMPTY_SPECIE);
+		specieChoice.setTooltip(new Tooltip("Include specimens of"));
+		specieChoice.valueProperty().addListener(obs -> loader.restart());
+
+		HBox box = new HBox(8, new Label("Group by"), fieldChoice, specieChoice);
+		box.setAlignment(Pos.CENTER_LEFT);
+		box.setPadding(new Insets(4));
+		return box;
+	}
+
+	private TableView<Statistics> createTable()
+	{
+		TableView<Statistics> table = new TableView<>();
+		table.setPlaceholder(new Label("No specimens"));
+
+		TableColumn<Statistics, String> valueColumn = new TableColumn<>("Value");
+		valueColumn.setCellValueFactory(f -> new ReadOnlyObjectWrapper<>(f.getValue().getValue()));
+		valueColumn.setPrefWidth(200);
+
+		TableColumn<Statistics, String> histogramColumn = new TableColumn<>("Ratio 0-100%+");
+		histogramColumn.setCellValueFactory(f -> new ReadOnlyObjectWrapper<>(histogram(f.getValue().getRatioHistogram())));
+		histogramColumn.setStyle("-fx-font-family: monospace;");
+		histogramColumn.setPrefWidth(120);
+
+		table.getColumns().setAll(asList(
+				valueColumn,
+				numberColumn("Count", Statistics::getCount),
+				numberColumn("Total weight", Statistics::getTotalWeight),
+				numberColumn("Average weight", Statistics::getAverageWeight),
+				numberColumn("Min weight", Statistics::getMinWeight),
+				numberColumn("Max weight", Statistics::getMaxWeight),
+				histogramColumn));
+		return table;
+	}
+
+	private static TableColumn<Statistics, Number> numberColumn(String text, Function<Statistics, Number> getter)
+	{
+		TableColumn<Statistics, Number> column = new TableColumn<>(text);
+		column.setCellValueFactory(f -> new ReadOnlyObjectWrapper<>(getter.apply(f.getValue())));
+		column.setStyle(RIGHT_ALIGNMENT);
+		column.setPrefWidth(100);
+		return column;
+	}
+
+	/**
+	 * Draws a histogram as a bar character per bucket, scaled to the largest bucket.
+	 */
+	static String histogram(int[] buckets)
+	{
+		int max = IntStream.of(buckets).max().orElse(0);
+		StringBuilder sb = new StringBuilder(buckets.length);
+		for (int count : buckets)
+		{
+			int bar = max == 0 ? 0 : (int) Math.ceil((double) count * (HISTOGRAM_BARS.length() - 1) / max);
+			sb.append(HISTOGRAM_BARS.charAt(bar));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public Node getContent()
+	{
+		return pane;
+	}
+
+	@Override
+	public ReadOnlyStringProperty titleProperty()
+	{
+		return titleProperty;
+	}
+
+	@Override
+	public Action refreshAction()
+	{
+		return refreshAction;
+	}
+
+	private void refresh()
+	{
+		Specie selected = specieChoice.getValue();
+		List<Specie> species = new ArrayList<>(dao.getSpecies());
+		species.add(0, EMPTY_SPECIE);
+		specieChoice.getItems().setAll(species);
+		specieChoice.setValue(species.stream().filter(s -> s.equalsId(selected)).findAny().orElse(EMPTY_SPECIE));
+		loader.restart();
+	}
+
+	private class StatisticsLoader extends Service<List<Statistics>>
+	{
+		@Override
+		protected Task<List<Statistics>> createTask()
+		{
+			StatisticsField field = fieldChoice.getValue();
+			Specie specie = specieChoice.getValue();
+			return new Task<>()
+			{
+				@Override
+				protected List<Statistics> call() throws Exception
+				{
+					return dao.getStatistics(field, specie == null || specie == EMPTY_SPECIE ? null : specie.getId());
+				}
+			};
+		}
+
+		@Override
+		protected void succeeded()
+		{
+			table.getItems().setAll(getValue());
+		}
+	}
+}
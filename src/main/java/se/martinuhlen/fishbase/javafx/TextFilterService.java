@@ -0,0 +1,144 @@
+package se.martinuhlen.fishbase.javafx;
+
+import static java.util.Collections.newSetFromMap;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.Observable;
+import javafx.collections.transformation.FilteredList;
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
+import javafx.util.Duration;
+import se.martinuhlen.fishbase.filter.RefiningFilter;
+
+/**
+ * Filters a {@link FilteredList} by text from user input, off the FX thread.
+ * <p>
+ * Filtering starts when the user has stopped typing for a moment and the result is applied to the list in one update.
+ * The text filter is combined with an optional predicate of other criteria, that's applied immediately.
+ * When the source list changes it's filtered right away, so that it's never shown unfiltered.
+ *
+ * @author Martin
+ */
+class TextFilterService<T> extends Service<List<T>>
+{
+	private static final Duration DEBOUNCE = Duration.millis(150);
+
+	private final FilteredList<T> filteredList;
+	private final RefiningFilter<T> filter;
+	private final Runnable capture;
+	private final Timeline debounce;
+
+	private String text = "";
+	private List<T> source;
+	private Set<T> matches;
+	private Predicate<? super T> predicate = t -> true;
+
+	TextFilterService(FilteredList<T> filteredList, RefiningFilter<T> filter)
+	{
+		this(filteredList, filter, () -> {});
+	}
+
+	/**
+	 * Creates a new service.
+	 *
+	 * @param filteredList to filter
+	 * @param filter that filters by text
+	 * @param capture called on the FX thread before each filtering, to capture state that the filter reads off the FX thread
+	 */
+	TextFilterService(FilteredList<T> filteredList, RefiningFilter<T> filter, Runnable capture)
+	{
+		this.filteredList = filteredList;
+		this.filter = filter;
+		this.capture = capture;
+		this.debounce = new Timeline(new KeyFrame(DEBOUNCE, e -> restart()));
+		this.source = List.copyOf(filteredList.getSource());
+		filteredList.getSource().addListener((Observable obs) ->
+		{
+			source = List.copyOf(filteredList.getSource());
+			filterNow();
+		});
+	}
+
+	/**
+	 * Sets the text to filter by, a blank text is applied immediately.
+	 */
+	void setText(String text)
+	{
+		this.text = text;
+		if (isBlank(text))
+		{
+			filterNow();
+		}
+		else
+		{
+			debounce.playFromStart();
+		}
+	}
+
+	/**
+	 * Sets the predicate of other criteria than text.
+	 */
+	void setPredicate(Predicate<? super T> predicate)
+	{
+		this.predicate = predicate;
+		apply();
+	}
+
+	private void filterNow()
+	{
+		debounce.stop();
+		cancel();
+		capture.run();
+		setMatches(filter.filter(text, source));
+	}
+
+	@Override
+	protected Task<List<T>> createTask()
+	{
+		String text = this.text;
+		List<T> source = this.source;
+		capture.run();
+		return new Task<>()
+		{
+			@Override
+			protected List<T> call()
+			{
+				return filter.filter(text, source);
+			}
+		};
+	}
+
+	@Override
+	protected void succeeded()
+	{
+		setMatches(getValue());
+	}
+
+	private void setMatches(List<T> list)
+	{
+		if (list == source)
+		{
+			matches = null;
+		}
+		else
+		{
+			matches = newSetFromMap(new IdentityHashMap<>());
+			matches.addAll(list);
+		}
+		apply();
+	}
+
+	private void apply()
+	{
+		Set<T> matches = this.matches;
+		Predicate<? super T> predicate = this.predicate;
+		filteredList.setPredicate(t -> (matches == null || matches.contains(t)) && predicate.test(t));
+	}
+}
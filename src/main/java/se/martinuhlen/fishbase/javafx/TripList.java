@@ -9,7 +9,10 @@ import static javafx.scene.layout.Priority.ALWAYS;
 import static javafx.scene.text.FontWeight.BOLD;
 
 import java.util.Collection;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.controlsfx.control.textfield.TextFields;
 
@@ -27,6 +30,7 @@ import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 import se.martinuhlen.fishbase.domain.Specimen;
 import se.martinuhlen.fishbase.domain.Trip;
+import se.martinuhlen.fishbase.filter.RefiningFilter;
 import se.martinuhlen.fishbase.filter.TripTextPredicate;
 
 class TripList extends VBox
@@ -34,12 +38,20 @@ class TripList extends VBox
 	private final TextField filter;
 	private final ObservableList<Trip> list;
 	private final ListView<Trip> listView;
+	private final TextFilterService<Trip> textFilter;
+	private final BooleanSupplier specimensReady;
 
-	TripList(Consumer<Trip> selectionHandler)
+	TripList(Consumer<Trip> selectionHandler, Function<String, Set<String>> search, BooleanSupplier specimensReady)
 	{
+		this.specimensReady = specimensReady;
 		list = FXCollections.observableArrayList();
 		FilteredList<Trip> filteredList = list.filtered(t -> true);
-		filter = createFilter(filteredList);
+		textFilter = new TextFilterService<>(filteredList, new RefiningFilter<>(text ->
+		{
+			Set<String> ids = search.apply(text);
+			return t -> ids.contains(t.getId());
+		}, TripTextPredicate::new));
+		filter = createFilter();
 		listView = createListView(selectionHandler, filteredList);
 
 		Label label = new Label();
@@ -49,11 +61,11 @@ class TripList extends VBox
 		getChildren().setAll(filter, listView, label);
 	}
 
-	private TextField createFilter(FilteredList<Trip> filteredList)
+	private TextField createFilter()
 	{
 		TextField filter = TextFields.createClearableTextField();
 		filter.setPromptText("Filter...");
-		filter.textProperty().addListener(obs -> filteredList.setPredicate(new TripTextPredicate(filter.getText())));
+		filter.textProperty().addListener(obs -> textFilter.setText(filter.getText()));
 		filter.onKeyPressedProperty().set(e ->
 		{
 			if (e.getCode() == ESCAPE)
@@ -93,7 +105,7 @@ class TripList extends VBox
 		return listView;
 	}
 
-	private static class TripCell extends ListCell<Trip>
+	private class TripCell extends ListCell<Trip>
 	{
 		private static final Font BOLD_FONT = Font.font(Font.getDefault().getFamily(), BOLD, Font.getDefault().getSize() - 2);
 
@@ -105,7 +117,8 @@ class TripList extends VBox
 			if (!empty)
 			{
 				VBox box = new VBox(new Text(trip.getStartDate() + "\n" + trip.getDescription()));
-				if (!trip.getSpecimens().isEmpty())
+				// Specimens are shown once loaded, so that trips can be listed before that without waiting for them
+				if (specimensReady.getAsBoolean() && !trip.getSpecimens().isEmpty())
 				{
 					Text specimens = new Text(trip.getSpecimens()
 							.stream()
@@ -125,6 +138,14 @@ class TripList extends VBox
 		list.setAll(trips);
 	}
 
+	/**
+	 * Renders the trips again, such as when their specimens have been loaded.
+	 */
+	void refresh()
+	{
+		listView.refresh();
+	}
+
 	void selectTrip(String tripId)
 	{
 		listView.getSelectionModel().clearSelection();
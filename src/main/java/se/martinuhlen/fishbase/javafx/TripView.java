@@ -19,6 +19,8 @@ import static se.martinuhlen.fishbase.domain.Trip.TEXT_IS_MANDATORY;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.prefs.Preferences;
@@ -46,8 +48,10 @@ import javafx.scene.control.TextField;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
+import se.martinuhlen.fishbase.dao.AsyncFishBaseDao;
 import se.martinuhlen.fishbase.dao.FishBaseDao;
 import se.martinuhlen.fishbase.domain.Photo;
+import se.martinuhlen.fishbase.domain.Specimen;
 import se.martinuhlen.fishbase.domain.Trip;
 import se.martinuhlen.fishbase.google.photos.FishingPhoto;
 import se.martinuhlen.fishbase.google.photos.PhotoService;
@@ -65,6 +69,7 @@ class TripView implements View
 	private final RunnableAction deleteAction = new RunnableAction(false, () -> delete());
 
 	private final FishBaseDao dao;
+	private final AsyncFishBaseDao asyncDao;
 	private final PhotoService photoService;
 	private final TripWrapper wrapper;
 	private final ReadOnlyStringProperty titleProperty;
@@ -73,14 +78,17 @@ class TripView implements View
 	private final Node tripPane;
 	private final TextField descriptionField;
 	private final ObservableList<FishingPhoto> photos = observableArrayList();
+	private int tripSelections;
 
-	TripView(FishBaseDao dao, PhotoService photoService)
+	TripView(FishBaseDao dao, AsyncFishBaseDao asyncDao, PhotoService photoService)
 	{
 		this.dao = dao;
+		this.asyncDao = asyncDao;
 		this.photoService = photoService;
 		this.wrapper = new TripWrapper();
 		this.titleProperty = createTitleProperty();
-		this.list = new TripList(trip -> selectTrip(trip));
+		this.list = new TripList(trip -> selectTrip(trip), dao::searchTrips, () -> dao.isReady(Specimen.class));
+		dao.onReady(Specimen.class, () -> runLater(list::refresh));
 		this.descriptionField = new TextField("");
 		this.tripPane = createTripPane();
 		this.splitPane = createSplitPane();
@@ -179,7 +187,22 @@ class TripView implements View
 		{
 			if (discardChanges())
 			{
-				setTrip(trip.isNew() ? trip : dao.getTrip(trip.getId()));
+				int selection = ++tripSelections;
+				if (trip.isNew())
+				{
+					setTrip(trip);
+				}
+				else
+				{
+					// The trip is loaded off the FX thread, unless another trip has been selected meanwhile
+					asyncDao.getTrip(trip.getId()).thenAcceptAsync(loaded ->
+					{
+						if (selection == tripSelections)
+						{
+							setTrip(loaded);
+						}
+					}, runnable -> runLater(runnable));
+				}
 			}
 			else
 			{
@@ -323,6 +346,7 @@ class TripView implements View
 
 	private void refresh()
 	{
+		tripSelections++;
 		Trip trip = wrapper.getWrapee();
 		List<Trip> trips = dao.getTrips();
 		list.setTrips(trips);
@@ -359,11 +383,32 @@ class TripView implements View
 		}
 		else
 		{
-			dao.saveTrip(trip);
-			refresh();
+			whenSaved(asyncDao.saveTrip(trip));
 		}
 	}
 
+	/**
+	 * Disables the view while a save is in progress off the FX thread and refreshes it when done.
+	 */
+	private void whenSaved(CompletableFuture<Void> saved)
+	{
+		splitPane.setDisable(true);
+		saved.whenCompleteAsync((v, e) ->
+		{
+			splitPane.setDisable(false);
+			if (e != null)
+			{
+				Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+				Alert alert = new Alert(ERROR);
+				alert.setTitle("Can not save");
+				alert.setHeaderText("Failed to save '" + titleProperty.get() + "'.");
+				alert.setContentText(cause.getMessage());
+				alert.showAndWait();
+			}
+			refresh();
+		}, runnable -> runLater(runnable));
+	}
+
 	@Override
 	public Action deleteAction()
 	{
@@ -384,8 +429,8 @@ class TripView implements View
 
 	private void deleteImpl()
 	{
-		dao.deleteTrip(wrapper.getWrapee());
+		Trip trip = wrapper.getWrapee();
 		wrapper.setWrapee(EMPTY_TRIP);
-		refresh();
+		whenSaved(asyncDao.deleteTrip(trip));
 	}
 }
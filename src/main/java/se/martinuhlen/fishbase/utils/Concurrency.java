@@ -1,8 +1,16 @@
 package se.martinuhlen.fishbase.utils;
 
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class Concurrency
@@ -32,4 +40,53 @@ public class Concurrency
 			}
 		});
 	}
+
+	/**
+	 * Waits for a future to complete and gets its result.
+	 *
+	 * @param future to wait for
+	 * @return result of the future
+	 * @throws RuntimeException the failure of the future, unwrapped if it's a runtime exception
+	 */
+	public static <T> T join(CompletableFuture<T> future)
+	{
+		try
+		{
+			return future.join();
+		}
+		catch (CompletionException e)
+		{
+			throw e.getCause() instanceof RuntimeException cause ? cause : e;
+		}
+	}
+
+	/**
+	 * Waits at most given time for a future to complete.
+	 *
+	 * @param future to wait for
+	 * @param timeout max time to wait
+	 * @return {@code true} if completed, {@code false} if timed out or interrupted
+	 * @throws RuntimeException the failure of the future, unwrapped if it's a runtime exception
+	 */
+	public static boolean await(Future<?> future, Duration timeout)
+	{
+		try
+		{
+			future.get(timeout.toNanos(), NANOSECONDS);
+			return true;
+		}
+		catch (TimeoutException e)
+		{
+			return false;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		catch (ExecutionException e)
+		{
+			throw e.getCause() instanceof RuntimeException cause ? cause : new RuntimeException(e.getCause());
+		}
+	}
 }
@@ -2,6 +2,7 @@ package se.martinuhlen.fishbase.utils;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -18,6 +19,8 @@ public final class Constants
 
 	public static final String APPLICATION_NAME = "FishBase";
 
+	public static final File LOCAL_FOLDER = new File(System.getProperty("user.home"), "." + APPLICATION_NAME.toLowerCase());
+
 	public static final DateTimeFormatter DATE_FORMAT =  DateTimeFormatter.ISO_LOCAL_DATE;
 
 	public static final DateTimeFormatter TIME_FORMAT = new DateTimeFormatterBuilder()
@@ -0,0 +1,43 @@
+package se.martinuhlen.fishbase.utils;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Supplier;
+
+import com.google.common.base.Suppliers;
+
+/**
+ * Unmodifiable list whose elements are computed when it's first accessed.
+ * <p>
+ * The elements are computed once, by the first thread that accesses the list, and other threads wait for them.
+ * If the computation fails, the failure is thrown to the accessing thread and the elements are computed again on the next access.
+ *
+ * @author Martin
+ */
+public final class LazyList<E> extends AbstractList<E> implements RandomAccess
+{
+	private final Supplier<List<E>> elements;
+
+	/**
+	 * Creates a new list.
+	 *
+	 * @param elements computes the elements of the list
+	 */
+	public LazyList(Supplier<? extends List<E>> elements)
+	{
+		this.elements = Suppliers.memoize(elements::get);
+	}
+
+	@Override
+	public E get(int index)
+	{
+		return elements.get().get(index);
+	}
+
+	@Override
+	public int size()
+	{
+		return elements.get().size();
+	}
+}
@@ -0,0 +1,146 @@
+package se.martinuhlen.fishbase.utils;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.function.UnaryOperator;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Immutable map of comparable keys, backed by a {@link SortedTree} of its entries.
+ * <p>
+ * Putting or removing a key returns a new map in O(log n), sharing all untouched entries with this map,
+ * so that each map is a snapshot that can be read by any thread without copying or locking.
+ *
+ * @author Martin
+ */
+public final class PersistentMap<K extends Comparable<? super K>, V>
+{
+	private final SortedTree<Entry<K, V>> entries;
+
+	private PersistentMap(SortedTree<Entry<K, V>> entries)
+	{
+		this.entries = entries;
+	}
+
+	/**
+	 * Creates an empty map.
+	 *
+	 * @return empty map
+	 */
+	public static <K extends Comparable<? super K>, V> PersistentMap<K, V> empty()
+	{
+		return new PersistentMap<>(SortedTree.empty(Entry.<K, V>comparingByKey()));
+	}
+
+	/**
+	 * Gets the value of given key.
+	 *
+	 * @param key to get value of
+	 * @return value, or {@code null} if there's none
+	 */
+	public V get(K key)
+	{
+		Entry<K, V> entry = entries.find(probe(key));
+		return entry == null ? null : entry.getValue();
+	}
+
+	/**
+	 * Gets the value of given key, or given default value if there's none.
+	 */
+	public V getOrDefault(K key, V defaultValue)
+	{
+		V value = get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	public boolean containsKey(K key)
+	{
+		return entries.contains(probe(key));
+	}
+
+	/**
+	 * Gets a map with given value of given key, replacing any previous value.
+	 *
+	 * @param key to put
+	 * @param value of the key
+	 * @return new map
+	 */
+	public PersistentMap<K, V> put(K key, V value)
+	{
+		return new PersistentMap<>(entries.add(new SimpleImmutableEntry<>(requireNonNull(key, "key can't be null"), requireNonNull(value, "value can't be null"))));
+	}
+
+	/**
+	 * Gets a map without given key.
+	 *
+	 * @param key to remove
+	 * @return new map, or this map if it didn't contain the key
+	 */
+	public PersistentMap<K, V> remove(K key)
+	{
+		SortedTree<Entry<K, V>> remaining = entries.remove(probe(key));
+		return remaining == entries ? this : new PersistentMap<>(remaining);
+	}
+
+	/**
+	 * Gets a map with the value of given key replaced by what given function makes of it.
+	 *
+	 * @param key to update
+	 * @param update gets the current value, or {@code null} if there's none, and returns the new value, or {@code null} to remove the key
+	 * @return new map
+	 */
+	public PersistentMap<K, V> update(K key, UnaryOperator<V> update)
+	{
+		V value = update.apply(get(key));
+		return value == null ? remove(key) : put(key, value);
+	}
+
+	public int size()
+	{
+		return entries.size();
+	}
+
+	public boolean isEmpty()
+	{
+		return entries.isEmpty();
+	}
+
+	/**
+	 * Gets an unmodifiable list view of the values of this map, in key order.
+	 *
+	 * @return values
+	 */
+	public List<V> values()
+	{
+		return Lists.transform(entries.asList(), Entry::getValue);
+	}
+
+	/**
+	 * Gets an unmodifiable list view of the values of the keys in given range, in key order.
+	 *
+	 * @param from first key, inclusive
+	 * @param to last key, inclusive
+	 * @return values of the keys in range, empty if {@code from} is after {@code to}
+	 */
+	public List<V> valuesBetween(K from, K to)
+	{
+		int start = entries.rank(probe(from));
+		int end = entries.rank(probe(to)) + (containsKey(to) ? 1 : 0);
+		return values().subList(start, Math.max(start, end));
+	}
+
+	@Override
+	public String toString()
+	{
+		return entries.toString();
+	}
+
+	private Entry<K, V> probe(K key)
+	{
+		return new SimpleImmutableEntry<>(key, null);
+	}
+}
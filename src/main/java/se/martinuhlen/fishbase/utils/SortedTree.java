@@ -0,0 +1,358 @@
+package se.martinuhlen.fishbase.utils;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * Immutable sorted set of elements, backed by a persistent balanced (AVL) tree.
+ * <p>
+ * Adding or removing an element returns a new tree in O(log n), sharing all untouched nodes with this tree.
+ * Each tree is therefore a cheap snapshot that can be handed out and iterated without copying or locking.
+ * Elements are positioned by the comparator only, which must be consistent with equals.
+ *
+ * @author Martin
+ */
+public final class SortedTree<E> implements Iterable<E>
+{
+	private final Comparator<? super E> comparator;
+	private final Node<E> root;
+
+	private SortedTree(Comparator<? super E> comparator, Node<E> root)
+	{
+		this.comparator = comparator;
+		this.root = root;
+	}
+
+	/**
+	 * Creates an empty tree.
+	 *
+	 * @param comparator that defines the order of the elements
+	 * @return empty tree
+	 */
+	public static <E> SortedTree<E> empty(Comparator<? super E> comparator)
+	{
+		return new SortedTree<>(requireNonNull(comparator, "comparator can't be null"), null);
+	}
+
+	/**
+	 * Gets a tree with given element added, replacing any element that compares equal to it.
+	 *
+	 * @param element to add
+	 * @return new tree
+	 */
+	public SortedTree<E> add(E element)
+	{
+		return new SortedTree<>(comparator, insert(root, requireNonNull(element, "element can't be null")));
+	}
+
+	/**
+	 * Gets a tree without given element.
+	 *
+	 * @param element to remove
+	 * @return new tree, or this tree if it didn't contain the element
+	 */
+	public SortedTree<E> remove(E element)
+	{
+		return contains(element)
+				? new SortedTree<>(comparator, delete(root, element))
+				: this;
+	}
+
+	/**
+	 * Gets whether this tree contains an element that compares equal to given element.
+	 *
+	 * @param element to look for
+	 * @return {@code true} if contained
+	 */
+	public boolean contains(E element)
+	{
+		return find(element) != null;
+	}
+
+	/**
+	 * Gets the element of this tree that compares equal to given element, in O(log n).
+	 *
+	 * @param element to look for
+	 * @return contained element, or {@code null} if there's none
+	 */
+	public E find(E element)
+	{
+		Node<E> node = root;
+		while (node != null)
+		{
+			int c = comparator.compare(element, node.value);
+			if (c == 0)
+			{
+				return node.value;
+			}
+			node = c < 0 ? node.left : node.right;
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the number of elements that are less than given element, in O(log n).
+	 *
+	 * @param element to get the rank of, need not be contained
+	 * @return index of the element if contained, otherwise the index it would be added at
+	 */
+	public int rank(E element)
+	{
+		int rank = 0;
+		Node<E> node = root;
+		while (node != null)
+		{
+			int c = comparator.compare(element, node.value);
+			if (c <= 0)
+			{
+				if (c == 0)
+				{
+					return rank + size(node.left);
+				}
+				node = node.left;
+			}
+			else
+			{
+				rank += size(node.left) + 1;
+				node = node.right;
+			}
+		}
+		return rank;
+	}
+
+	public int size()
+	{
+		return size(root);
+	}
+
+	public boolean isEmpty()
+	{
+		return root == null;
+	}
+
+	/**
+	 * Gets the element at given position, in O(log n).
+	 *
+	 * @param index of the element
+	 * @return element at given index
+	 */
+	public E get(int index)
+	{
+		if (index < 0 || index >= size())
+		{
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size());
+		}
+		Node<E> node = root;
+		while (true)
+		{
+			int leftSize = size(node.left);
+			if (index < leftSize)
+			{
+				node = node.left;
+			}
+			else if (index == leftSize)
+			{
+				return node.value;
+			}
+			else
+			{
+				index -= leftSize + 1;
+				node = node.right;
+			}
+		}
+	}
+
+	/**
+	 * Gets an unmodifiable list view of this tree, in sorted order.
+	 *
+	 * @return list that's backed by this (immutable) tree
+	 */
+	public List<E> asList()
+	{
+		return new ListView();
+	}
+
+	@Override
+	public Iterator<E> iterator()
+	{
+		return new Iterator<E>()
+		{
+			private final Deque<Node<E>> path = new ArrayDeque<>();
+			{
+				pushLeft(root);
+			}
+
+			private void pushLeft(Node<E> node)
+			{
+				for (Node<E> n = node; n != null; n = n.left)
+				{
+					path.push(n);
+				}
+			}
+
+			@Override
+			public boolean hasNext()
+			{
+				return !path.isEmpty();
+			}
+
+			@Override
+			public E next()
+			{
+				if (path.isEmpty())
+				{
+					throw new NoSuchElementException();
+				}
+				Node<E> node = path.pop();
+				pushLeft(node.right);
+				return node.value;
+			}
+		};
+	}
+
+	@Override
+	public String toString()
+	{
+		return asList().toString();
+	}
+
+	private Node<E> insert(Node<E> node, E element)
+	{
+		if (node == null)
+		{
+			return new Node<>(element, null, null);
+		}
+		int c = comparator.compare(element, node.value);
+		if (c < 0)
+		{
+			return balance(node.value, insert(node.left, element), node.right);
+		}
+		else if (c > 0)
+		{
+			return balance(node.value, node.left, insert(node.right, element));
+		}
+		else
+		{
+			return new Node<>(element, node.left, node.right);
+		}
+	}
+
+	private Node<E> delete(Node<E> node, E element)
+	{
+		int c = comparator.compare(element, node.value);
+		if (c < 0)
+		{
+			return balance(node.value, delete(node.left, element), node.right);
+		}
+		else if (c > 0)
+		{
+			return balance(node.value, node.left, delete(node.right, element));
+		}
+		else if (node.left == null)
+		{
+			return node.right;
+		}
+		else if (node.right == null)
+		{
+			return node.left;
+		}
+		else
+		{
+			Node<E> min = node.right;
+			while (min.left != null)
+			{
+				min = min.left;
+			}
+			return balance(min.value, node.left, deleteMin(node.right));
+		}
+	}
+
+	private static <E> Node<E> deleteMin(Node<E> node)
+	{
+		return node.left == null
+				? node.right
+				: balance(node.value, deleteMin(node.left), node.right);
+	}
+
+	private static <E> Node<E> balance(E value, Node<E> left, Node<E> right)
+	{
+		if (height(left) > height(right) + 1)
+		{
+			if (height(left.left) >= height(left.right))
+			{
+				return new Node<>(left.value, left.left, new Node<>(value, left.right, right));
+			}
+			return new Node<>(left.right.value,
+					new Node<>(left.value, left.left, left.right.left),
+					new Node<>(value, left.right.right, right));
+		}
+		else if (height(right) > height(left) + 1)
+		{
+			if (height(right.right) >= height(right.left))
+			{
+				return new Node<>(right.value, new Node<>(value, left, right.left), right.right);
+			}
+			return new Node<>(right.left.value,
+					new Node<>(value, left, right.left.left),
+					new Node<>(right.value, right.left.right, right.right));
+		}
+		return new Node<>(value, left, right);
+	}
+
+	private static int height(Node<?> node)
+	{
+		return node == null ? 0 : node.height;
+	}
+
+	private static int size(Node<?> node)
+	{
+		return node == null ? 0 : node.size;
+	}
+
+	private static final class Node<E>
+	{
+		private final E value;
+		private final Node<E> left;
+		private final Node<E> right;
+		private final int height;
+		private final int size;
+
+		Node(E value, Node<E> left, Node<E> right)
+		{
+			this.value = value;
+			this.left = left;
+			this.right = right;
+			this.height = Math.max(height(left), height(right)) + 1;
+			this.size = size(left) + size(right) + 1;
+		}
+	}
+
+	private class ListView extends AbstractList<E> implements RandomAccess
+	{
+		@Override
+		public E get(int index)
+		{
+			return SortedTree.this.get(index);
+		}
+
+		@Override
+		public int size()
+		{
+			return SortedTree.this.size();
+		}
+
+		@Override
+		public Iterator<E> iterator()
+		{
+			return SortedTree.this.iterator();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package se.martinuhlen.fishbase.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static se.martinuhlen.fishbase.domain.TestData.bream;
+import static se.martinuhlen.fishbase.domain.TestData.perch;
+import static se.martinuhlen.fishbase.domain.TestData.tench;
+import static se.martinuhlen.fishbase.domain.TestData.trip1;
+import static se.martinuhlen.fishbase.domain.TestData.trip2;
+import static se.martinuhlen.fishbase.domain.TestData.trip3;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import se.martinuhlen.fishbase.domain.Trip;
+
+/**
+ * Unit tests of {@link AsyncFishBaseDao}.
+ */
+public class AsyncFishBaseDaoTest
+{
+	private File dataDir;
+	private FishBaseDao dao;
+	private AsyncFishBaseDao asyncDao;
+
+	@BeforeEach
+	public void setUp() throws Exception
+	{
+		dataDir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+		dao = new JsonDao(new LocalFilePersistence(dataDir), Set.of(bream(), tench(), perch()), Set.of(trip1(), trip2(), trip3()));
+		asyncDao = new AsyncFishBaseDao(dao);
+	}
+
+	@Test
+	public void operationsAreExecutedInSubmissionOrder()
+	{
+		Trip first = trip1().withDescription("First");
+		Trip second = trip1().withDescription("Second");
+
+		CompletableFuture<Void> firstSaved = asyncDao.saveTrip(first);
+		CompletableFuture<Void> secondSaved = asyncDao.saveTrip(second);
+		CompletableFuture<List<Trip>> trips = asyncDao.getTrips();
+
+		assertEquals(second, trips.join().stream().filter(t -> t.equalsId(second)).findAny().get());
+		assertTrue(firstSaved.isDone() && secondSaved.isDone());
+		assertEquals(second, dao.getTrip(second.getId()));
+		assertEquals(0, asyncDao.getPendingOperations());
+	}
+
+	@Test
+	public void failureCompletesFutureExceptionallyAndLaterOperationsAreExecuted()
+	{
+		CompletableFuture<Void> deleted = asyncDao.deleteSpecies(Set.of(bream()));
+		CompletableFuture<Void> saved = asyncDao.saveTrip(trip2().withDescription("Saved"));
+
+		CompletionException e = assertThrows(CompletionException.class, deleted::join);
+		assertInstanceOf(IllegalArgumentException.class, e.getCause());
+		saved.join();
+		assertEquals("Saved", dao.getTrip(trip2().getId()).getDescription());
+	}
+
+	@Test
+	public void queriesSeeOperationsSubmittedBeforeThem()
+	{
+		Trip saved = trip2().withDescription("Saved");
+		asyncDao.saveTrip(saved);
+		CompletableFuture<Trip> trip = asyncDao.getTrip(saved.getId());
+		asyncDao.deleteTrip(saved);
+		CompletableFuture<Set<String>> found = asyncDao.searchTrips("Saved");
+
+		assertEquals("Saved", trip.join().getDescription());
+		assertEquals(Set.of(), found.join());
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception
+	{
+		asyncDao.flush().join();
+		FileUtils.deleteDirectory(dataDir);
+	}
+}
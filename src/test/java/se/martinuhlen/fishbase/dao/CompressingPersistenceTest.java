@@ -0,0 +1,109 @@
+package se.martinuhlen.fishbase.dao;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.zip.Deflater;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests of {@link CompressingPersistence}.
+ */
+public class CompressingPersistenceTest
+{
+	private static final String DATA = StringUtils.repeat("{\"location\":\"Lake\",\"bait\":\"Worm\"},", 1000);
+
+	private File dir;
+	private LocalFilePersistence local;
+
+	@BeforeEach
+	public void setUp() throws Exception
+	{
+		dir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+		local = new LocalFilePersistence(dir);
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception
+	{
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Test
+	public void dataIsCompressedUnderNameWithSuffix() throws Exception
+	{
+		for (Codec codec : Codec.values())
+		{
+			Persistence persistence = new CompressingPersistence(local, codec, Deflater.BEST_COMPRESSION);
+			write(persistence, "A.json", DATA);
+
+			File file = new File(dir, codec.storedName("A.json"));
+			assertTrue(file.exists(), codec.name());
+			assertEquals(DATA, read(persistence, "A.json"), codec.name());
+			if (codec != Codec.NONE)
+			{
+				assertTrue(file.length() < DATA.length() / 10, codec.name());
+			}
+		}
+	}
+
+	@Test
+	public void uncompressedDataIsReadTransparently() throws Exception
+	{
+		write(local, "A.json", DATA);
+
+		Persistence persistence = new CompressingPersistence(local, Codec.GZIP);
+		assertEquals(DATA, read(persistence, "A.json"));
+		assertTrue(persistence.lastModified("A.json").isPresent());
+	}
+
+	@Test
+	public void mostRecentlyWrittenDataIsRead() throws Exception
+	{
+		write(new CompressingPersistence(local, Codec.GZIP), "A.json", "gzip");
+		File gzip = new File(dir, "A.json.gz");
+		gzip.setLastModified(gzip.lastModified() - 10_000);
+		write(local, "A.json", "plain");
+
+		assertEquals("plain", read(new CompressingPersistence(local, Codec.GZIP), "A.json"));
+	}
+
+	@Test
+	public void missingDataIsEmpty() throws Exception
+	{
+		Persistence persistence = new CompressingPersistence(local, Codec.DEFLATE);
+		assertEquals("", read(persistence, "Missing.json"));
+		assertTrue(persistence.lastModified("Missing.json").isEmpty());
+	}
+
+	@Test
+	public void invalidLevelIsRejected()
+	{
+		assertThrows(IllegalArgumentException.class, () -> new CompressingPersistence(local, Codec.GZIP, 10));
+	}
+
+	private static void write(Persistence persistence, String name, String data) throws IOException
+	{
+		try (OutputStream output = persistence.output(name))
+		{
+			output.write(data.getBytes(UTF_8));
+		}
+		persistence.commit();
+	}
+
+	private static String read(Persistence persistence, String name) throws IOException
+	{
+		return new String(persistence.input(name).readAllBytes(), UTF_8);
+	}
+}
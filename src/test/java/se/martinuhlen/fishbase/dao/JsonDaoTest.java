@@ -1,14 +1,23 @@
 package se.martinuhlen.fishbase.dao;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.Duration.ofSeconds;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptySet;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
@@ -39,12 +48,16 @@ import static se.martinuhlen.fishbase.domain.TestData.trip3;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -54,6 +67,8 @@ import se.martinuhlen.fishbase.domain.Photo;
 import se.martinuhlen.fishbase.domain.Specie;
 import se.martinuhlen.fishbase.domain.Specimen;
 import se.martinuhlen.fishbase.domain.Trip;
+import se.martinuhlen.fishbase.filter.SpecimenTextPredicate;
+import se.martinuhlen.fishbase.filter.TripTextPredicate;
 
 /**
  * Unit tests of {@link JsonDao}.
@@ -73,6 +88,10 @@ public class JsonDaoTest
 
 	private void createDao()
 	{
+		if (dao != null)
+		{
+		    dao.flush();
+		}
 		persistence = Mockito.spy(new LocalFilePersistence(dataDir));
 		if (dao == null)
 		{
@@ -157,8 +176,9 @@ public class JsonDaoTest
 		List<Specie> species = asList(bream, tench);
 
 		dao.saveSpecies(species);
+		dao.flush();
 
-		verify(persistence, never()).output("Specimen.json");
+		verify(persistence, never()).write(eq("Specimen.journal.json"), any());
 		species.forEach(s -> assertSpecieEquals(s));
 		assertEquals(bream, getSpecimen(bream5120().getId()).getSpecie());
 		assertEquals(tench, getSpecimen(tench3540().getId()).getSpecie());
@@ -181,8 +201,9 @@ public class JsonDaoTest
 		List<Specimen> specimens = asList(perch, tench);
 
 		dao.saveSpecimens(specimens);
+		dao.flush();
 
-		verify(persistence, never()).output("Trip.json");
+		verify(persistence, never()).write(eq("Trip.journal.json"), any());
 		specimens.forEach(s -> assertSpecimenEquals(s));
 		assertTripEquals(trip2().withSpecimens(asList(perch, tench)));
 	}
@@ -217,6 +238,73 @@ public class JsonDaoTest
     	assertThrows(IllegalArgumentException.class, () -> dao.saveSpecimens(asList(newSpecimen("UnknownTrip"))));
     }
 
+	@Test
+	public void getSpecimensOfSpecie()
+	{
+		assertEquals(List.of(bream5120()), dao.getSpecimensOfSpecie(bream().getId()));
+		assertEquals(emptyList(), dao.getSpecimensOfSpecie(newSpecie().getId()));
+
+		Specimen specimen = tench3540().withSpecie(perch());
+		dao.saveSpecimens(asList(specimen));
+
+		assertEquals(emptyList(), dao.getSpecimensOfSpecie(tench().getId()));
+		assertEquals(List.of(specimen, perch1000()), dao.getSpecimensOfSpecie(perch().getId()));
+		assertFalse(dao.isSpecieDeletable(perch()));
+		assertTrue(dao.isSpecieDeletable(tench()));
+	}
+
+	@Test
+	public void getHeaviestSpecimens()
+	{
+		assertEquals(List.of(bream5120(), perch1000(), tench3540()), dao.getHeaviestSpecimens(1));
+
+		Specimen heavierPerch = tench3540().withSpecie(perch());
+		dao.saveSpecimens(asList(heavierPerch));
+		assertEquals(List.of(bream5120(), heavierPerch), dao.getHeaviestSpecimens(1));
+		assertEquals(List.of(bream5120(), heavierPerch, perch1000()), dao.getHeaviestSpecimens(3));
+
+		dao.deleteSpecimens(asList(heavierPerch));
+		assertEquals(List.of(bream5120(), perch1000()), dao.getHeaviestSpecimens(2));
+		assertThrows(IllegalArgumentException.class, () -> dao.getHeaviestSpecimens(0));
+	}
+
+	@Test
+	public void getSpecimensOfTrip()
+	{
+		assertEquals(Set.of(perch1000(), tench3540()), Set.copyOf(dao.getSpecimensOfTrip(trip2().getId())));
+
+		dao.deleteSpecimens(asList(perch1000()));
+
+		assertEquals(List.of(tench3540()), dao.getSpecimensOfTrip(trip2().getId()));
+		dao.deleteTrip(dao.getTrip(trip2().getId()));
+		assertEquals(emptyList(), dao.getSpecimensOfTrip(trip2().getId()));
+	}
+
+	@Test
+	public void getPhotosOfSpecimen()
+	{
+		assertEquals(List.of(photo1InTrip2()), dao.getPhotosOfSpecimen(tench3540().getId()));
+		assertEquals(emptyList(), dao.getPhotosOfSpecimen(perch1000().getId()));
+
+		Trip trip = trip2().withPhotos(emptyList());
+		dao.saveTrip(trip);
+
+		assertEquals(emptyList(), dao.getPhotosOfSpecimen(tench3540().getId()));
+	}
+
+	@Test
+	public void getTripsBetweenDates()
+	{
+		assertEquals(List.of(trip3(), trip2()), dao.getTrips(trip2().getStartDate(), trip3().getStartDate()));
+		assertEquals(List.of(trip1()), dao.getTrips(trip1().getStartDate(), trip1().getStartDate()));
+
+		Trip trip = trip1().withStartDate(trip3().getStartDate().plusDays(1));
+		dao.saveTrip(trip);
+
+		assertEquals(emptyList(), dao.getTrips(trip1().getStartDate(), trip1().getStartDate()));
+		assertEquals(List.of(trip, trip3()), dao.getTrips(trip3().getStartDate(), trip.getStartDate()));
+	}
+
 	@Test
 	public void isSpecieDeletable()
 	{
@@ -233,6 +321,8 @@ public class JsonDaoTest
 		dao.deleteSpecies(asList(specie));
 
 		assertFalse(dao.getSpecies().contains(specie));
+		createDao();
+		assertFalse(dao.getSpecies().contains(specie));
 	}
 
 	@Test
@@ -352,8 +442,10 @@ public class JsonDaoTest
         reset(persistence);
 
         dao.saveTrip(newTrip());
+        dao.flush();
 
-        verify(persistence, times(1)).output("Trip.json");
+        verify(persistence, times(1)).write(eq("Trip.journal.json"), any());
+        verify(persistence, times(1)).commit();
         verifyNoMoreInteractions(persistence);
     }
 
@@ -466,7 +558,9 @@ public class JsonDaoTest
     {
         reset(persistence);
         dao.deleteTrip(trip3());
-        verify(persistence, times(1)).output("Trip.json");
+        dao.flush();
+        verify(persistence, times(1)).write(eq("Trip.journal.json"), any());
+        verify(persistence, times(1)).commit();
         verifyNoMoreInteractions(persistence);
         assertTripsEquals(asList(trip2(), trip1()));
     }
@@ -504,6 +598,284 @@ public class JsonDaoTest
 		asserter.run();
 	}
 
+	@Test
+	public void compactJsonIsReadBack() throws Exception
+	{
+		Trip trip = trip1().withDescription("Written compact");
+
+		JsonDao compactDao = new JsonDao(persistence, JsonFormat.COMPACT);
+		compactDao.saveTrip(trip);
+		compactDao.flush();
+
+		assertFalse(FileUtils.readFileToString(new File(dataDir, "Trip.journal.json"), UTF_8).contains("\n"));
+		createDao();
+		assertEquals(trip, dao.getTrip(trip.getId()));
+	}
+
+	@Test
+	public void journalIsCompactedAtThreshold() throws Exception
+	{
+		JsonDao dao = new JsonDao(persistence, JsonFormat.PRETTY, Sharding.NONE, 2, new WriteBehind(persistence));
+		assertTrue(dao.awaitReady(ofSeconds(10)));
+		Trip trip = trip1().withDescription("Compacted");
+		Trip newTrip = newTrip();
+
+		reset(persistence);
+		dao.saveTrip(trip);
+		dao.flush();
+		verify(persistence, never()).write(eq("Trip.json"), any());
+
+		dao.saveTrip(newTrip);
+		dao.flush();
+		verify(persistence, times(1)).write(eq("Trip.json"), any());
+		assertEquals("[]", FileUtils.readFileToString(new File(dataDir, "Trip.journal.json"), UTF_8));
+		createDao();
+		assertEquals(trip, this.dao.getTrip(trip.getId()));
+		assertEquals(newTrip, this.dao.getTrip(newTrip.getId()));
+	}
+
+	@Test
+	public void shardsAreWrittenPerYearAndReadBack() throws Exception
+	{
+		JsonDao shardedDao = new JsonDao(persistence, JsonFormat.PRETTY, Sharding.YEAR);
+		shardedDao.writeAll();
+
+		assertTrue(new File(dataDir, "Trip-2014.json").exists());
+		assertTrue(new File(dataDir, "Trip-2014.bin").exists());
+		assertTrue(new File(dataDir, "Trip-2018.json").exists());
+		assertEquals("[\"Trip-2014\",\"Trip-2015\",\"Trip-2018\"]", FileUtils.readFileToString(new File(dataDir, "Trip.shards.json"), UTF_8).replaceAll("\\s", ""));
+		assertFalse(FileUtils.readFileToString(new File(dataDir, "Trip-2014.json"), UTF_8).contains(trip2().getId()));
+
+		createDao();
+		assertEquals(List.of(trip3(), trip2(), trip1()), dao.getTrips());
+		assertEquals(List.of(photo1InTrip2(), photo2InTrip1(), photo1InTrip1()), dao.getPhotos());
+		assertEquals(bream5120(), dao.getSpecimen(bream5120().getId()));
+	}
+
+	@Test
+	public void deletedObjectsStayDeletedWhenCompactedAfterReading()
+	{
+		JsonDao dao = new JsonDao(persistence);
+		dao.deleteTrip(trip3());
+		dao.flush();
+
+		new JsonDao(persistence).writeAll();
+		createDao();
+		assertEquals(List.of(trip2(), trip1()), this.dao.getTrips());
+	}
+
+	@Test
+	public void deletedAndMovedObjectsStayInPlaceWhenShardsAreCompactedAfterReading()
+	{
+		// Other trips of the same years keep the shards of the deleted and moved trips from becoming empty
+		JsonDao dao = new JsonDao(persistence, JsonFormat.PRETTY, Sharding.YEAR);
+		Trip other2015 = tripOn(LocalDate.parse("2015-08-01"));
+		Trip other2018 = tripOn(LocalDate.parse("2018-08-01"));
+		dao.saveTrip(other2015);
+		dao.saveTrip(other2018);
+		dao.writeAll();
+
+		dao = new JsonDao(persistence, JsonFormat.PRETTY, Sharding.YEAR);
+		Trip moved = dao.getTrip(trip2().getId()).withStartDate(LocalDate.parse("2014-07-03"));
+		dao.deleteTrip(trip3());
+		dao.saveTrip(moved);
+		dao.flush();
+
+		new JsonDao(persistence, JsonFormat.PRETTY, Sharding.YEAR).writeAll();
+		createDao();
+		assertEquals(List.of(other2018, other2015, trip1(), moved), this.dao.getTrips());
+	}
+
+	private static Trip tripOn(LocalDate date)
+	{
+		return newTrip().withStartDate(date).withEndDate(date);
+	}
+
+	@Test
+	public void onlyChangedShardIsWrittenWhenCompacted() throws Exception
+	{
+		new JsonDao(persistence, JsonFormat.PRETTY, Sharding.YEAR).writeAll();
+		JsonDao dao = new JsonDao(persistence, JsonFormat.PRETTY, Sharding.YEAR, 1, new WriteBehind(persistence));
+		assertTrue(dao.awaitReady(ofSeconds(10)));
+		Trip trip = trip1().withDescription("Only this year");
+
+		reset(persistence);
+		dao.saveTrip(trip);
+		dao.flush();
+		verify(persistence, times(1)).write(eq("Trip-2014.json"), any());
+		verify(persistence, never()).write(eq("Trip-2015.json"), any());
+		verify(persistence, never()).write(eq("Trip-2018.json"), any());
+		verify(persistence, never()).write(eq("Trip.shards.json"), any());
+
+		createDao();
+		assertEquals(trip, this.dao.getTrip(trip.getId()));
+		assertEquals(trip2(), this.dao.getTrip(trip2().getId()));
+	}
+
+	@Test
+	public void pendingWritesOfSameFileAreCoalesced() throws Exception
+	{
+		JsonDao dao = new JsonDao(persistence, JsonFormat.PRETTY, Sharding.NONE, 100, new WriteBehind(persistence, 60_000));
+		assertTrue(dao.awaitReady(ofSeconds(10)));
+		Trip trip = trip1().withDescription("First");
+		Trip newTrip = newTrip();
+
+		reset(persistence);
+		dao.saveTrip(trip);
+		dao.saveTrip(newTrip);
+		assertEquals(1, dao.getPendingWrites());
+		verifyNoInteractions(persistence);
+
+		dao.flush();
+		assertEquals(0, dao.getPendingWrites());
+		verify(persistence, times(1)).write(eq("Trip.journal.json"), any());
+		verify(persistence, times(1)).commit();
+		verifyNoMoreInteractions(persistence);
+		createDao();
+		assertEquals(trip, this.dao.getTrip(trip.getId()));
+		assertEquals(newTrip, this.dao.getTrip(newTrip.getId()));
+	}
+
+	@Test
+	public void batchWritesEachChangedFileOnce() throws Exception
+	{
+		JsonDao dao = new JsonDao(persistence, JsonFormat.PRETTY, Sharding.NONE, 100, new WriteBehind(persistence));
+		assertTrue(dao.awaitReady(ofSeconds(10)));
+		Specie bream = bream().withName("Braxen");
+		Specimen perch = perch1000().withText("A nice perch");
+		Specimen tench = tench3540().withText("A fat tench");
+		Trip trip = trip1().withDescription("Renamed");
+
+		reset(persistence);
+		dao.batch(batch -> batch
+				.saveSpecies(List.of(bream))
+				.saveSpecimens(List.of(perch))
+				.saveSpecimens(List.of(tench))
+				.saveTrip(trip)
+				.deleteSpecies(List.of(newSpecie())));
+		dao.flush();
+
+		verify(persistence, times(1)).write(eq("Specie.journal.json"), any());
+		verify(persistence, times(1)).write(eq("Specimen.journal.json"), any());
+		verify(persistence, times(1)).write(eq("Trip.journal.json"), any());
+		verify(persistence, never()).write(eq("Photo.journal.json"), any());
+		createDao();
+		assertEquals(bream, this.dao.getSpecie(bream.getId()));
+		assertEquals(perch, this.dao.getSpecimen(perch.getId()));
+		assertEquals(tench, this.dao.getSpecimen(tench.getId()));
+		assertEquals(trip.getDescription(), this.dao.getTrip(trip.getId()).getDescription());
+		assertEquals(bream, this.dao.getSpecimen(bream5120().getId()).getSpecie());
+	}
+
+	@Test
+	public void batchChangesSeeEarlierChanges()
+	{
+		Trip trip = newTrip();
+		Specimen specimen = newSpecimen(trip.getId());
+
+		dao.batch(batch -> batch
+				.saveTrip(trip)
+				.saveSpecimens(List.of(specimen)));
+
+		assertTrue(trip.isPersisted());
+		assertTrue(specimen.isPersisted());
+		assertTripEquals(trip.withSpecimens(List.of(specimen)));
+	}
+
+	@Test
+	public void failedBatchSavesNothing()
+	{
+		Specimen perch = perch1000().withText("Never saved");
+		reset(persistence);
+
+		assertThrows(IllegalArgumentException.class, () -> dao.batch(batch -> batch
+				.saveSpecimens(List.of(perch))
+				.deleteSpecies(List.of(bream()))));
+
+		assertEquals(perch1000(), dao.getSpecimen(perch.getId()));
+		assertEquals(bream(), dao.getSpecie(bream().getId()));
+		dao.flush();
+		verifyNoInteractions(persistence);
+	}
+
+	@Test
+	public void readersSeeWholeSavesWhileSaving() throws Exception
+	{
+	    Trip withOldSpecimens = trip1().withSpecimens(List.of(newSpecimen(trip1().getId()), newSpecimen(trip1().getId())));
+	    Trip withNewSpecimens = trip1().withSpecimens(List.of(newSpecimen(trip1().getId()), newSpecimen(trip1().getId())));
+	    dao.saveTrip(withOldSpecimens);
+	    int specimenCount = dao.getSpecimens().size();
+
+	    Thread saver = new Thread(() ->
+	    {
+	        for (int i = 0; i < 200; i++)
+	        {
+	            dao.saveTrip(i % 2 == 0 ? withNewSpecimens : withOldSpecimens);
+	        }
+	    });
+	    saver.start();
+	    while (saver.isAlive())
+	    {
+	        assertEquals(specimenCount, dao.getSpecimens().size());
+	        assertEquals(2, dao.getSpecimensOfTrip(trip1().getId()).size());
+	    }
+	    saver.join();
+	    assertEquals(withOldSpecimens.getSpecimens().stream().map(Specimen::getId).collect(toSet()),
+	            dao.getSpecimensOfTrip(trip1().getId()).stream().map(Specimen::getId).collect(toSet()));
+	}
+
+	@Test
+	public void tripsAndSpeciesAreReadyBeforeSpecimens() throws Exception
+	{
+	    CountDownLatch specimensReadable = new CountDownLatch(1);
+	    CountDownLatch specimensReady = new CountDownLatch(1);
+	    doAnswer(invocation ->
+	    {
+	        specimensReadable.await();
+	        return invocation.callRealMethod();
+	    }).when(persistence).input(startsWith("Specimen"));
+
+	    JsonDao dao = new JsonDao(persistence);
+	    dao.onReady(Specimen.class, specimensReady::countDown);
+	    assertEquals(List.of(trip3().getId(), trip2().getId(), trip1().getId()), dao.getTrips().stream().map(Trip::getId).collect(toList()));
+	    assertEquals(List.of(bream(), perch(), tench()), dao.getSpecies());
+	    assertTrue(dao.isReady(Trip.class));
+	    assertTrue(dao.isReady(Specie.class));
+	    assertFalse(dao.isReady(Specimen.class));
+	    assertFalse(dao.isReady());
+
+	    specimensReadable.countDown();
+	    assertTrue(dao.awaitReady(ofSeconds(10)));
+	    assertTrue(specimensReady.await(10, SECONDS));
+	    assertEquals(trip1(), dao.getTrip(trip1().getId()));
+	    assertEquals(trip1().getSpecimens(), dao.getTrip(trip1().getId()).getSpecimens());
+	}
+
+	@Test
+	public void searchMatchesSameAsPredicates()
+	{
+	    dao.saveSpecimens(Set.of(perch1000().withLocation("Hossmoån")));
+	    for (String text : List.of("", "ån", "BOTTEN", "perch", "sjön 2015", "hossmo perch", "Första", "x"))
+	    {
+	        assertEquals(dao.getSpecimens().stream().filter(new SpecimenTextPredicate(text)).map(Specimen::getId).collect(toSet()), dao.searchSpecimens(text), text);
+	        assertEquals(dao.getTrips().stream().filter(new TripTextPredicate(text)).map(Trip::getId).collect(toSet()), dao.searchTrips(text), text);
+	    }
+	}
+
+	@Test
+	public void searchIsUpdatedWhenSaved()
+	{
+	    assertEquals(Set.of(bream5120().getId()), dao.searchSpecimens("majs hossmo"));
+
+	    dao.saveSpecimens(Set.of(bream5120().withBait("Mask")));
+	    assertEquals(emptySet(), dao.searchSpecimens("majs hossmo"));
+	    assertEquals(Set.of(trip1().getId()), dao.searchTrips("mask"));
+
+	    dao.deleteTrip(trip1());
+	    assertEquals(emptySet(), dao.searchTrips("mask"));
+	    assertEquals(emptySet(), dao.searchSpecimens("mask"));
+	}
+
 	@Test
 	public void autoCompletions()
 	{
@@ -513,10 +885,10 @@ public class JsonDaoTest
 	            .withBait("CCC")
 	            .withWeather("DDD")));
 
-	    assertTrue(dao.getAutoCompletions(LOCATION).contains("AAA"));
-	    assertTrue(dao.getAutoCompletions(METHOD).contains("BBB"));
-	    assertTrue(dao.getAutoCompletions(BAIT).contains("CCC"));
-	    assertTrue(dao.getAutoCompletions(WEATHER).contains("DDD"));
+	    assertTrue(dao.getAutoCompletions(LOCATION, "").contains("AAA"));
+	    assertTrue(dao.getAutoCompletions(METHOD, "").contains("BBB"));
+	    assertTrue(dao.getAutoCompletions(BAIT, "").contains("CCC"));
+	    assertTrue(dao.getAutoCompletions(WEATHER, "").contains("DDD"));
 
         dao.saveSpecimens(Set.of(bream5120()
                 .withLocation("EEE")
@@ -524,10 +896,123 @@ public class JsonDaoTest
                 .withBait("GGG")
                 .withWeather("HHH")));
 
-        assertTrue(dao.getAutoCompletions(LOCATION).contains("EEE"));
-        assertTrue(dao.getAutoCompletions(METHOD).contains("FFF"));
-        assertTrue(dao.getAutoCompletions(BAIT).contains("GGG"));
-        assertTrue(dao.getAutoCompletions(WEATHER).contains("HHH"));
+        assertTrue(dao.getAutoCompletions(LOCATION, "").contains("EEE"));
+        assertTrue(dao.getAutoCompletions(METHOD, "").contains("FFF"));
+        assertTrue(dao.getAutoCompletions(BAIT, "").contains("GGG"));
+        assertTrue(dao.getAutoCompletions(WEATHER, "").contains("HHH"));
+	}
+
+	@Test
+	public void autoCompletionsByPrefixRankedByUsage()
+	{
+	    Specimen perch = perch1000().withLocation("Sjön");
+	    Specimen tench = tench3540().withLocation("Sjöviken");
+	    Specimen bream = bream5120().withLocation("Sjöviken");
+	    dao.saveSpecimens(List.of(perch, tench, bream));
+
+	    assertEquals(List.of("Sjöviken", "Sjön"), dao.getAutoCompletions(LOCATION, "sjö"));
+	    assertEquals(List.of("Sjöviken"), dao.getAutoCompletions(LOCATION, "SJÖV"));
+	    assertEquals(emptyList(), dao.getAutoCompletions(LOCATION, "x"));
+
+	    dao.deleteSpecimens(List.of(perch));
+
+	    assertEquals(List.of("Sjöviken"), dao.getAutoCompletions(LOCATION, "sjö"));
+	}
+
+	@Test
+	public void autoCompletionsIncludeAllCasesAndThenSubstrings()
+	{
+	    Specimen perch = perch1000().withLocation("sjö");
+	    Specimen tench = tench3540().withLocation("Sjö");
+	    Specimen bream = bream5120().withLocation("Lillsjön");
+	    dao.saveSpecimens(List.of(perch, tench, bream));
+
+	    assertEquals(List.of("Sjö", "sjö", "Lillsjön"), dao.getAutoCompletions(LOCATION, "sjö"));
+	    assertEquals(List.of("Sjö", "sjö", "Lillsjön"), dao.getAutoCompletions(LOCATION, "SJÖ"));
+	    assertEquals(List.of("Lillsjön"), dao.getAutoCompletions(LOCATION, "sjön"));
+	    assertEquals(List.of("Lillsjön"), dao.getAutoCompletions(LOCATION, "lill"));
+
+	    dao.deleteSpecimens(List.of(tench));
+
+	    assertEquals(List.of("sjö", "Lillsjön"), dao.getAutoCompletions(LOCATION, "Sjö"));
+	}
+
+	@Test
+	public void repeatedValuesAreSharedWhenRead()
+	{
+	    createDao();
+	    Specimen perch = dao.getSpecimen(perch1000().getId());
+	    Specimen tench = dao.getSpecimen(tench3540().getId());
+
+	    assertSame(perch.getLocation(), tench.getLocation());
+	    assertSame(perch.getBait(), tench.getBait());
+	    assertSame(perch.getTripId(), tench.getTripId());
+	}
+
+	@Test
+	public void binarySnapshotIsReadWhenNotOlderThanJson() throws Exception
+	{
+		File json = new File(dataDir, "Trip.json");
+		File binary = new File(dataDir, "Trip.bin");
+		assertTrue(binary.exists());
+
+		FileUtils.writeStringToFile(json, "Not JSON", UTF_8);
+		json.setLastModified(binary.lastModified() - 10_000);
+		createDao();
+		assertEquals(asList(trip3(), trip2(), trip1()), dao.getTrips());
+	}
+
+	@Test
+	public void jsonSnapshotIsReadWhenNewerThanBinary() throws Exception
+	{
+		File json = new File(dataDir, "Trip.json");
+		File binary = new File(dataDir, "Trip.bin");
+
+		FileUtils.writeStringToFile(json, "[]", UTF_8);
+		json.setLastModified(binary.lastModified() + 10_000);
+		createDao();
+		assertEquals(emptyList(), dao.getTrips());
+	}
+
+	@Test
+	public void jsonSnapshotIsReadWhenBinaryIsUnreadable() throws Exception
+	{
+		File binary = new File(dataDir, "Trip.bin");
+
+		FileUtils.writeStringToFile(binary, "Not binary", UTF_8);
+		createDao();
+		assertEquals(asList(trip3(), trip2(), trip1()), dao.getTrips());
+		assertEquals(asList(bream5120(), perch1000(), tench3540()), dao.getSpecimens());
+	}
+
+	@Test
+	public void jsonSnapshotIsReadWhenBinaryHasCorruptLengthPrefix() throws Exception
+	{
+		File binary = new File(dataDir, "Trip.bin");
+		byte[] header = {0x46, 0x42, 0x42, 0x53, BinaryHandler.VERSION};
+		byte[][] corruptCounts =
+		{
+			{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F}, // Negative
+			{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07}, // Integer.MAX_VALUE
+			{0x01, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F, 'a'}, // One string of negative length
+		};
+		for (byte[] corruptCount : corruptCounts)
+		{
+			FileUtils.writeByteArrayToFile(binary, ArrayUtils.addAll(header, corruptCount));
+			createDao();
+			assertEquals(asList(trip3(), trip2(), trip1()), dao.getTrips());
+		}
+	}
+
+	@Test
+	public void snapshotWithMissingFieldIsNotRead() throws Exception
+	{
+		FileUtils.deleteQuietly(new File(dataDir, "Specie.bin"));
+		FileUtils.writeStringToFile(new File(dataDir, "Specie.json"), "[{\"id\": \"perch\", \"name\": \"Perch\", \"freshWater\": true}]", UTF_8);
+		createDao();
+
+		RuntimeException e = assertThrows(RuntimeException.class, () -> dao.getSpecies());
+		assertEquals("Missing field 'regWeight' of Specie", ExceptionUtils.getRootCause(e).getMessage());
 	}
 
 	private Photo getPhoto(String id)
@@ -0,0 +1,85 @@
+package se.martinuhlen.fishbase.dao;
+
+import static java.time.Duration.ofMillis;
+import static java.time.Duration.ofSeconds;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+import static se.martinuhlen.fishbase.domain.TestData.trip1;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import se.martinuhlen.fishbase.domain.Trip;
+
+/**
+ * Unit tests of {@link LazyFishBaseDao}.
+ */
+public class LazyFishBaseDaoTest
+{
+	@Test
+	public void readinessFollowsLoading() throws Exception
+	{
+		Trip trip = trip1();
+		FishBaseDao delegate = mock(FishBaseDao.class, withSettings().defaultAnswer(CALLS_REAL_METHODS));
+		when(delegate.getTrip(trip.getId())).thenReturn(trip);
+		CountDownLatch loaded = new CountDownLatch(1);
+		CountDownLatch ready = new CountDownLatch(1);
+
+		FishBaseDao dao = new LazyFishBaseDao(() ->
+		{
+			await(loaded);
+			return delegate;
+		});
+		dao.onReady(ready::countDown);
+		assertFalse(dao.isReady());
+		assertFalse(dao.isReady(Trip.class));
+		assertFalse(dao.awaitReady(ofMillis(10)));
+		assertEquals(1, ready.getCount());
+
+		loaded.countDown();
+		assertTrue(dao.awaitReady(ofSeconds(10)));
+		assertTrue(dao.isReady());
+		assertTrue(dao.isReady(Trip.class));
+		assertTrue(ready.await(10, SECONDS));
+		assertSame(trip, dao.getTrip(trip.getId()));
+
+		AtomicInteger readyCount = new AtomicInteger();
+		dao.onReady(readyCount::incrementAndGet);
+		assertEquals(1, readyCount.get());
+	}
+
+	@Test
+	public void loadingFailureIsThrownByCalls()
+	{
+		IllegalStateException failure = new IllegalStateException("Corrupt file");
+		FishBaseDao dao = new LazyFishBaseDao(() ->
+		{
+			throw failure;
+		});
+		assertSame(failure, assertThrows(IllegalStateException.class, () -> dao.getTrips()));
+		assertSame(failure, assertThrows(IllegalStateException.class, () -> dao.awaitReady(ofSeconds(10))));
+		assertFalse(dao.isReady());
+	}
+
+	private static void await(CountDownLatch latch)
+	{
+		try
+		{
+			latch.await();
+		}
+		catch (InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package se.martinuhlen.fishbase.dao;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests of {@link LocalFilePersistence}.
+ */
+public class LocalFilePersistenceTest
+{
+	private File dir;
+	private LocalFilePersistence persistence;
+
+	@BeforeEach
+	public void setUp() throws Exception
+	{
+		dir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+		persistence = new LocalFilePersistence(dir);
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception
+	{
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Test
+	public void missingFileIsEmpty() throws Exception
+	{
+		assertArrayEquals(new byte[0], persistence.input("Missing.json").readAllBytes());
+		assertTrue(persistence.lastModified("Missing.json").isEmpty());
+	}
+
+	@Test
+	public void writtenFileIsNotReplacedUntilCommitted() throws Exception
+	{
+		write("A.json", "old");
+		persistence.commit();
+
+		write("A.json", "new");
+		assertEquals("old", FileUtils.readFileToString(new File(dir, "A.json"), UTF_8));
+
+		persistence.commit();
+		assertEquals("new", FileUtils.readFileToString(new File(dir, "A.json"), UTF_8));
+		assertEquals(1, dir.list().length);
+	}
+
+	@Test
+	public void stagedFileIsCommittedWhenRead() throws Exception
+	{
+		write("A.json", "a");
+		write("B.json", "b");
+
+		assertEquals("a", new String(persistence.input("A.json").readAllBytes(), UTF_8));
+		assertTrue(new File(dir, "B.json").exists());
+	}
+
+	@Test
+	public void fileWrittenTwiceBeforeCommitIsReplaced() throws Exception
+	{
+		write("A.json", "first");
+		write("A.json", "second");
+		persistence.commit();
+
+		assertEquals("second", FileUtils.readFileToString(new File(dir, "A.json"), UTF_8));
+		assertEquals(1, dir.list().length);
+	}
+
+	@Test
+	public void unclosedFileIsNeverCommitted() throws Exception
+	{
+		write("A.json", "complete");
+		persistence.commit();
+
+		OutputStream output = persistence.output("A.json");
+		output.write("trunc".getBytes(UTF_8));
+		output.flush();
+		persistence.commit();
+		assertEquals("complete", FileUtils.readFileToString(new File(dir, "A.json"), UTF_8));
+
+		new LocalFilePersistence(dir);
+		assertEquals(1, dir.list().length);
+		assertFalse(persistence.lastModified("A.json").isEmpty());
+	}
+
+	@Test
+	public void failedWriteIsNeverStaged() throws Exception
+	{
+		write("A.json", "[{\"id\": 1}]");
+		persistence.commit();
+
+		IOException failure = new IOException("Failed mid-document");
+		IOException thrown = assertThrows(IOException.class, () -> persistence.write("A.json", output ->
+		{
+			try (output)
+			{
+				output.write("[{\"id\":".getBytes(UTF_8));
+				throw failure;
+			}
+		}));
+		assertSame(failure, thrown);
+		persistence.commit();
+
+		assertEquals("[{\"id\": 1}]", FileUtils.readFileToString(new File(dir, "A.json"), UTF_8));
+		assertEquals(1, dir.list().length);
+	}
+
+	@Test
+	public void completedWriteIsStaged() throws Exception
+	{
+		persistence.write("A.json", output -> output.write("a".getBytes(UTF_8)));
+		persistence.commit();
+
+		assertEquals("a", FileUtils.readFileToString(new File(dir, "A.json"), UTF_8));
+		assertEquals(1, dir.list().length);
+	}
+
+	private void write(String name, String data) throws IOException
+	{
+		try (OutputStream output = persistence.output(name))
+		{
+			output.write(data.getBytes(UTF_8));
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package se.martinuhlen.fishbase.dao;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static se.martinuhlen.fishbase.domain.StatisticsField.BAIT;
+import static se.martinuhlen.fishbase.domain.StatisticsField.MONTH;
+import static se.martinuhlen.fishbase.domain.StatisticsField.SPECIE;
+import static se.martinuhlen.fishbase.domain.StatisticsField.YEAR;
+import static se.martinuhlen.fishbase.domain.TestData.bream5120;
+import static se.martinuhlen.fishbase.domain.TestData.perch;
+import static se.martinuhlen.fishbase.domain.TestData.perch1000;
+import static se.martinuhlen.fishbase.domain.TestData.tench3540;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import se.martinuhlen.fishbase.domain.Specimen;
+import se.martinuhlen.fishbase.domain.Statistics;
+
+/**
+ * Unit tests of {@link SpecimenStatistics}.
+ */
+public class SpecimenStatisticsTest
+{
+	private SpecimenStatistics statistics;
+
+	@BeforeEach
+	public void setUp()
+	{
+		statistics = new SpecimenStatistics();
+		statistics.add(bream5120());
+		statistics.add(perch1000());
+		statistics.add(tench3540());
+	}
+
+	@Test
+	public void statisticsOfAllSpecies()
+	{
+		assertEquals(List.of(
+				statistics("Plastmajs", 2, 4540, 1000, 3540),
+				statistics("Majs", 1, 5120, 5120, 5120)),
+				strip(statistics.get(BAIT, null)));
+
+		assertEquals(List.of(
+				statistics("2015", 2, 4540, 1000, 3540),
+				statistics("2014", 1, 5120, 5120, 5120)),
+				strip(statistics.get(YEAR, null)));
+
+		assertEquals(List.of("2015-07", "2014-09"), statistics.get(MONTH, null).stream().map(Statistics::getValue).toList());
+		assertEquals(2270, statistics.get(BAIT, null).get(0).getAverageWeight());
+	}
+
+	@Test
+	public void statisticsOfOneSpecie()
+	{
+		Specimen perch2000 = perch1000().withWeight(2000).withBait("Mask");
+		statistics.add(perch2000);
+
+		assertEquals(List.of(
+				statistics("Mask", 1, 2000, 2000, 2000),
+				statistics("Plastmajs", 1, 1000, 1000, 1000)),
+				strip(statistics.get(BAIT, perch().getId())));
+		assertEquals(List.of(), statistics.get(BAIT, "Unknown"));
+	}
+
+	@Test
+	public void removedSpecimensAreNotCounted()
+	{
+		statistics.remove(tench3540());
+		assertEquals(List.of(statistics("Majs", 1, 5120, 5120, 5120), statistics("Plastmajs", 1, 1000, 1000, 1000)), strip(statistics.get(BAIT, null)));
+
+		statistics.remove(perch1000());
+		assertEquals(List.of(statistics("Majs", 1, 5120, 5120, 5120)), strip(statistics.get(BAIT, null)));
+		assertEquals(List.of("Bream"), statistics.get(SPECIE, null).stream().map(Statistics::getValue).toList());
+	}
+
+	@Test
+	public void minAndMaxSurviveRemovals()
+	{
+		Specimen perch500 = perch1000().withWeight(500);
+		Specimen perch1500 = perch1000().withWeight(1500);
+		statistics.add(perch500);
+		statistics.add(perch1500);
+		statistics.remove(perch500);
+
+		Statistics perchStatistics = statistics.get(SPECIE, perch().getId()).get(0);
+		assertEquals(1000, perchStatistics.getMinWeight());
+		assertEquals(1500, perchStatistics.getMaxWeight());
+		assertEquals(2, perchStatistics.getCount());
+	}
+
+	@Test
+	public void ratioHistogram()
+	{
+		int[] histogram = statistics.get(SPECIE, null)
+				.stream()
+				.filter(s -> s.getValue().equals("Perch"))
+				.findAny()
+				.get()
+				.getRatioHistogram();
+		int[] expected = new int[Statistics.RATIO_BUCKETS];
+		expected[Statistics.ratioBucketOf(perch1000())] = 1;
+		assertArrayEquals(expected, histogram);
+	}
+
+	private static Statistics statistics(String value, int count, long totalWeight, int minWeight, int maxWeight)
+	{
+		return new Statistics(value, count, totalWeight, minWeight, maxWeight, new int[Statistics.RATIO_BUCKETS]);
+	}
+
+	/**
+	 * Strips the ratio histograms, they're tested separately.
+	 */
+	private static List<Statistics> strip(List<Statistics> statistics)
+	{
+		return statistics.stream()
+				.map(s -> statistics(s.getValue(), s.getCount(), s.getTotalWeight(), s.getMinWeight(), s.getMaxWeight()))
+				.toList();
+	}
+}
@@ -0,0 +1,79 @@
+package se.martinuhlen.fishbase.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests of {@link WriteBehind}.
+ */
+public class WriteBehindTest
+{
+	private final Persistence persistence = mock(Persistence.class);
+
+	@Test
+	public void failedWriteIsRetried() throws Exception
+	{
+		WriteBehind writer = new WriteBehind(persistence, 60_000);
+		RuntimeException failure = new IllegalStateException("Disk full");
+		AtomicInteger attempts = new AtomicInteger();
+		writer.schedule("A.json", () ->
+		{
+			if (attempts.incrementAndGet() == 1)
+			{
+				throw failure;
+			}
+		});
+
+		assertSame(failure, assertThrows(RuntimeException.class, writer::flush));
+		assertEquals(1, writer.getPendingWrites());
+
+		writer.flush();
+		assertEquals(2, attempts.get());
+		assertEquals(0, writer.getPendingWrites());
+	}
+
+	@Test
+	public void failedWriteIsNotRetriedWhenSuperseded() throws Exception
+	{
+		WriteBehind writer = new WriteBehind(persistence, 60_000);
+		List<String> written = new ArrayList<>();
+		writer.schedule("A.json", () ->
+		{
+			writer.schedule("A.json", () -> written.add("newer"));
+			throw new IllegalStateException("Disk full");
+		});
+
+		assertThrows(RuntimeException.class, writer::flush);
+		writer.flush();
+		assertEquals(List.of("newer"), written);
+		assertEquals(0, writer.getPendingWrites());
+	}
+
+	@Test
+	public void writeWaitsUntilNoMoreWritesAreScheduled() throws Exception
+	{
+		WriteBehind writer = new WriteBehind(persistence, 500);
+		List<String> written = new ArrayList<>();
+		writer.schedule("A.json", () -> written.add("first"));
+		Thread.sleep(300);
+		writer.schedule("A.json", () -> written.add("second"));
+		Thread.sleep(300);
+		assertEquals(1, writer.getPendingWrites());
+
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (writer.getPendingWrites() > 0 && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(0, writer.getPendingWrites());
+		assertEquals(List.of("second"), written);
+	}
+}
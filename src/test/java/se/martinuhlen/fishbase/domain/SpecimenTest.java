@@ -19,6 +19,7 @@ import static se.martinuhlen.fishbase.domain.TestData.tench;
 import static se.martinuhlen.fishbase.domain.TestData.tench3540;
 
 import java.time.LocalDateTime;
+import java.util.EnumSet;
 import java.util.Map;
 
 import org.junit.jupiter.api.Test;
@@ -153,6 +154,7 @@ public class SpecimenTest
                 BAIT, "ba",
                 WEATHER, "Sunny");
 
-        assertEquals(expected, s.getAutoCompletions());        
+        assertEquals(expected.keySet(), EnumSet.allOf(AutoCompleteField.class));
+        expected.forEach((field, value) -> assertEquals(value, s.getAutoCompletion(field), field.toString()));
     }
 }
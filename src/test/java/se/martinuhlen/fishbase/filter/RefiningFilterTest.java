@@ -0,0 +1,93 @@
+package se.martinuhlen.fishbase.filter;
+
+import static org.apache.commons.lang3.StringUtils.containsIgnoreCase;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests of {@link RefiningFilter}.
+ */
+public class RefiningFilterTest
+{
+	private final List<String> scanned = new ArrayList<>();
+	private final List<String> refined = new ArrayList<>();
+	private final RefiningFilter<String> filter = new RefiningFilter<>(text -> predicate(text, scanned), text -> predicate(text, refined));
+	private final List<String> source = List.of("Bream", "Tench", "Perch", "Roach", "Zander");
+
+	private static Predicate<String> predicate(String text, List<String> tested)
+	{
+		return str ->
+		{
+			tested.add(str);
+			return new TextPredicate<String>(text)
+			{
+				@Override
+				boolean matchesText(String obj, String part)
+				{
+					return containsIgnoreCase(obj, part);
+				}
+			}.test(str);
+		};
+	}
+
+	@Test
+	public void refinedTextRetestsPreviousMatchesOnly()
+	{
+		assertEquals(List.of("Bream", "Tench", "Perch", "Zander"), filter.filter("e", source));
+		assertEquals(5, scanned.size());
+
+		assertEquals(List.of("Tench", "Perch"), filter.filter("ch e", source));
+		assertEquals(List.of("Perch"), filter.filter("ch per", source));
+		assertEquals(List.of("Bream", "Tench", "Perch", "Zander", "Tench", "Perch"), refined);
+	}
+
+	@Test
+	public void broadenedTextScansAllElements()
+	{
+		filter.filter("perch", source);
+		scanned.clear();
+
+		assertEquals(List.of("Perch"), filter.filter("p", source));
+		assertEquals(source, scanned);
+		assertTrue(refined.isEmpty());
+	}
+
+	@Test
+	public void changedSourceScansAllElements()
+	{
+		filter.filter("e", source);
+		scanned.clear();
+
+		List<String> newSource = List.of("Roach", "Perch");
+		assertEquals(List.of("Perch"), filter.filter("er", newSource));
+		assertEquals(newSource, scanned);
+		assertTrue(refined.isEmpty());
+	}
+
+	@Test
+	public void blankTextMatchesSource()
+	{
+		assertSame(source, filter.filter(" ", source));
+		assertTrue(scanned.isEmpty());
+	}
+
+	@Test
+	public void refines()
+	{
+		assertTrue(RefiningFilter.refines("per", "pe"));
+		assertTrue(RefiningFilter.refines("PERCH lake", "erc"));
+		assertTrue(RefiningFilter.refines("lake perch", "perch lake"));
+		assertFalse(RefiningFilter.refines("pe", "per"));
+		assertFalse(RefiningFilter.refines("perch", "perch lake"));
+		assertFalse(RefiningFilter.refines("perch", ""));
+		assertFalse(RefiningFilter.refines("", "perch"));
+	}
+}
@@ -0,0 +1,85 @@
+package se.martinuhlen.fishbase.filter;
+
+import static org.apache.commons.lang3.StringUtils.containsIgnoreCase;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests of {@link TextIndex}.
+ */
+public class TextIndexTest
+{
+	@Test
+	public void allPartsMustMatchIgnoringCase()
+	{
+		TextIndex index = new TextIndex();
+		index.put("1", Stream.of("Hossmoån", "Bottenmete"));
+		index.put("2", Stream.of("Öxneredssjön", "Bottenmete", null));
+		index.put("3", Stream.of("Kungsbackaån"));
+
+		assertEquals(Set.of("1", "2", "3"), index.search("  "));
+		assertEquals(Set.of("1", "3"), index.search("ån"));
+		assertEquals(Set.of("1", "2"), index.search("BOTTEN"));
+		assertEquals(Set.of("2"), index.search("botten ÖXNE"));
+		assertEquals(Set.of(), index.search("botten kungs"));
+		assertEquals(Set.of(), index.search("Hossmoåns"));
+	}
+
+	@Test
+	public void replacedAndRemovedTextIsNotFound()
+	{
+		TextIndex index = new TextIndex();
+		index.put("1", Stream.of("Mört"));
+		index.put("2", Stream.of("Mörtfiske"));
+
+		index.put("1", Stream.of("Majs"));
+		assertEquals(Set.of("2"), index.search("mört"));
+		assertEquals(Set.of("1"), index.search("maj"));
+
+		index.remove("2");
+		assertEquals(Set.of(), index.search("mört"));
+		assertEquals(Set.of("1"), index.search(""));
+	}
+
+	@Test
+	public void sameMatchesAsPredicate()
+	{
+		List<String> words = List.of("Bottenmete", "Spinnfiske", "Plastmajs", "Soligt", "Öxneredssjön", "2015-07-04T06:15", "Nytt PB!");
+		Random random = new Random(1);
+		TextIndex index = new TextIndex();
+		String[][] texts = new String[100][];
+		for (int i = 0; i < texts.length; i++)
+		{
+			texts[i] = random.ints(3, 0, words.size()).mapToObj(words::get).toArray(String[]::new);
+			index.put(Integer.toString(i), Stream.of(texts[i]));
+		}
+
+		for (String query : List.of("e", "ös", "bott", "fisk SOL", "-07- pb", "t", "mete majs sjön", "xyz"))
+		{
+			TextPredicate<String[]> predicate = new TextPredicate<>(query)
+			{
+				@Override
+				boolean matchesText(String[] obj, String text)
+				{
+					return Stream.of(obj).anyMatch(str -> containsIgnoreCase(str, text));
+				}
+			};
+			Set<String> expected = new HashSet<>();
+			for (int i = 0; i < texts.length; i++)
+			{
+				if (predicate.test(texts[i]))
+				{
+					expected.add(Integer.toString(i));
+				}
+			}
+			assertEquals(expected, index.search(query), query);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package se.martinuhlen.fishbase.google.drive;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.time.Instant;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests of {@link DrivePersistence}, with a local cache.
+ */
+public class DrivePersistenceTest
+{
+	private File cacheDir;
+	private FakeDriveService service;
+	private DrivePersistence persistence;
+
+	@BeforeEach
+	public void setUp() throws Exception
+	{
+		cacheDir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+		service = new FakeDriveService();
+		persistence = new DrivePersistence(service, cacheDir);
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception
+	{
+		persistence.shutdown();
+		FileUtils.deleteDirectory(cacheDir);
+	}
+
+	@Test
+	public void unchangedFilesAreNotDownloaded() throws Exception
+	{
+		write("Trip.json", "trips");
+		write("Specie.json", "species");
+		persistence.shutdown();
+
+		persistence = new DrivePersistence(service, cacheDir);
+		assertEquals("trips", read("Trip.json"));
+		assertEquals("species", read("Specie.json"));
+		assertEquals(0, service.getDownloadCount());
+	}
+
+	@Test
+	public void fileChangedByAnotherClientIsDownloaded() throws Exception
+	{
+		write("Trip.json", "old");
+		assertEquals("old", read("Trip.json"));
+
+		service.upload("Trip.json", new ByteArrayInputStream("new".getBytes(UTF_8)), Instant.now());
+		assertEquals("new", read("Trip.json"));
+		assertEquals(1, service.getDownloadCount());
+
+		assertEquals("new", read("Trip.json"));
+		assertEquals(1, service.getDownloadCount());
+	}
+
+	@Test
+	public void fileNotCachedIsDownloadedOnce() throws Exception
+	{
+		service.upload("Trip.json", new ByteArrayInputStream("trips".getBytes(UTF_8)), Instant.now());
+
+		assertEquals("trips", read("Trip.json"));
+		assertEquals("trips", read("Trip.json"));
+		assertEquals(1, service.getDownloadCount());
+	}
+
+	@Test
+	public void fileDeletedByAnotherClientIsEmptyAndRemovedFromCache() throws Exception
+	{
+		write("Trip.json", "trips");
+		assertEquals("trips", read("Trip.json"));
+		service.delete("Trip.json");
+
+		assertEquals("", read("Trip.json"));
+		assertFalse(new File(cacheDir, "Trip.json").exists());
+	}
+
+	@Test
+	public void missingFileIsEmpty() throws Exception
+	{
+		assertEquals("", read("Missing.json"));
+		assertEquals(0, service.getDownloadCount());
+	}
+
+	private void write(String name, String data) throws IOException
+	{
+		try (OutputStream output = persistence.output(name))
+		{
+			output.write(data.getBytes(UTF_8));
+		}
+	}
+
+	private String read(String name) throws IOException
+	{
+		return new String(persistence.input(name).readAllBytes(), UTF_8);
+	}
+}
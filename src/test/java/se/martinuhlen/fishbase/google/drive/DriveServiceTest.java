@@ -0,0 +1,172 @@
+package se.martinuhlen.fishbase.google.drive;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.util.DateTime;
+import com.google.api.client.util.ExponentialBackOff;
+import com.google.api.client.util.Sleeper;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.Drive.Files.Get;
+import com.google.api.services.drive.Drive.Files.Update;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+
+/**
+ * Unit tests of {@link DriveService}.
+ */
+public class DriveServiceTest
+{
+	private final File folder = new File().setId("folder").setName("FishBase");
+	private final File trip = new File().setId("trip").setName("Trip.json").setModifiedTime(new DateTime(1_000));
+
+	private Drive drive;
+	private DriveService service;
+
+	@BeforeEach
+	public void setUp() throws Exception
+	{
+		drive = mock(Drive.class, RETURNS_DEEP_STUBS);
+		when(drive.files().list().setQ(anyString()).setFields(anyString()).execute())
+			.thenReturn(new FileList().setFiles(List.of(folder)));
+		when(drive.files().list().setQ(anyString()).setFields(anyString()).setPageToken(any()).execute())
+			.thenReturn(new FileList().setFiles(List.of(trip)));
+		service = new DriveService(drive);
+	}
+
+	@Test
+	public void fileMetadataIsResolvedOnce() throws Exception
+	{
+		assertEquals(trip, service.getFile("Trip.json").orElseThrow());
+		assertEquals(trip, service.getFile("Trip.json").orElseThrow());
+		assertEquals(Instant.ofEpochMilli(1_000), service.getModifiedTime("Trip.json").orElseThrow());
+		assertTrue(service.getFile("Specie.json").isEmpty());
+
+		verify(drive.files().list().setQ(anyString()).setFields(anyString()).setPageToken(any()), times(1)).execute();
+		verify(drive.files().list().setQ(anyString()).setFields(anyString()), times(1)).execute();
+		verify(drive.files(), never()).get(anyString());
+	}
+
+	@Test
+	public void fileMetadataIsRefreshedWhenUpdated() throws Exception
+	{
+		File updated = new File().setId("trip").setName("Trip.json").setModifiedTime(new DateTime(2_000)).setMd5Checksum("md5");
+		when(drive.files().update(eq("trip"), any(), any()).setFields(anyString()).execute()).thenReturn(updated);
+
+		service.upload("Trip.json", new ByteArrayInputStream("[]".getBytes(UTF_8)), Instant.ofEpochMilli(2_000));
+		assertEquals(updated, service.getFile("Trip.json").orElseThrow());
+		assertEquals(Instant.ofEpochMilli(2_000), service.getModifiedTime("Trip.json").orElseThrow());
+		verify(drive.files(), never()).get(anyString());
+	}
+
+	@Test
+	public void fileIsUpdatedByCachedId() throws Exception
+	{
+		when(drive.files().update(eq("trip"), any(), any()).setFields(anyString()).execute()).thenReturn(trip);
+
+		assertEquals(trip, service.upload("Trip.json", new ByteArrayInputStream("[]".getBytes(UTF_8)), Instant.now()));
+		verify(drive.files().list().setQ(anyString()).setFields(anyString()), times(1)).execute();
+	}
+
+	@Test
+	public void fileIsSearchedByNameWhenIdIsNotFound() throws Exception
+	{
+		File moved = new File().setId("moved").setName("Trip.json");
+		Get get = drive.files().get("trip");
+		doThrow(notFound()).when(get).executeMediaAndDownloadTo(any());
+		when(drive.files().list().setQ(anyString()).setFields(anyString()).execute())
+			.thenReturn(new FileList().setFiles(List.of(folder)))
+			.thenReturn(new FileList().setFiles(List.of(moved)));
+
+		service.download("Trip.json", new ByteArrayOutputStream());
+		assertEquals(moved, service.getFile("Trip.json").orElseThrow());
+		verify(drive.files().get("moved")).executeMediaAndDownloadTo(any());
+		verify(drive.files().list().setQ(anyString()).setFields(anyString()), times(2)).execute();
+	}
+
+	@Test
+	public void failedUploadIsRetriedWithBackoff() throws Exception
+	{
+		List<Long> sleeps = new ArrayList<>();
+		service = new DriveService(drive, DriveService.DEFAULT_CHUNK_SIZE, () -> new ExponentialBackOff.Builder()
+				.setInitialIntervalMillis(100)
+				.setRandomizationFactor(0.5)
+				.build(), sleeps::add);
+		when(drive.files().update(eq("trip"), any(), any()).setFields(anyString()).execute())
+			.thenThrow(new IOException("Connection reset"))
+			.thenThrow(error(503))
+			.thenReturn(trip);
+
+		assertEquals(trip, service.upload("Trip.json", new ByteArrayInputStream("[]".getBytes(UTF_8)), Instant.now()));
+		assertEquals(2, sleeps.size());
+		assertTrue(sleeps.get(0) >= 50 && sleeps.get(0) <= 150, "First delay: " + sleeps.get(0));
+		assertTrue(sleeps.get(1) >= 75 && sleeps.get(1) <= 225, "Second delay: " + sleeps.get(1));
+		assertTrue(service.getUploads().isEmpty());
+	}
+
+	@Test
+	public void uploadIsNotRetriedOnClientError() throws Exception
+	{
+		List<Long> sleeps = new ArrayList<>();
+		service = new DriveService(drive, DriveService.DEFAULT_CHUNK_SIZE, DriveService::newBackOff, sleeps::add);
+		when(drive.files().update(eq("trip"), any(), any()).setFields(anyString()).execute()).thenThrow(error(403));
+
+		assertThrows(RuntimeException.class, () -> service.upload("Trip.json", new ByteArrayInputStream("[]".getBytes(UTF_8)), Instant.now()));
+		assertEquals(List.of(), sleeps);
+	}
+
+	@Test
+	public void largeFileIsUploadedInChunks() throws Exception
+	{
+		int chunkSize = MediaHttpUploader.MINIMUM_CHUNK_SIZE;
+		service = new DriveService(drive, chunkSize, DriveService::newBackOff, Sleeper.DEFAULT);
+		Update update = drive.files().update(eq("trip"), any(), any());
+		when(update.setFields(anyString()).execute()).thenReturn(trip);
+
+		service.upload("Trip.json", new ByteArrayInputStream(new byte[chunkSize + 1]), Instant.now());
+		verify(update.getMediaHttpUploader()).setDirectUploadEnabled(false);
+		verify(update.getMediaHttpUploader()).setChunkSize(chunkSize);
+	}
+
+	@Test
+	public void invalidChunkSizeIsRejected()
+	{
+		assertThrows(IllegalArgumentException.class, () -> new DriveService(drive, 1000, DriveService::newBackOff, Sleeper.DEFAULT));
+	}
+
+	private static GoogleJsonResponseException notFound()
+	{
+		return error(404);
+	}
+
+	private static GoogleJsonResponseException error(int statusCode)
+	{
+		return new GoogleJsonResponseException(new HttpResponseException.Builder(statusCode, "Error " + statusCode, new HttpHeaders()), null);
+	}
+}
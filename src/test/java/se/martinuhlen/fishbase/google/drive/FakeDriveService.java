@@ -0,0 +1,116 @@
+package se.martinuhlen.fishbase.google.drive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.model.File;
+
+/**
+ * In-memory {@link DriveService}, for testing without Google Drive.
+ */
+public class FakeDriveService extends DriveService
+{
+	private final Map<String, File> files = new HashMap<>();
+	private final Map<String, byte[]> contents = new HashMap<>();
+	private final AtomicInteger downloads = new AtomicInteger();
+	private final AtomicInteger uploads = new AtomicInteger();
+
+	public FakeDriveService()
+	{
+		super(null);
+	}
+
+	@Override
+	public synchronized File upload(String name, InputStream input, Instant modifiedTime)
+	{
+		byte[] content = readAllBytes(input);
+		File file = files.containsKey(name)
+				? files.get(name)
+				: new File().setId(UUID.randomUUID().toString()).setName(name);
+		file = file.clone()
+				.setModifiedTime(new DateTime(modifiedTime.toEpochMilli()))
+				.setMd5Checksum(md5(content));
+		files.put(name, file);
+		contents.put(file.getId(), content);
+		uploads.incrementAndGet();
+		return file.clone();
+	}
+
+	@Override
+	public synchronized void download(File file, OutputStream output)
+	{
+		try (output)
+		{
+			output.write(contents.get(file.getId()));
+			downloads.incrementAndGet();
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public synchronized Optional<File> getFile(String name)
+	{
+		return Optional.ofNullable(files.get(name)).map(File::clone);
+	}
+
+	/**
+	 * Deletes a file, as if it was deleted by another client.
+	 */
+	public synchronized void delete(String name)
+	{
+		File file = files.remove(name);
+		if (file != null)
+		{
+			contents.remove(file.getId());
+		}
+	}
+
+	public int getDownloadCount()
+	{
+		return downloads.get();
+	}
+
+	public int getUploadCount()
+	{
+		return uploads.get();
+	}
+
+	private static byte[] readAllBytes(InputStream input)
+	{
+		try (input)
+		{
+			return input.readAllBytes();
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static String md5(byte[] content)
+	{
+		try
+		{
+			return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(content));
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+}
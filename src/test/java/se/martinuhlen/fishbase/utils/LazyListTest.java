@@ -0,0 +1,57 @@
+package se.martinuhlen.fishbase.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests of {@link LazyList}.
+ */
+public class LazyListTest
+{
+	@Test
+	public void elementsAreComputedOnceWhenFirstAccessed()
+	{
+		AtomicInteger computations = new AtomicInteger();
+		List<String> list = new LazyList<>(() ->
+		{
+			computations.incrementAndGet();
+			return List.of("a", "b");
+		});
+		assertEquals(0, computations.get());
+
+		assertEquals(2, list.size());
+		assertEquals("b", list.get(1));
+		assertEquals(List.of("a", "b"), list);
+		assertEquals(1, computations.get());
+	}
+
+	@Test
+	public void failedComputationIsRetried()
+	{
+		AtomicInteger computations = new AtomicInteger();
+		List<String> list = new LazyList<>(() ->
+		{
+			if (computations.incrementAndGet() == 1)
+			{
+				throw new IllegalStateException("Not yet");
+			}
+			return List.of("a");
+		});
+
+		assertThrows(IllegalStateException.class, () -> list.size());
+		assertEquals(List.of("a"), list);
+		assertEquals(2, computations.get());
+	}
+
+	@Test
+	public void isUnmodifiable()
+	{
+		List<String> list = new LazyList<>(() -> List.of("a"));
+		assertThrows(UnsupportedOperationException.class, () -> list.add("b"));
+	}
+}
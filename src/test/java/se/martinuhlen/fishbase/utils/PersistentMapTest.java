@@ -0,0 +1,63 @@
+package se.martinuhlen.fishbase.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests of {@link PersistentMap}.
+ */
+public class PersistentMapTest
+{
+	@Test
+	public void emptyMap()
+	{
+		PersistentMap<String, Integer> map = PersistentMap.empty();
+		assertTrue(map.isEmpty());
+		assertEquals(0, map.size());
+		assertNull(map.get("a"));
+		assertEquals(List.of(), map.values());
+	}
+
+	@Test
+	public void putAndRemoveDontModifyOriginal()
+	{
+		PersistentMap<String, Integer> original = PersistentMap.<String, Integer>empty().put("b", 2).put("a", 1);
+		PersistentMap<String, Integer> replaced = original.put("a", 10);
+		PersistentMap<String, Integer> removed = original.remove("b");
+
+		assertEquals(List.of(1, 2), original.values());
+		assertEquals(List.of(10, 2), replaced.values());
+		assertEquals(List.of(1), removed.values());
+		assertEquals(Integer.valueOf(2), original.get("b"));
+		assertFalse(removed.containsKey("b"));
+		assertSame(original, original.remove("x"));
+	}
+
+	@Test
+	public void update()
+	{
+		PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty()
+				.update("a", value -> value == null ? 1 : value + 1)
+				.update("a", value -> value == null ? 1 : value + 1);
+		assertEquals(Integer.valueOf(2), map.get("a"));
+		assertTrue(map.update("a", value -> null).isEmpty());
+	}
+
+	@Test
+	public void valuesBetween()
+	{
+		PersistentMap<Integer, String> map = PersistentMap.<Integer, String>empty().put(1, "a").put(3, "c").put(5, "e");
+		assertEquals(List.of("a", "c", "e"), map.valuesBetween(0, 9));
+		assertEquals(List.of("c", "e"), map.valuesBetween(3, 5));
+		assertEquals(List.of("c"), map.valuesBetween(2, 4));
+		assertEquals(List.of(), map.valuesBetween(6, 9));
+		assertEquals(List.of(), map.valuesBetween(5, 1));
+	}
+}
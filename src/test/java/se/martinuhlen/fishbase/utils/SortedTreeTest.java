@@ -0,0 +1,107 @@
+package se.martinuhlen.fishbase.utils;
+
+import static java.util.Comparator.naturalOrder;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests of {@link SortedTree}.
+ */
+public class SortedTreeTest
+{
+	@Test
+	public void emptyTree()
+	{
+		SortedTree<String> tree = SortedTree.empty(naturalOrder());
+		assertTrue(tree.isEmpty());
+		assertEquals(0, tree.size());
+		assertEquals(List.of(), tree.asList());
+		assertFalse(tree.iterator().hasNext());
+		assertThrows(IndexOutOfBoundsException.class, () -> tree.get(0));
+	}
+
+	@Test
+	public void elementsAreSorted()
+	{
+		SortedTree<String> tree = SortedTree.<String>empty(naturalOrder()).add("c").add("a").add("d").add("b");
+		assertEquals(List.of("a", "b", "c", "d"), tree.asList());
+		assertEquals("c", tree.get(2));
+		assertTrue(tree.contains("b"));
+		assertFalse(tree.contains("e"));
+	}
+
+	@Test
+	public void findAndRank()
+	{
+		SortedTree<String> tree = SortedTree.<String>empty(String.CASE_INSENSITIVE_ORDER).add("b").add("D").add("f");
+		assertEquals("D", tree.find("d"));
+		assertEquals(null, tree.find("c"));
+		assertEquals(0, tree.rank("a"));
+		assertEquals(1, tree.rank("d"));
+		assertEquals(2, tree.rank("e"));
+		assertEquals(3, tree.rank("g"));
+	}
+
+	@Test
+	public void addAndRemoveDontModifyOriginal()
+	{
+		SortedTree<String> original = SortedTree.<String>empty(naturalOrder()).add("a").add("b");
+		SortedTree<String> added = original.add("c");
+		SortedTree<String> removed = original.remove("a");
+
+		assertEquals(List.of("a", "b"), original.asList());
+		assertEquals(List.of("a", "b", "c"), added.asList());
+		assertEquals(List.of("b"), removed.asList());
+		assertSame(original, original.remove("x"));
+	}
+
+	@Test
+	public void addReplacesEqualElement()
+	{
+		SortedTree<String> tree = SortedTree.<String>empty(String.CASE_INSENSITIVE_ORDER).add("a").add("A");
+		assertEquals(List.of("A"), tree.asList());
+	}
+
+	@Test
+	public void listViewIsUnmodifiable()
+	{
+		List<String> list = SortedTree.<String>empty(naturalOrder()).add("a").asList();
+		assertThrows(UnsupportedOperationException.class, () -> list.add("b"));
+	}
+
+	@Test
+	public void randomAddsAndRemovesMatchTreeSet()
+	{
+		Random random = new Random(42);
+		TreeSet<Integer> expected = new TreeSet<>();
+		SortedTree<Integer> tree = SortedTree.empty(naturalOrder());
+		for (int i = 0; i < 10_000; i++)
+		{
+			Integer value = random.nextInt(1_000);
+			if (random.nextBoolean())
+			{
+				expected.add(value);
+				tree = tree.add(value);
+			}
+			else
+			{
+				expected.remove(value);
+				tree = tree.remove(value);
+			}
+		}
+		assertEquals(new ArrayList<>(expected), tree.asList());
+		assertEquals(expected.size(), tree.size());
+		assertEquals(expected.first(), tree.get(0));
+		assertEquals(expected.last(), tree.get(tree.size() - 1));
+	}
+}